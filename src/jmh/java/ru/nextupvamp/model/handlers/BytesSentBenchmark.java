@@ -0,0 +1,54 @@
+package ru.nextupvamp.model.handlers;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// recording of bytes sent and the average and 95th percentile computed from the histogram
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@State(Scope.Benchmark)
+public class BytesSentBenchmark {
+    private static final double RELATIVE_ERROR = 0.01; // default statistics.quantile-relative-error
+
+    @Param({"1000", "1000000"})
+    private int values;
+
+    private final NginxLogsStatisticsGatherer gatherer = new NginxLogsStatisticsGatherer(new NginxLogLineParser());
+    private long[] bytesSent;
+    private LogHistogram histogram;
+
+    @Setup
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42);
+        bytesSent = new long[values];
+        histogram = new LogHistogram(RELATIVE_ERROR);
+        for (int i = 0; i < values; i++) {
+            // mostly small responses with a long tail of big downloads
+            bytesSent[i] = random.nextInt(10) == 0 ? random.nextLong(100_000_000) : random.nextInt(10_000);
+            histogram.record(bytesSent[i]);
+        }
+    }
+
+    @Benchmark
+    public LogHistogram record() {
+        LogHistogram recorded = new LogHistogram(RELATIVE_ERROR);
+        for (long value : bytesSent) {
+            recorded.record(value);
+        }
+        return recorded;
+    }
+
+    @Benchmark
+    public long countAverageBytesSent() {
+        return gatherer.countAverageBytesSent(histogram);
+    }
+
+    @Benchmark
+    public long count95pBytesSent() {
+        return gatherer.count95pBytesSent(histogram);
+    }
+}
@@ -0,0 +1,58 @@
+package ru.nextupvamp.model.handlers;
+
+import org.openjdk.jmh.annotations.*;
+import ru.nextupvamp.model.entities.ResourceFilters;
+import ru.nextupvamp.model.entities.Statistics;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+// whole file gathering without the result cache. Parallel streams run in the pool they are started from,
+// so the amount of threads is set by a pool of its own
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@State(Scope.Benchmark)
+public class GatheringBenchmark {
+    private static final long MEGABYTE = 1 << 20;
+
+    @Param({"1", "16", "128"})
+    private int megabytes;
+    @Param({"1", "4"})
+    private int threads;
+    @Param({"false", "true"})
+    private boolean rollup;
+    @Param({"1000", "10000000"})
+    private int resources;
+
+    private final NginxLogsStatisticsGatherer gatherer = new NginxLogsStatisticsGatherer(new NginxLogLineParser());
+    private ResourceFilters filters;
+    private Path file;
+    private ForkJoinPool pool;
+
+    @Setup
+    public void setUp() throws IOException {
+        file = SyntheticLogs.write(
+                Files.createTempFile("benchmark", ".log"), megabytes * MEGABYTE, 42, resources);
+        pool = new ForkJoinPool(threads);
+        filters = new ResourceFilters().rollup(rollup);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        pool.close();
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(TimeIndex.sidecarOf(file));
+        Files.deleteIfExists(ColumnarLog.sidecarOf(file));
+    }
+
+    @Benchmark
+    public Statistics gatherStatisticsFromFile() throws ExecutionException, InterruptedException {
+        return pool.submit(() -> gatherer.gatherStatisticsFromFile(file, filters)).get();
+    }
+}
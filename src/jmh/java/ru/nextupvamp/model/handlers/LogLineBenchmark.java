@@ -0,0 +1,65 @@
+package ru.nextupvamp.model.handlers;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import ru.nextupvamp.model.data.LogData;
+import ru.nextupvamp.model.entities.ResourceFilters;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// per line costs of parsing and filtering, every invocation goes through the whole batch of lines
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(LogLineBenchmark.LINES)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@State(Scope.Benchmark)
+public class LogLineBenchmark {
+    static final int LINES = 10_000;
+
+    @Param({"none", "method", "resource", "agent_and_status"})
+    private String filter;
+
+    private final LogLineParser parser = new NginxLogLineParser();
+    private List<String> lines;
+    private List<LogData> parsed;
+    private RowFilter rowFilter;
+
+    @Setup
+    public void setUp() {
+        lines = SyntheticLogs.lines(LINES, 42);
+        parsed = lines.stream().map(parser::parseLine).filter(it -> it != LogData.IGNORED).toList();
+        rowFilter = RowFilter.of(new ResourceFilters().filterMap(switch (filter) {
+            case "none" -> Map.of();
+            case "method" -> Map.of("method", "GET");
+            case "resource" -> Map.of("resource", "/downloads/product_1.*");
+            case "agent_and_status" -> Map.of("userAgent", ".*Chrome.*", "status", "200|304");
+            default -> throw new IllegalArgumentException("Unknown filter " + filter);
+        }));
+    }
+
+    @Benchmark
+    public void parseLine(Blackhole blackhole) {
+        for (String line : lines) {
+            blackhole.consume(parser.parseLine(line));
+        }
+    }
+
+    // filters tested on the raw line by the parser
+    @Benchmark
+    public void parseLineFiltered(Blackhole blackhole) {
+        for (String line : lines) {
+            blackhole.consume(parser.parseLine(line, rowFilter));
+        }
+    }
+
+    // filters tested on already parsed rows, as for columnar logs
+    @Benchmark
+    public void testParsedRow(Blackhole blackhole) {
+        for (LogData logData : parsed) {
+            blackhole.consume(rowFilter.test(logData));
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package ru.nextupvamp.model.handlers;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+// reproducible nginx combined format lines: time goes forward like in a real log, addresses and
+// resources are skewed towards a few hot ones and every 100th line is malformed
+final class SyntheticLogs {
+    private static final DateTimeFormatter TIME_FORMAT =
+            DateTimeFormatter.ofPattern("dd/MMM/yyyy:HH:mm:ss Z", Locale.ENGLISH);
+    private static final ZonedDateTime START = ZonedDateTime.of(2015, 5, 17, 8, 0, 0, 0, ZoneOffset.UTC);
+    private static final String[] METHODS = {"GET", "GET", "GET", "GET", "POST", "HEAD", "PUT", "DELETE"};
+    private static final short[] STATUSES = {200, 200, 200, 200, 200, 304, 304, 404, 404, 500};
+    private static final String[] USER_AGENTS = {
+            "Debian APT-HTTP/1.3 (0.8.16~exp12ubuntu10.21)",
+            "Debian APT-HTTP/1.3 (1.0.1ubuntu2)",
+            "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0 Safari/537.36",
+            "curl/8.4.0"
+    };
+    private static final int MALFORMED_EVERY = 100;
+    static final int DEFAULT_RESOURCES = 1000;
+
+    private final SplittableRandom random;
+    private final int resources; // distinct resources, a large amount makes them mostly unique
+    private ZonedDateTime time = START;
+    private long lineNumber;
+
+    SyntheticLogs(long seed) {
+        this(seed, DEFAULT_RESOURCES);
+    }
+
+    SyntheticLogs(long seed, int resources) {
+        random = new SplittableRandom(seed);
+        this.resources = resources;
+    }
+
+    static List<String> lines(int amount, long seed) {
+        SyntheticLogs logs = new SyntheticLogs(seed);
+        List<String> lines = new ArrayList<>(amount);
+        for (int i = 0; i < amount; i++) {
+            lines.add(logs.nextLine());
+        }
+        return lines;
+    }
+
+    // writes lines until the file is at least the given size
+    static Path write(Path file, long bytes, long seed) throws IOException {
+        return write(file, bytes, seed, DEFAULT_RESOURCES);
+    }
+
+    static Path write(Path file, long bytes, long seed, int resources) throws IOException {
+        SyntheticLogs logs = new SyntheticLogs(seed, resources);
+        long written = 0;
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            while (written < bytes) {
+                String line = logs.nextLine();
+                writer.write(line);
+                writer.write('\n');
+                written += line.length() + 1;
+            }
+        }
+        return file;
+    }
+
+    String nextLine() {
+        time = time.plusSeconds(random.nextInt(3));
+        if (++lineNumber % MALFORMED_EVERY == 0) {
+            return "malformed line " + lineNumber;
+        }
+        return skewed(256, "10.0.%d.%d") + " - " + (random.nextInt(20) == 0 ? "admin" : "-")
+                + " [" + TIME_FORMAT.format(time) + "] \""
+                + METHODS[random.nextInt(METHODS.length)] + " " + skewed(resources, "/downloads/product_%d/%d")
+                + " HTTP/1.1\" " + STATUSES[random.nextInt(STATUSES.length)] + " " + random.nextInt(100_000)
+                + " \"-\" \"" + USER_AGENTS[random.nextInt(USER_AGENTS.length)] + "\"";
+    }
+
+    // half of the values come from the first tenth of the range
+    private String skewed(int range, String format) {
+        int value = random.nextBoolean() ? random.nextInt(range / 10) : random.nextInt(range);
+        return String.format(format, value / 10, value % 10);
+    }
+}
@@ -2,8 +2,10 @@ package ru.nextupvamp;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class WebApplication {
     public static void main(String[] args) {
         SpringApplication.run(WebApplication.class, args);
@@ -0,0 +1,4 @@
+package ru.nextupvamp.controller;
+
+public record IngestResponse(long linesIngested) {
+}
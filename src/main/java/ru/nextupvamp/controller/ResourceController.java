@@ -2,15 +2,25 @@ package ru.nextupvamp.controller;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.AllArgsConstructor;
+import lombok.SneakyThrows;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import ru.nextupvamp.model.data.ResourceDto;
+import ru.nextupvamp.model.data.RollupDto;
 import ru.nextupvamp.model.data.UserDto;
 import ru.nextupvamp.model.entities.ResourceFilters;
 import ru.nextupvamp.model.entities.Statistics;
+import ru.nextupvamp.model.entities.TimeBucket;
+import ru.nextupvamp.service.LiveStatisticsService;
 import ru.nextupvamp.service.ResourceService;
+import ru.nextupvamp.service.StatisticsJobService;
+
+import java.time.Duration;
+import java.util.List;
 
 @RestController
 @RequestMapping("resources")
@@ -20,7 +30,11 @@ import ru.nextupvamp.service.ResourceService;
         description = "Controller is used to manage resources and gather statistics on them"
 )
 public class ResourceController {
+    private static final String NDJSON = "application/x-ndjson";
+
     private ResourceService resourceService;
+    private StatisticsJobService statisticsJobService;
+    private LiveStatisticsService liveStatisticsService;
 
     @Operation(
             summary = "Uploading new resource as file",
@@ -44,6 +58,17 @@ public class ResourceController {
         return new IdResponse(resourceService.uploadUrl(url.url(), user));
     }
 
+    @Operation(
+            summary = "Creating new stream resource",
+            description = "Log lines are pushed to a stream resource via its ingest endpoint instead of being read " +
+                    "from a file or url. Stream can be created for anonymous or authorized user " +
+                    "depends on if the user request part is passed"
+    )
+    @PostMapping("upload_stream")
+    public IdResponse uploadStream(@Valid @RequestPart(name = "user", required = false) UserDto user) {
+        return new IdResponse(resourceService.uploadStream(user));
+    }
+
     @Operation(
             summary = "Uploading filters for resource",
             description = "Requires a map of filter fields and filter values"
@@ -62,11 +87,12 @@ public class ResourceController {
     @Operation(
             summary = "Gathering resource statistics once",
             description = "Meant to be used for anonymous user. Statistics won't be saved and " +
-                    "resource will be deleted after gathering"
+                    "resource will be deleted after gathering. Time bucket overrides the one from resource filters"
     )
     @GetMapping("{id}/statistics")
-    public Statistics getStatistics(@PathVariable int id) {
-        return resourceService.getStatisticsOnce(id);
+    public Statistics getStatistics(@PathVariable int id,
+                                    @RequestParam(name = "time_bucket", required = false) TimeBucket timeBucket) {
+        return resourceService.getStatisticsOnce(id, timeBucket);
     }
 
     @Operation(
@@ -82,11 +108,78 @@ public class ResourceController {
     @Operation(
             summary = "Gathering statistics on resource",
             description = "Meant to be used for authorized user. Resource data will be processed and " +
-                    "the method will return updated statistics even if it has been already saved"
+                    "the method will return updated statistics even if it has been already saved. " +
+                    "Time bucket overrides the one from resource filters"
     )
     @GetMapping("{id}/statistics/updated")
-    public Statistics getUpdatedStatistics(@PathVariable int id) {
-        return resourceService.getUpdatedStatistics(id);
+    public Statistics getUpdatedStatistics(@PathVariable int id,
+                                           @RequestParam(name = "time_bucket", required = false)
+                                           TimeBucket timeBucket) {
+        return resourceService.getUpdatedStatistics(id, timeBucket);
+    }
+
+    @Operation(
+            summary = "Pushing log lines to a stream resource",
+            description = "Body is read as it arrives, so it can be sent chunked for as long as needed. Plain text " +
+                    "contains a log line per line, ndjson a json string or an object with a line field per line. " +
+                    "Lines are folded into in memory statistics which are saved periodically"
+    )
+    @PostMapping(value = "{id}/ingest", consumes = {MediaType.TEXT_PLAIN_VALUE, NDJSON})
+    @SneakyThrows
+    public IngestResponse ingest(@PathVariable int id, HttpServletRequest request) {
+        boolean ndjson = request.getContentType() != null && request.getContentType().startsWith(NDJSON);
+        return new IngestResponse(liveStatisticsService.ingest(id, request.getInputStream(), ndjson));
+    }
+
+    @Operation(
+            summary = "Getting live statistics on a stream resource",
+            description = "Returns the current in memory statistics including the lines not saved yet"
+    )
+    @GetMapping("{id}/statistics/live")
+    public Statistics getLiveStatistics(@PathVariable int id,
+                                        @RequestParam(name = "time_bucket", required = false)
+                                        TimeBucket timeBucket) {
+        return liveStatisticsService.getStatistics(id, timeBucket);
+    }
+
+    @Operation(
+            summary = "Getting per minute rollup of a resource",
+            description = "Window is an ISO-8601 duration of whole minutes up to a day. It ends with the newest " +
+                    "minute in the log. Rollups are recorded only for resources with the rollup filter set, " +
+                    "statistics of a file or url resource have to be gathered first"
+    )
+    @GetMapping("{id}/statistics/rollup")
+    public RollupDto getRollup(@PathVariable int id,
+                               @RequestParam(defaultValue = "PT5M") Duration window) {
+        return resourceService.getRollup(id, window);
+    }
+
+    @Operation(
+            summary = "Gathering merged statistics on several resources",
+            description = "Resources are given either by ids or by the login of their owner. They are gathered " +
+                    "concurrently and merged into one statistics, nothing is saved. Resources have to share " +
+                    "the same top k, time bucket overrides the ones from resource filters"
+    )
+    @GetMapping("statistics/merged")
+    public Statistics getMergedStatistics(@RequestParam(required = false) List<Integer> ids,
+                                          @RequestParam(required = false) String login,
+                                          @RequestParam(name = "time_bucket", required = false)
+                                          TimeBucket timeBucket) {
+        return resourceService.getMergedStatistics(ids, login, timeBucket);
+    }
+
+    @Operation(
+            summary = "Submitting asynchronous statistics gathering",
+            description = "Returns a job id which can be polled via statistics/jobs. If once is true the " +
+                    "resource is deleted after gathering like in the anonymous endpoint, otherwise " +
+                    "the gathered statistics are saved"
+    )
+    @PostMapping("{id}/statistics/jobs")
+    public IdResponse submitStatisticsJob(@PathVariable int id,
+                                          @RequestParam(defaultValue = "false") boolean once,
+                                          @RequestParam(name = "time_bucket", required = false)
+                                          TimeBucket timeBucket) {
+        return new IdResponse(statisticsJobService.submit(id, once, timeBucket));
     }
 
     @Operation(summary = "Deleting resource")
@@ -0,0 +1,34 @@
+package ru.nextupvamp.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.AllArgsConstructor;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import ru.nextupvamp.model.data.CacheStatsDto;
+import ru.nextupvamp.model.handlers.StatisticsResultCache;
+
+@RestController
+@RequestMapping("statistics/cache")
+@AllArgsConstructor
+@Tag(
+        name = "Statistics cache controller",
+        description = "Controller is used to inspect and reset the cache of gathered statistics"
+)
+public class StatisticsCacheController {
+    private StatisticsResultCache statisticsResultCache;
+
+    @Operation(summary = "Getting cache hits, misses and size")
+    @GetMapping
+    public CacheStatsDto getStats() {
+        return statisticsResultCache.stats();
+    }
+
+    @Operation(summary = "Clearing cached statistics")
+    @DeleteMapping
+    public void clear() {
+        statisticsResultCache.clear();
+    }
+}
@@ -0,0 +1,45 @@
+package ru.nextupvamp.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.AllArgsConstructor;
+import org.springframework.web.bind.annotation.*;
+import ru.nextupvamp.model.data.StatisticsJobDto;
+import ru.nextupvamp.model.entities.Statistics;
+import ru.nextupvamp.service.StatisticsJobService;
+
+@RestController
+@RequestMapping("statistics/jobs")
+@AllArgsConstructor
+@Tag(
+        name = "Statistics job controller",
+        description = "Controller is used to poll, fetch and cancel asynchronous statistics gathering"
+)
+public class StatisticsJobController {
+    private StatisticsJobService statisticsJobService;
+
+    @Operation(
+            summary = "Getting job status",
+            description = "Returns job status and progress. Total bytes is -1 if the resource size is unknown"
+    )
+    @GetMapping("{jobId}")
+    public StatisticsJobDto getStatus(@PathVariable int jobId) {
+        return statisticsJobService.getStatus(jobId);
+    }
+
+    @Operation(
+            summary = "Getting job result",
+            description = "Returns gathered statistics. Responds with conflict while the job is queued or running, " +
+                    "with gone if it has been cancelled and with unprocessable entity and its error if it has failed"
+    )
+    @GetMapping("{jobId}/result")
+    public Statistics getResult(@PathVariable int jobId) {
+        return statisticsJobService.getResult(jobId);
+    }
+
+    @Operation(summary = "Cancelling job")
+    @DeleteMapping("{jobId}")
+    public StatisticsJobDto cancel(@PathVariable int jobId) {
+        return statisticsJobService.cancel(jobId);
+    }
+}
@@ -1,5 +1,6 @@
 package ru.nextupvamp.exception;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ProblemDetail;
 import org.springframework.http.ResponseEntity;
@@ -7,10 +8,12 @@ import org.springframework.validation.FieldError;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.servlet.resource.NoResourceFoundException;
+import ru.nextupvamp.model.data.JobStatus;
 
 import java.util.HashMap;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.RejectedExecutionException;
 
 @ControllerAdvice
 public class ExceptionHandler {
@@ -35,6 +38,43 @@ public class ExceptionHandler {
         return ResponseEntity.status(HttpStatus.NOT_FOUND).body(problemDetail);
     }
 
+    @org.springframework.web.bind.annotation.ExceptionHandler(JobNotFinishedException.class)
+    public ResponseEntity<?> handleJobNotFinishedException(JobNotFinishedException exception) {
+        ProblemDetail problemDetail = ProblemDetail.forStatus(HttpStatus.CONFLICT);
+        problemDetail.setTitle(exception.getMessage());
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(problemDetail);
+    }
+
+    // a cancelled job is gone for good, a failed one reports why, so clients polling on 409 stop retrying
+    @org.springframework.web.bind.annotation.ExceptionHandler(JobUnsuccessfulException.class)
+    public ResponseEntity<?> handleJobUnsuccessfulException(JobUnsuccessfulException exception) {
+        HttpStatus status = exception.status() == JobStatus.CANCELLED
+                ? HttpStatus.GONE
+                : HttpStatus.UNPROCESSABLE_ENTITY;
+        ProblemDetail problemDetail = ProblemDetail.forStatus(status);
+        problemDetail.setTitle(exception.getMessage());
+        if (exception.error() != null) {
+            problemDetail.setProperty("error", exception.error());
+        }
+        return ResponseEntity.status(status).body(problemDetail);
+    }
+
+    @org.springframework.web.bind.annotation.ExceptionHandler(GatheringRejectedException.class)
+    public ResponseEntity<?> handleGatheringRejectedException(GatheringRejectedException exception) {
+        ProblemDetail problemDetail = ProblemDetail.forStatus(HttpStatus.TOO_MANY_REQUESTS);
+        problemDetail.setTitle(exception.getMessage());
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(exception.retryAfter().toSeconds()))
+                .body(problemDetail);
+    }
+
+    @org.springframework.web.bind.annotation.ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<?> handleRejectedExecutionException() {
+        ProblemDetail problemDetail = ProblemDetail.forStatus(HttpStatus.TOO_MANY_REQUESTS);
+        problemDetail.setTitle("Too many statistics jobs, try again later");
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(problemDetail);
+    }
+
     @org.springframework.web.bind.annotation.ExceptionHandler(MethodArgumentNotValidException.class)
     public ResponseEntity<?> handleMethodArgumentNotValidException(MethodArgumentNotValidException exception) {
         Map<String, Object> errors = new HashMap<>();
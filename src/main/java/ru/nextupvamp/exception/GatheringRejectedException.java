@@ -0,0 +1,22 @@
+package ru.nextupvamp.exception;
+
+import java.io.Serial;
+import java.time.Duration;
+import java.util.concurrent.RejectedExecutionException;
+
+// the gathering scheduler is over its budget, the client may retry after the given delay
+public class GatheringRejectedException extends RejectedExecutionException {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private final Duration retryAfter;
+
+    public GatheringRejectedException(Duration retryAfter) {
+        super("Too many statistics gatherings, try again later");
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration retryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,13 @@
+package ru.nextupvamp.exception;
+
+import java.io.Serial;
+
+// the statistics job has no result yet: it is queued or still running
+public class JobNotFinishedException extends RuntimeException {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    public JobNotFinishedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,28 @@
+package ru.nextupvamp.exception;
+
+import ru.nextupvamp.model.data.JobStatus;
+
+import java.io.Serial;
+
+// the statistics job has finished without a result and will never have one: it has failed or has been cancelled
+public class JobUnsuccessfulException extends RuntimeException {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private final JobStatus status;
+    private final String error; // null unless the job has failed
+
+    public JobUnsuccessfulException(JobStatus status, String message, String error) {
+        super(message);
+        this.status = status;
+        this.error = error;
+    }
+
+    public JobStatus status() {
+        return status;
+    }
+
+    public String error() {
+        return error;
+    }
+}
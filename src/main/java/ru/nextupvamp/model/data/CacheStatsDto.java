@@ -0,0 +1,11 @@
+package ru.nextupvamp.model.data;
+
+public record CacheStatsDto(
+        long hits,
+        long misses,
+        long evictions,
+        int size,
+        long bytes, // estimated size of the cached accumulators
+        long maxBytes
+) {
+}
@@ -0,0 +1,13 @@
+package ru.nextupvamp.model.data;
+
+public enum JobStatus {
+    QUEUED,
+    RUNNING,
+    DONE,
+    FAILED,
+    CANCELLED;
+
+    public boolean finished() {
+        return this == DONE || this == FAILED || this == CANCELLED;
+    }
+}
@@ -15,7 +15,9 @@ public record LogData(
         short status,
         long bytesSent,
         String httpReferer,
-        String httpUserAgent
+        String httpUserAgent,
+        Long requestTime // milliseconds, known only for log formats with $request_time
 ) {
     public static final LogData IGNORED = LogData.builder().build();
+    public static final LogData FILTERED = LogData.builder().build(); // well formed, but rejected by filters
 }
@@ -6,6 +6,9 @@ public record ResourceDto(
         int id,
         String user,
         ResourceType type,
-        String path
+        String path,
+        Long size,
+        Long linesAmount,
+        String sha256
 ) {
 }
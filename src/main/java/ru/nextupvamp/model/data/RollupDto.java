@@ -0,0 +1,16 @@
+package ru.nextupvamp.model.data;
+
+import java.time.ZonedDateTime;
+import java.util.Map;
+
+// counters of a window [from, to) of whole minutes, top resources are estimated
+public record RollupDto(
+        ZonedDateTime from,
+        ZonedDateTime to,
+        long requests,
+        long bytesSent,
+        Map<Short, Integer> statuses,
+        Map<String, Integer> topResources,
+        Map<ZonedDateTime, Integer> requestsPerMinute
+) {
+}
@@ -0,0 +1,12 @@
+package ru.nextupvamp.model.data;
+
+public record StatisticsJobDto(
+        int id,
+        int resourceId,
+        JobStatus status,
+        long bytesProcessed,
+        long linesProcessed,
+        long totalBytes,
+        String error
+) {
+}
@@ -0,0 +1,33 @@
+package ru.nextupvamp.model.entities;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// state of the last gathering of a file or url resource, lets the next one parse only the appended bytes
+@Entity
+@Data
+@NoArgsConstructor
+public class GatheringCheckpoint {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "gathering_checkpoint_id_gen")
+    @SequenceGenerator(
+            name = "gathering_checkpoint_id_gen",
+            sequenceName = "gathering_checkpoint_id_gen",
+            allocationSize = 50
+    )
+    private Integer id;
+
+    private String fileKey; // file system identity of the file, changes when the file is rotated, uri of a url
+
+    private String validator; // ETag and Last-Modified of a url resource, lets the server answer 304
+
+    private long offset; // bytes processed so far
+
+    private long tailChecksum; // crc32 of the bytes right before the offset, detects rewritten files
+
+    @Column(length = 2048)
+    private String filtersFingerprint; // the snapshot is valid for the same filters only
+
+    private byte[] snapshot; // serialized StatisticsAccumulator
+}
@@ -1,11 +1,10 @@
 package ru.nextupvamp.model.entities;
 
 import com.fasterxml.jackson.annotation.JsonBackReference;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import jakarta.persistence.*;
-import lombok.Data;
-import lombok.Getter;
-import lombok.NoArgsConstructor;
+import lombok.*;
 
 @Entity
 @Data
@@ -13,11 +12,11 @@ import lombok.NoArgsConstructor;
 @Getter(onMethod = @__(@JsonProperty))
 public class Resource {
     @Id
-    @GeneratedValue(strategy = GenerationType.SEQUENCE)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "resource_id_gen")
     @SequenceGenerator(
             name = "resource_id_gen",
             sequenceName = "resource_id_gen",
-            allocationSize = 1
+            allocationSize = 50
     )
     private Integer id;
 
@@ -31,11 +30,26 @@ public class Resource {
 
     private String path;
 
+    // known for uploaded files only
+    private Long size;
+
+    private Long linesAmount;
+
+    @Column(length = 64)
+    private String sha256;
+
     @OneToOne(cascade = CascadeType.ALL)
     @JoinColumn(name = "filters_id")
     private ResourceFilters filters;
 
-    @OneToOne(cascade = CascadeType.ALL)
+    @OneToOne(cascade = CascadeType.ALL, orphanRemoval = true) // replaced statistics are deleted
     @JoinColumn(name = "statistics_id")
     private Statistics statistics;
+
+    @OneToOne(cascade = CascadeType.ALL, orphanRemoval = true, fetch = FetchType.LAZY)
+    @JoinColumn(name = "checkpoint_id")
+    @Getter(onMethod = @__(@JsonIgnore))
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private GatheringCheckpoint checkpoint;
 }
@@ -11,12 +11,15 @@ import java.util.Map;
 @Data
 @NoArgsConstructor
 public class ResourceFilters {
+    public static final int LOG_FORMAT_LENGTH = 4096;
+    public static final int MAX_TOP_K = 10_000; // every worker preallocates ten monitored keys per reported one
+
     @Id
-    @GeneratedValue(strategy = GenerationType.SEQUENCE)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "resource_filters_id_gen")
     @SequenceGenerator(
             name = "resource_filters_id_gen",
             sequenceName = "resource_filters_id_gen",
-            allocationSize = 1
+            allocationSize = 50
     )
     private Integer id;
 
@@ -29,4 +32,15 @@ public class ResourceFilters {
     @MapKeyColumn(name = "field")
     @Column(name = "value")
     private Map<String, String> filterMap; // filter field : filter value regex
+
+    @Enumerated(EnumType.STRING)
+    private TimeBucket timeBucket; // granularity of requests on date, seconds if not set
+
+    // if set, only the top k addresses, users and resources are kept, using bounded memory
+    private Integer topK;
+
+    @Column(length = LOG_FORMAT_LENGTH)
+    private String logFormat; // nginx log_format of the resource, the combined one if not set
+
+    private Boolean rollup; // per minute rollups are recorded only if set, since they cost every row
 }
@@ -1,5 +1,5 @@
 package ru.nextupvamp.model.entities;
 
 public enum ResourceType {
-    FILE, URL
+    FILE, URL, STREAM // lines of a stream resource are pushed to it
 }
@@ -1,10 +1,10 @@
 package ru.nextupvamp.model.entities;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import jakarta.persistence.*;
-import lombok.Data;
-import lombok.Getter;
-import lombok.NoArgsConstructor;
+import lombok.*;
+import org.hibernate.annotations.Immutable;
 
 import java.time.ZonedDateTime;
 import java.util.Map;
@@ -14,12 +14,15 @@ import java.util.Map;
 @NoArgsConstructor
 @Getter(onMethod = @__(@JsonProperty))
 public class Statistics {
+    private static final int SKETCH_COLUMN_LENGTH = 8192;
+    private static final int COUNTS_COLUMN_LENGTH = Integer.MAX_VALUE;
+
     @Id
-    @GeneratedValue(strategy = GenerationType.SEQUENCE)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "statistics_id_gen")
     @SequenceGenerator(
             name = "statistics_id_gen",
             sequenceName = "statistics_id_gen",
-            allocationSize = 1
+            allocationSize = 50 // ids are reserved in pools, not one round trip per insert
     )
     private Integer id;
 
@@ -29,50 +32,142 @@ public class Statistics {
 
     private int ignoredRows;
 
-    @ElementCollection
-    @Column(name = "amount")
-    @MapKeyColumn(name = "remote_address")
-    @CollectionTable(name = "remote_address", joinColumns = {@JoinColumn(name = "resource_id")})
-    private Map<String, Integer> remoteAddresses;
+    // not null if only the most frequent remote addresses, users and resources were kept
+    private Integer topK;
+
+    private long distinctRemoteAddresses; // estimated in top k mode
 
-    @ElementCollection
-    @Column(name = "amount")
-    @MapKeyColumn(name = "remote_user")
-    @CollectionTable(name = "remote_user", joinColumns = {@JoinColumn(name = "resource_id")})
-    private Map<String, Integer> remoteUsers;
+    private long distinctRemoteUsers; // estimated in top k mode
 
     private ZonedDateTime fromDate;
 
     private ZonedDateTime toDate;
 
-    @ElementCollection
-    @Column(name = "amount")
-    @MapKeyColumn(name = "date")
-    @CollectionTable(name = "requests_on_date", joinColumns = {@JoinColumn(name = "resource_id")})
-    private Map<ZonedDateTime, Integer> requestsOnDate;
-
-    @ElementCollection
-    @Column(name = "amount")
-    @MapKeyColumn(name = "method")
-    @CollectionTable(name = "request_method", joinColumns = {@JoinColumn(name = "resource_id")})
-    private Map<String, Integer> requestMethods;
-
-    @ElementCollection
-    @Column(name = "amount")
-    @MapKeyColumn(name = "request_resource")
-    @CollectionTable(name = "request_resources", joinColumns = {@JoinColumn(name = "resource_id")})
-    private Map<String, Integer> requestResources;
-
-    @ElementCollection
-    @Column(name = "amount")
-    @MapKeyColumn(name = "status")
-    @CollectionTable(name = "statuses", joinColumns = {@JoinColumn(name = "resource_id")})
-    private Map<Short, Integer> statuses;
+    @Enumerated(EnumType.STRING)
+    private TimeBucket timeBucket;
+
+    private long distinctRequestResources; // estimated in top k mode
 
     private int requestsAmount;
 
     private long averageBytesSent;
 
+    @Column(name = "p_50_bytes_sent")
+    private long p50BytesSent;
+
+    @Column(name = "p_90_bytes_sent")
+    private long p90BytesSent;
+
     @Column(name = "p_95_bytes_sent")
     private long p95BytesSent;
+
+    @Column(name = "p_99_bytes_sent")
+    private long p99BytesSent;
+
+    private long maxBytesSent;
+
+    // request times are in milliseconds, null unless the log format has $request_time
+    private Long averageRequestTime;
+
+    @Column(name = "p_50_request_time")
+    private Long p50RequestTime;
+
+    @Column(name = "p_90_request_time")
+    private Long p90RequestTime;
+
+    @Column(name = "p_95_request_time")
+    private Long p95RequestTime;
+
+    @Column(name = "p_99_request_time")
+    private Long p99RequestTime;
+
+    private Long maxRequestTime;
+
+    private long distinctHttpUserAgents; // always estimated
+
+    // all count maps in one compressed column, so a save is a single insert whatever their size
+    @Convert(converter = StatisticsCountsConverter.class)
+    @Column(name = "counts", length = COUNTS_COLUMN_LENGTH)
+    @Immutable // replaced on every change, never modified in place
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private StatisticsCounts counts = StatisticsCounts.EMPTY;
+
+    // serialized HyperLogLog sketches, so distinct counts of several gatherings can be merged
+    @Getter(onMethod = @__(@JsonIgnore))
+    @Column(length = SKETCH_COLUMN_LENGTH)
+    private byte[] remoteAddressesSketch;
+
+    @Getter(onMethod = @__(@JsonIgnore))
+    @Column(length = SKETCH_COLUMN_LENGTH)
+    private byte[] remoteUsersSketch;
+
+    @Getter(onMethod = @__(@JsonIgnore))
+    @Column(length = SKETCH_COLUMN_LENGTH)
+    private byte[] requestResourcesSketch;
+
+    @Getter(onMethod = @__(@JsonIgnore))
+    @Column(length = SKETCH_COLUMN_LENGTH)
+    private byte[] httpUserAgentsSketch;
+
+    @JsonProperty
+    public Map<String, Integer> remoteAddresses() {
+        return counts.maps().remoteAddresses();
+    }
+
+    public Statistics remoteAddresses(Map<String, Integer> remoteAddresses) {
+        counts = new StatisticsCounts(counts.maps().withRemoteAddresses(remoteAddresses));
+        return this;
+    }
+
+    @JsonProperty
+    public Map<String, Integer> remoteUsers() {
+        return counts.maps().remoteUsers();
+    }
+
+    public Statistics remoteUsers(Map<String, Integer> remoteUsers) {
+        counts = new StatisticsCounts(counts.maps().withRemoteUsers(remoteUsers));
+        return this;
+    }
+
+    // keys are bucket starts in UTC
+    @JsonProperty
+    public Map<ZonedDateTime, Integer> requestsOnDate() {
+        return counts.maps().requestsOnDate();
+    }
+
+    public Statistics requestsOnDate(Map<ZonedDateTime, Integer> requestsOnDate) {
+        counts = new StatisticsCounts(counts.maps().withRequestsOnDate(requestsOnDate));
+        return this;
+    }
+
+    @JsonProperty
+    public Map<String, Integer> requestMethods() {
+        return counts.maps().requestMethods();
+    }
+
+    public Statistics requestMethods(Map<String, Integer> requestMethods) {
+        counts = new StatisticsCounts(counts.maps().withRequestMethods(requestMethods));
+        return this;
+    }
+
+    @JsonProperty
+    public Map<String, Integer> requestResources() {
+        return counts.maps().requestResources();
+    }
+
+    public Statistics requestResources(Map<String, Integer> requestResources) {
+        counts = new StatisticsCounts(counts.maps().withRequestResources(requestResources));
+        return this;
+    }
+
+    @JsonProperty
+    public Map<Short, Integer> statuses() {
+        return counts.maps().statuses();
+    }
+
+    public Statistics statuses(Map<Short, Integer> statuses) {
+        counts = new StatisticsCounts(counts.maps().withStatuses(statuses));
+        return this;
+    }
 }
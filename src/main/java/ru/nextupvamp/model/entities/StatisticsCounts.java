@@ -0,0 +1,198 @@
+package ru.nextupvamp.model.entities;
+
+import lombok.SneakyThrows;
+import lombok.With;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+// count maps of a statistics row, stored as one compressed column instead of a collection table per map,
+// a loaded value keeps only the compressed bytes until the maps are read for the first time
+public final class StatisticsCounts {
+    static final StatisticsCounts EMPTY = new StatisticsCounts(new Maps(null, null, null, null, null, null));
+
+    private static final int FORMAT_VERSION = 1;
+    private static final int NULL_MAP = -1;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private byte[] encoded;
+    private Maps maps;
+
+    StatisticsCounts(Maps maps) {
+        this.maps = maps;
+    }
+
+    private StatisticsCounts(byte[] encoded) {
+        this.encoded = encoded;
+    }
+
+    static StatisticsCounts decodeLazily(byte[] encoded) {
+        return new StatisticsCounts(encoded);
+    }
+
+    public synchronized Maps maps() {
+        if (maps == null) {
+            maps = decode(encoded);
+        }
+        return maps;
+    }
+
+    synchronized byte[] encoded() {
+        if (encoded == null) {
+            encoded = encode(maps);
+        }
+        return encoded;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || o instanceof StatisticsCounts other && maps().equals(other.maps());
+    }
+
+    @Override
+    public int hashCode() {
+        return maps().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return maps().toString();
+    }
+
+    @With
+    public record Maps(
+            Map<String, Integer> remoteAddresses,
+            Map<String, Integer> remoteUsers,
+            Map<ZonedDateTime, Integer> requestsOnDate,
+            Map<String, Integer> requestMethods,
+            Map<String, Integer> requestResources,
+            Map<Short, Integer> statuses
+    ) {
+    }
+
+    @SneakyThrows
+    private static byte[] encode(Maps maps) {
+        var bytes = new ByteArrayOutputStream();
+        try (var out = new DataOutputStream(
+                new BufferedOutputStream(new DeflaterOutputStream(bytes), BUFFER_SIZE))) {
+            out.writeByte(FORMAT_VERSION);
+            writeStringMap(out, maps.remoteAddresses());
+            writeStringMap(out, maps.remoteUsers());
+            writeDateMap(out, maps.requestsOnDate());
+            writeStringMap(out, maps.requestMethods());
+            writeStringMap(out, maps.requestResources());
+            writeStatusMap(out, maps.statuses());
+        }
+        return bytes.toByteArray();
+    }
+
+    @SneakyThrows
+    private static Maps decode(byte[] encoded) {
+        try (var in = new DataInputStream(
+                new BufferedInputStream(new InflaterInputStream(new ByteArrayInputStream(encoded)), BUFFER_SIZE))) {
+            int version = in.readUnsignedByte();
+            if (version != FORMAT_VERSION) {
+                throw new IllegalStateException("Unknown statistics counts format: " + version);
+            }
+            return new Maps(
+                    readStringMap(in),
+                    readStringMap(in),
+                    readDateMap(in),
+                    readStringMap(in),
+                    readStringMap(in),
+                    readStatusMap(in)
+            );
+        }
+    }
+
+    private static void writeStringMap(DataOutputStream out, Map<String, Integer> map) throws IOException {
+        out.writeInt(map == null ? NULL_MAP : map.size());
+        if (map != null) {
+            for (var entry : map.entrySet()) {
+                writeString(out, entry.getKey());
+                out.writeInt(entry.getValue());
+            }
+        }
+    }
+
+    private static Map<String, Integer> readStringMap(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        if (size == NULL_MAP) {
+            return null;
+        }
+        Map<String, Integer> map = HashMap.newHashMap(size);
+        for (int i = 0; i < size; i++) {
+            map.put(readString(in), in.readInt());
+        }
+        return map;
+    }
+
+    // keys keep their zone, so a decoded map is equal to the gathered one
+    private static void writeDateMap(DataOutputStream out, Map<ZonedDateTime, Integer> map) throws IOException {
+        out.writeInt(map == null ? NULL_MAP : map.size());
+        if (map != null) {
+            for (var entry : map.entrySet()) {
+                ZonedDateTime date = entry.getKey();
+                out.writeLong(date.toEpochSecond());
+                out.writeInt(date.getNano());
+                writeString(out, date.getZone().getId());
+                out.writeInt(entry.getValue());
+            }
+        }
+    }
+
+    private static Map<ZonedDateTime, Integer> readDateMap(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        if (size == NULL_MAP) {
+            return null;
+        }
+        Map<ZonedDateTime, Integer> map = HashMap.newHashMap(size);
+        for (int i = 0; i < size; i++) {
+            var instant = Instant.ofEpochSecond(in.readLong(), in.readInt());
+            map.put(ZonedDateTime.ofInstant(instant, ZoneId.of(readString(in))), in.readInt());
+        }
+        return map;
+    }
+
+    private static void writeStatusMap(DataOutputStream out, Map<Short, Integer> map) throws IOException {
+        out.writeInt(map == null ? NULL_MAP : map.size());
+        if (map != null) {
+            for (var entry : map.entrySet()) {
+                out.writeShort(entry.getKey());
+                out.writeInt(entry.getValue());
+            }
+        }
+    }
+
+    private static Map<Short, Integer> readStatusMap(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        if (size == NULL_MAP) {
+            return null;
+        }
+        Map<Short, Integer> map = HashMap.newHashMap(size);
+        for (int i = 0; i < size; i++) {
+            map.put(in.readShort(), in.readInt());
+        }
+        return map;
+    }
+
+    // writeUTF is limited to 64 KiB, request resources may be longer
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,18 @@
+package ru.nextupvamp.model.entities;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+@Converter
+public class StatisticsCountsConverter implements AttributeConverter<StatisticsCounts, byte[]> {
+    @Override
+    public byte[] convertToDatabaseColumn(StatisticsCounts counts) {
+        return counts == null ? null : counts.encoded();
+    }
+
+    // maps are decoded when they are read, not when the row is loaded
+    @Override
+    public StatisticsCounts convertToEntityAttribute(byte[] encoded) {
+        return encoded == null ? StatisticsCounts.EMPTY : StatisticsCounts.decodeLazily(encoded);
+    }
+}
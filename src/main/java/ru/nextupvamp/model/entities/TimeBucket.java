@@ -0,0 +1,15 @@
+package ru.nextupvamp.model.entities;
+
+public enum TimeBucket {
+    SECOND(1), MINUTE(60), HOUR(60 * 60), DAY(24 * 60 * 60);
+
+    private final long seconds;
+
+    TimeBucket(long seconds) {
+        this.seconds = seconds;
+    }
+
+    public long seconds() {
+        return seconds;
+    }
+}
@@ -0,0 +1,15 @@
+package ru.nextupvamp.model.handlers;
+
+import ru.nextupvamp.model.entities.TimeBucket;
+
+import java.io.Serializable;
+
+public record AccumulatorSettings(
+        double quantileRelativeError,
+        TimeBucket timeBucket,
+        Integer topK, // null if full maps are gathered
+        boolean rollup) implements Serializable { // if set, a per minute rollup is recorded as well
+    AccumulatorSettings withoutRollup() {
+        return new AccumulatorSettings(quantileRelativeError, timeBucket, topK, false);
+    }
+}
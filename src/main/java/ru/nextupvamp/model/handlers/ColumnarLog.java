@@ -0,0 +1,416 @@
+package ru.nextupvamp.model.handlers;
+
+import ru.nextupvamp.model.data.LogData;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.stream.Stream;
+
+// parsed rows of a log file stored next to it in columns, so later gatherings with any filters
+// scan memory mapped columns instead of parsing the text again. every segment is a line aligned
+// part of the file with its own string dictionaries, so filters are evaluated once per distinct value
+public final class ColumnarLog implements AutoCloseable {
+    private static final String SIDECAR_SUFFIX = ".cols";
+    private static final int FORMAT_VERSION = 1;
+    private static final LogField[] STRING_COLUMNS = {
+            LogField.REMOTE_ADDRESS,
+            LogField.REMOTE_USER,
+            LogField.REQUEST_METHOD,
+            LogField.REQUEST_RESOURCE,
+            LogField.REQUEST_HTTP_VERSION,
+            LogField.HTTP_REFERER,
+            LogField.HTTP_USER_AGENT
+    };
+    private static final int STATUS_CODES = 1000;
+    private static final long MAX_SEGMENT_SIZE = 8 << 20; // rows of a segment are decoded at once
+
+    private final FileChannel channel; // kept open, so a concurrent rebuild does not affect this instance
+    private final String fileKey;
+    private final long sourceSize;
+    private final long tailChecksum;
+    private final List<Segment> segments;
+
+    private ColumnarLog(
+            FileChannel channel,
+            String fileKey,
+            long sourceSize,
+            long tailChecksum,
+            List<Segment> segments
+    ) {
+        this.channel = channel;
+        this.fileKey = fileKey;
+        this.sourceSize = sourceSize;
+        this.tailChecksum = tailChecksum;
+        this.segments = segments;
+    }
+
+    public static Path sidecarOf(Path file) {
+        return file.resolveSibling(file.getFileName() + SIDECAR_SUFFIX);
+    }
+
+    // part of the source file [sourceStart, sourceEnd) stored at [offset, offset + length) of the sidecar
+    record Segment(
+            long sourceStart,
+            long sourceEnd,
+            long offset,
+            long length,
+            int rows,
+            int ignoredRows,
+            long minEpochSecond,
+            long maxEpochSecond
+    ) {
+    }
+
+    long sourceSize() {
+        return sourceSize;
+    }
+
+    List<Segment> segments() {
+        return segments;
+    }
+
+    // the store is extended when the file has been appended and rebuilt when it has been rewritten
+    static ColumnarLog loadOrBuild(Path file, LogLineParser parser) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        String fileKey = String.valueOf(attributes.fileKey());
+        long size = attributes.size();
+        Path sidecar = sidecarOf(file);
+
+        ColumnarLog saved = load(sidecar);
+        if (saved != null && saved.fileKey.equals(fileKey) && saved.sourceSize <= size
+                && saved.tailChecksum == FileChecksums.tailChecksum(file, saved.sourceSize)) {
+            if (saved.sourceSize == size) {
+                return saved;
+            }
+            // the last segment might end with an incomplete line, so it is encoded again
+            try (saved) {
+                List<Segment> kept = saved.segments.subList(0, Math.max(saved.segments.size() - 1, 0));
+                long from = kept.isEmpty() ? 0 : kept.getLast().sourceEnd();
+                return build(file, fileKey, size, parser, saved, kept, from);
+            }
+        }
+        if (saved != null) {
+            saved.close();
+        }
+        return build(file, fileKey, size, parser, null, List.of(), 0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // rows of the segments which may contain matching rows, already filtered.
+    // ignored rows are not streamed, they are counted by ignoredRows
+    Stream<LogData> rows(RowFilter filter, ZonedDateTime fromDate, ZonedDateTime toDate, GatheringProgress progress) {
+        long fromEpochSecond = fromDate != null ? fromDate.toEpochSecond() : Long.MIN_VALUE;
+        long toEpochSecond = toDate != null ? toDate.toEpochSecond() : Long.MAX_VALUE;
+        return segments.parallelStream()
+                .filter(it -> it.rows() > 0 && it.maxEpochSecond() >= fromEpochSecond
+                        && it.minEpochSecond() <= toEpochSecond)
+                .flatMap(it -> readSegment(it, filter, progress).stream());
+    }
+
+    long ignoredRows() {
+        return segments.stream().mapToLong(Segment::ignoredRows).sum();
+    }
+
+    private List<LogData> readSegment(Segment segment, RowFilter filter, GatheringProgress progress) {
+        ByteBuffer buffer;
+        try {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, segment.offset(), segment.length());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        int rows = buffer.getInt(0);
+        int position = Integer.BYTES;
+        String[][] dictionaries = new String[STRING_COLUMNS.length][];
+        boolean[][] accepted = new boolean[STRING_COLUMNS.length][];
+        for (int column = 0; column < STRING_COLUMNS.length; column++) {
+            int dictionarySize = buffer.getInt(position);
+            position += Integer.BYTES;
+            String[] dictionary = new String[dictionarySize];
+            for (int i = 0; i < dictionarySize; i++) {
+                int length = buffer.getInt(position);
+                byte[] bytes = new byte[length];
+                buffer.get(position + Integer.BYTES, bytes);
+                dictionary[i] = ValueDictionary.of(STRING_COLUMNS[column]).intern(new String(bytes, StandardCharsets.UTF_8));
+                position += Integer.BYTES + length;
+            }
+            dictionaries[column] = dictionary;
+            accepted[column] = filter.acceptedValues(STRING_COLUMNS[column], dictionary);
+        }
+
+        int idsStart = position;
+        int epochsStart = idsStart + STRING_COLUMNS.length * rows * Integer.BYTES;
+        int offsetsStart = epochsStart + rows * Long.BYTES;
+        int statusesStart = offsetsStart + rows * Integer.BYTES;
+        int bytesStart = statusesStart + rows * Short.BYTES;
+        boolean[] acceptedStatuses = filter.acceptedStatuses();
+        boolean filtersBytes = filter.filters(LogField.BYTES_SENT);
+
+        List<LogData> result = new ArrayList<>();
+        int[] ids = new int[STRING_COLUMNS.length];
+        long lastEpochSecond = Long.MIN_VALUE;
+        int lastOffset = Integer.MIN_VALUE;
+        ZonedDateTime timeLocal = null;
+        boolean timeAccepted = false;
+        rows:
+        for (int row = 0; row < rows; row++) {
+            long epochSecond = buffer.getLong(epochsStart + row * Long.BYTES);
+            int offset = buffer.getInt(offsetsStart + row * Integer.BYTES);
+            if (epochSecond != lastEpochSecond || offset != lastOffset) {
+                timeLocal = ZonedDateTime.ofInstant(
+                        Instant.ofEpochSecond(epochSecond), ZoneOffset.ofTotalSeconds(offset));
+                timeAccepted = filter.testTime(timeLocal);
+                lastEpochSecond = epochSecond;
+                lastOffset = offset;
+            }
+            if (!timeAccepted) {
+                continue;
+            }
+
+            short status = buffer.getShort(statusesStart + row * Short.BYTES);
+            if (acceptedStatuses != null && !acceptedStatuses[Math.floorMod(status, STATUS_CODES)]) {
+                continue;
+            }
+            long bytesSent = buffer.getLong(bytesStart + row * Long.BYTES);
+            if (filtersBytes && !filter.accepts(LogField.BYTES_SENT, String.valueOf(bytesSent))) {
+                continue;
+            }
+            for (int column = 0; column < STRING_COLUMNS.length; column++) {
+                ids[column] = buffer.getInt(idsStart + (column * rows + row) * Integer.BYTES);
+                if (accepted[column] != null && !accepted[column][ids[column]]) {
+                    continue rows;
+                }
+            }
+
+            result.add(LogData.builder()
+                    .remoteAddress(dictionaries[0][ids[0]])
+                    .remoteUser(dictionaries[1][ids[1]])
+                    .timeLocal(timeLocal)
+                    .requestMethod(dictionaries[2][ids[2]])
+                    .requestResource(dictionaries[3][ids[3]])
+                    .requestHttpVersion(dictionaries[4][ids[4]])
+                    .status(status)
+                    .bytesSent(bytesSent)
+                    .httpReferer(dictionaries[5][ids[5]])
+                    .httpUserAgent(dictionaries[6][ids[6]])
+                    .build());
+        }
+        progress.add(rows + segment.ignoredRows(), segment.sourceEnd() - segment.sourceStart());
+        return result;
+    }
+
+    // segments are encoded in parallel batches and written in order, so memory stays bounded
+    private static ColumnarLog build(
+            Path file,
+            String fileKey,
+            long size,
+            LogLineParser parser,
+            ColumnarLog previous,
+            List<Segment> kept,
+            long from
+    ) throws IOException {
+        Path sidecar = sidecarOf(file);
+        Path temporary = Files.createTempFile(
+                sidecar.toAbsolutePath().getParent(), sidecar.getFileName().toString(), ".tmp");
+        try {
+            List<Segment> segments = new ArrayList<>();
+            try (FileChannel source = FileChannel.open(file, StandardOpenOption.READ);
+                 FileChannel target = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                long offset = 0;
+                if (!kept.isEmpty()) {
+                    long keptLength = kept.getLast().offset() + kept.getLast().length();
+                    transferFully(previous.channel, target, keptLength);
+                    offset = keptLength;
+                    segments.addAll(kept);
+                }
+
+                int parallelism = LogsStreamReader.currentParallelism();
+                long segmentSize = Math.min(LogsStreamReader.chunkSize(size, parallelism), MAX_SEGMENT_SIZE);
+                List<FileChunk> chunks = LogsStreamReader.splitIntoChunks(source, from, size, segmentSize);
+                for (int batchStart = 0; batchStart < chunks.size(); batchStart += parallelism) {
+                    int batchEnd = Math.min(batchStart + parallelism, chunks.size());
+                    List<EncodedSegment> batch = chunks.subList(batchStart, batchEnd).parallelStream()
+                            .map(chunk -> encodeSegment(source, chunk, parser))
+                            .toList();
+                    for (EncodedSegment encoded : batch) {
+                        ByteBuffer bytes = ByteBuffer.wrap(encoded.bytes());
+                        while (bytes.hasRemaining()) {
+                            target.write(bytes);
+                        }
+                        segments.add(encoded.toSegment(offset));
+                        offset += encoded.bytes().length;
+                    }
+                }
+            }
+
+            long tailChecksum = FileChecksums.tailChecksum(file, size);
+            writeDirectory(temporary, fileKey, size, tailChecksum, segments);
+            Files.move(temporary, sidecar, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            FileChannel channel = FileChannel.open(sidecar, StandardOpenOption.READ);
+            return new ColumnarLog(channel, fileKey, size, tailChecksum, segments);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+    }
+
+    private static void transferFully(FileChannel source, FileChannel target, long length) throws IOException {
+        long transferred = 0;
+        while (transferred < length) {
+            transferred += source.transferTo(transferred, length - transferred, target);
+        }
+    }
+
+    private record EncodedSegment(FileChunk chunk, byte[] bytes, int rows, int ignoredRows, long min, long max) {
+        Segment toSegment(long offset) {
+            return new Segment(chunk.start(), chunk.end(), offset, bytes.length, rows, ignoredRows, min, max);
+        }
+    }
+
+    private static EncodedSegment encodeSegment(FileChannel source, FileChunk chunk, LogLineParser parser) {
+        List<Map<String, Integer>> dictionaries = new ArrayList<>();
+        for (int column = 0; column < STRING_COLUMNS.length; column++) {
+            dictionaries.add(new LinkedHashMap<>());
+        }
+        ByteArrayOutputStream[] columnBytes = new ByteArrayOutputStream[STRING_COLUMNS.length + 4];
+        DataOutputStream[] columns = new DataOutputStream[columnBytes.length];
+        for (int i = 0; i < columns.length; i++) {
+            columnBytes[i] = new ByteArrayOutputStream();
+            columns[i] = new DataOutputStream(columnBytes[i]);
+        }
+        int rows = 0;
+        int ignoredRows = 0;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+
+        try {
+            for (String line : (Iterable<String>) LogsStreamReader.readLines(source, chunk)::iterator) {
+                LogData logData = parser.parseLine(line);
+                if (logData == LogData.IGNORED) {
+                    ignoredRows++;
+                    continue;
+                }
+                for (int column = 0; column < STRING_COLUMNS.length; column++) {
+                    Map<String, Integer> dictionary = dictionaries.get(column);
+                    String value = STRING_COLUMNS[column].valueOf(logData);
+                    columns[column].writeInt(dictionary.computeIfAbsent(value, it -> dictionary.size()));
+                }
+                long epochSecond = logData.timeLocal().toEpochSecond();
+                columns[STRING_COLUMNS.length].writeLong(epochSecond);
+                columns[STRING_COLUMNS.length + 1].writeInt(logData.timeLocal().getOffset().getTotalSeconds());
+                columns[STRING_COLUMNS.length + 2].writeShort(logData.status());
+                columns[STRING_COLUMNS.length + 3].writeLong(logData.bytesSent());
+                min = Math.min(min, epochSecond);
+                max = Math.max(max, epochSecond);
+                rows++;
+            }
+
+            ByteArrayOutputStream segmentBytes = new ByteArrayOutputStream();
+            DataOutputStream segment = new DataOutputStream(segmentBytes);
+            segment.writeInt(rows);
+            for (Map<String, Integer> dictionary : dictionaries) {
+                segment.writeInt(dictionary.size());
+                for (String value : dictionary.keySet()) {
+                    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                    segment.writeInt(bytes.length);
+                    segment.write(bytes);
+                }
+            }
+            for (ByteArrayOutputStream column : columnBytes) {
+                column.writeTo(segment);
+            }
+            return new EncodedSegment(chunk, segmentBytes.toByteArray(), rows, ignoredRows, min, max);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // the directory is appended after the segments, the last long of the file is its offset
+    private static void writeDirectory(
+            Path temporary,
+            String fileKey,
+            long sourceSize,
+            long tailChecksum,
+            List<Segment> segments
+    ) throws IOException {
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            long directoryOffset = channel.size();
+            ByteArrayOutputStream directoryBytes = new ByteArrayOutputStream();
+            DataOutputStream directory = new DataOutputStream(directoryBytes);
+            directory.writeInt(FORMAT_VERSION);
+            directory.writeUTF(fileKey);
+            directory.writeLong(sourceSize);
+            directory.writeLong(tailChecksum);
+            directory.writeInt(segments.size());
+            for (Segment segment : segments) {
+                directory.writeLong(segment.sourceStart());
+                directory.writeLong(segment.sourceEnd());
+                directory.writeLong(segment.offset());
+                directory.writeLong(segment.length());
+                directory.writeInt(segment.rows());
+                directory.writeInt(segment.ignoredRows());
+                directory.writeLong(segment.minEpochSecond());
+                directory.writeLong(segment.maxEpochSecond());
+            }
+            directory.writeLong(directoryOffset);
+
+            ByteBuffer bytes = ByteBuffer.wrap(directoryBytes.toByteArray());
+            channel.position(directoryOffset);
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        }
+    }
+
+    private static ColumnarLog load(Path sidecar) throws IOException {
+        if (Files.notExists(sidecar)) {
+            return null;
+        }
+        FileChannel channel = FileChannel.open(sidecar, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            ByteBuffer offsetBuffer = ByteBuffer.allocate(Long.BYTES);
+            channel.read(offsetBuffer, size - Long.BYTES);
+            long directoryOffset = offsetBuffer.getLong(0);
+            if (directoryOffset < 0 || directoryOffset > size - Long.BYTES) {
+                channel.close();
+                return null;
+            }
+
+            // not closed, it would close the channel
+            DataInputStream directory = new DataInputStream(new BufferedInputStream(
+                    Channels.newInputStream(channel.position(directoryOffset))));
+            if (directory.readInt() != FORMAT_VERSION) {
+                channel.close();
+                return null;
+            }
+            String fileKey = directory.readUTF();
+            long sourceSize = directory.readLong();
+            long tailChecksum = directory.readLong();
+            int count = directory.readInt();
+            List<Segment> segments = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                segments.add(new Segment(directory.readLong(), directory.readLong(), directory.readLong(),
+                        directory.readLong(), directory.readInt(), directory.readInt(),
+                        directory.readLong(), directory.readLong()));
+            }
+            return new ColumnarLog(channel, fileKey, sourceSize, tailChecksum, segments);
+        } catch (IOException | IllegalArgumentException e) {
+            channel.close();
+            return null; // corrupted, built again
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package ru.nextupvamp.model.handlers;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+// single threaded key counter with mutable int cells, meant to be owned by one worker and merged afterwards
+class CountingMap<K> implements KeyCounter<K>, Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+    static final long ENTRY_SIZE = 128; // hash map node and table slot, counter cell and a short key
+
+    private Map<K, Counter> counters = new HashMap<>();
+
+    @Override
+    public void increment(K key) {
+        add(key, 1);
+    }
+
+    void add(K key, int amount) {
+        Counter counter = counters.get(key);
+        if (counter == null) {
+            counter = new Counter();
+            counters.put(key, counter);
+        }
+        counter.value += amount;
+    }
+
+    @Override
+    public void merge(KeyCounter<K> keyCounter) {
+        CountingMap<K> other = (CountingMap<K>) keyCounter;
+        if (other.counters.size() > counters.size()) {
+            Map<K, Counter> smaller = counters;
+            counters = other.counters;
+            other.counters = smaller;
+        }
+        other.counters.forEach((key, counter) -> {
+            Counter existing = counters.putIfAbsent(key, counter);
+            if (existing != null) {
+                existing.value += counter.value;
+            }
+        });
+    }
+
+    @Override
+    public CountingMap<K> copy() {
+        CountingMap<K> copy = new CountingMap<>();
+        counters.forEach((key, counter) -> copy.add(key, counter.value));
+        return copy;
+    }
+
+    int size() {
+        return counters.size();
+    }
+
+    @Override
+    public long estimatedSize() {
+        return counters.size() * ENTRY_SIZE;
+    }
+
+    @Override
+    public Map<K, Integer> toMap() {
+        Map<K, Integer> result = new HashMap<>(Math.max(16, (int) (counters.size() / 0.75f) + 1));
+        counters.forEach((key, counter) -> result.put(key, counter.value));
+        return result;
+    }
+
+    private static class Counter implements Serializable {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private int value;
+    }
+}
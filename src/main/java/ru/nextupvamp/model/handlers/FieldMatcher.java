@@ -0,0 +1,16 @@
+package ru.nextupvamp.model.handlers;
+
+// compiled filter of a single field, matches the whole [start, end) slice of a line like Matcher.matches()
+interface FieldMatcher {
+    boolean matches(String text, int start, int end);
+
+    // relative evaluation cost, a literal comparison is about 1
+    double cost();
+
+    // estimated share of rows passing the filter
+    double passRate();
+
+    default boolean matches(String value) {
+        return matches(value, 0, value.length());
+    }
+}
@@ -0,0 +1,50 @@
+package ru.nextupvamp.model.handlers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+// cheap checks telling whether a file prefix is still the one that has been read before
+final class FileChecksums {
+    static final int WINDOW = 4096;
+
+    private FileChecksums() {
+    }
+
+    // checksum of the last bytes before the offset
+    static long tailChecksum(Path file, long offset) throws IOException {
+        int length = (int) Math.min(offset, WINDOW);
+        return checksum(file, offset - length, length);
+    }
+
+    static long headChecksum(Path file, long size) throws IOException {
+        return checksum(file, 0, Math.min(size, WINDOW));
+    }
+
+    static boolean endsWithLineBreak(Path file, long offset) throws IOException {
+        if (offset == 0) {
+            return true;
+        }
+        ByteBuffer lastByte = ByteBuffer.allocate(1);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.read(lastByte, offset - 1) == 1 && lastByte.get(0) == '\n';
+        }
+    }
+
+    private static long checksum(Path file, long start, long length) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate((int) length);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (bytes.hasRemaining()) {
+                if (channel.read(bytes, start + bytes.position()) < 0) {
+                    break;
+                }
+            }
+        }
+        CRC32 crc32 = new CRC32();
+        crc32.update(bytes.flip());
+        return crc32.getValue();
+    }
+}
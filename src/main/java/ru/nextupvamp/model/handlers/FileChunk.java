@@ -0,0 +1,8 @@
+package ru.nextupvamp.model.handlers;
+
+// byte range [start, end) of a file that starts at a line beginning and ends right after a line break
+public record FileChunk(long start, long end) {
+    public long length() {
+        return end - start;
+    }
+}
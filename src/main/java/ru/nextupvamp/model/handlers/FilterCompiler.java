@@ -0,0 +1,551 @@
+package ru.nextupvamp.model.handlers;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+// turns filter regexes of common shapes into matchers which do not run the regex engine:
+// literals, prefixes, suffixes, substrings, alternations of literals and sequences of character classes.
+// anything else falls back to the regex, status filters are always evaluated into a lookup table
+final class FilterCompiler {
+    private static final int STATUS_CODES = 1000;
+    private static final int[] COMMON_STATUSES = {200, 204, 206, 301, 302, 304, 400, 401, 403, 404, 500, 502, 503};
+    private static final int MAX_LINEAR_ALTERNATIVES = 8;
+    private static final String METACHARACTERS = "\\^$.|?*+()[]{}";
+
+    private FilterCompiler() {
+    }
+
+    static FieldMatcher compile(LogField field, String regex) {
+        Pattern pattern = Pattern.compile(regex); // invalid filters fail here as before
+        if (field == LogField.STATUS) {
+            return statusTable(pattern);
+        }
+        FieldMatcher matcher = compileAlternatives(regex);
+        return matcher != null ? matcher : new RegexMatcher(pattern);
+    }
+
+    // status is at most three digits, so the regex is evaluated once for every possible value
+    private static FieldMatcher statusTable(Pattern pattern) {
+        BitSet matching = new BitSet(STATUS_CODES);
+        for (int status = 0; status < STATUS_CODES; status++) {
+            if (pattern.matcher(String.valueOf(status)).matches()) {
+                matching.set(status);
+            }
+        }
+        long common = Arrays.stream(COMMON_STATUSES).filter(matching::get).count();
+        return new StatusTable(matching, Math.max(0.01, (double) common / COMMON_STATUSES.length));
+    }
+
+    private static FieldMatcher compileAlternatives(String regex) {
+        List<String> branches = splitAlternatives(unwrapGroup(regex));
+        if (branches == null) {
+            return null;
+        }
+        if (branches.size() == 1) {
+            List<Atom> atoms = parseAtoms(branches.getFirst());
+            return atoms != null ? compileSequence(atoms) : null;
+        }
+
+        Set<String> literals = new LinkedHashSet<>();
+        for (String branch : branches) {
+            List<Atom> atoms = parseAtoms(branch);
+            String literal = atoms != null ? literalOf(atoms, 0, atoms.size()) : null;
+            if (literal == null) {
+                return null;
+            }
+            literals.add(literal);
+        }
+        return new LiteralSet(literals.toArray(String[]::new), literals.size() > MAX_LINEAR_ALTERNATIVES
+                ? new HashSet<>(literals) : null);
+    }
+
+    private static FieldMatcher compileSequence(List<Atom> atoms) {
+        int size = atoms.size();
+        String literal = literalOf(atoms, 0, size);
+        if (literal != null) {
+            return new Literal(literal);
+        }
+
+        boolean anyFirst = size > 1 && atoms.getFirst().isAnyString();
+        boolean anyLast = size > 1 && atoms.getLast().isAnyString();
+        String middle = literalOf(atoms, anyFirst ? 1 : 0, anyLast ? size - 1 : size);
+        if (middle != null) {
+            if (anyFirst && anyLast) {
+                return new Contains(middle);
+            }
+            return anyFirst ? new Suffix(middle) : new Prefix(middle);
+        }
+
+        if (size == 1 && atoms.getFirst().max > 1) {
+            return new RepeatedClass(atoms.getFirst());
+        }
+
+        List<CharClass> positions = new ArrayList<>();
+        for (int i = 0; i < (anyLast ? size - 1 : size); i++) {
+            Atom atom = atoms.get(i);
+            if (atom.min != atom.max) {
+                return null;
+            }
+            for (int j = 0; j < atom.min; j++) {
+                positions.add(atom.charClass);
+            }
+        }
+        return new ClassSequence(positions.toArray(CharClass[]::new), anyLast);
+    }
+
+    // literal text of atoms [from, to) if every one of them is a single character
+    private static String literalOf(List<Atom> atoms, int from, int to) {
+        if (from >= to) {
+            return null;
+        }
+        StringBuilder literal = new StringBuilder();
+        for (int i = from; i < to; i++) {
+            Atom atom = atoms.get(i);
+            if (atom.min != 1 || atom.max != 1 || atom.charClass.single < 0) {
+                return null;
+            }
+            literal.append((char) atom.charClass.single);
+        }
+        return literal.toString();
+    }
+
+    private static String unwrapGroup(String regex) {
+        String inner;
+        if (regex.startsWith("(?:") && regex.endsWith(")")) {
+            inner = regex.substring(3, regex.length() - 1);
+        } else if (regex.startsWith("(") && !regex.startsWith("(?") && regex.endsWith(")")) {
+            inner = regex.substring(1, regex.length() - 1);
+        } else {
+            return regex;
+        }
+        // (a)|(b) is not a single group
+        return inner.indexOf('(') < 0 && inner.indexOf(')') < 0 ? inner : regex;
+    }
+
+    // null if there are groups or the expression is too complex to split safely
+    private static List<String> splitAlternatives(String regex) {
+        List<String> branches = new ArrayList<>();
+        int branchStart = 0;
+        boolean inClass = false;
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '[') {
+                if (inClass) {
+                    return null;
+                }
+                inClass = true;
+            } else if (c == ']' && inClass) {
+                inClass = false;
+            } else if (!inClass && (c == '(' || c == ')')) {
+                return null;
+            } else if (!inClass && c == '|') {
+                branches.add(regex.substring(branchStart, i));
+                branchStart = i + 1;
+            }
+        }
+        branches.add(regex.substring(branchStart));
+        return inClass ? null : branches;
+    }
+
+    // null if the branch uses anything but single character atoms and greedy quantifiers
+    private static List<Atom> parseAtoms(String regex) {
+        List<Atom> atoms = new ArrayList<>();
+        int i = 0;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            CharClass charClass;
+            if (c == '\\') {
+                if (i + 1 >= regex.length()) {
+                    return null;
+                }
+                charClass = CharClass.escape(regex.charAt(i + 1));
+                i += 2;
+            } else if (c == '[') {
+                int end = classEnd(regex, i);
+                if (end < 0) {
+                    return null;
+                }
+                charClass = CharClass.parse(regex, i + 1, end);
+                i = end + 1;
+            } else if (c == '.') {
+                charClass = CharClass.ANY;
+                i++;
+            } else if (METACHARACTERS.indexOf(c) >= 0 || c >= 128) {
+                return null;
+            } else {
+                charClass = CharClass.single(c);
+                i++;
+            }
+            if (charClass == null) {
+                return null;
+            }
+
+            int min = 1;
+            int max = 1;
+            if (i < regex.length()) {
+                char quantifier = regex.charAt(i);
+                if (quantifier == '*' || quantifier == '+' || quantifier == '?') {
+                    min = quantifier == '+' ? 1 : 0;
+                    max = quantifier == '?' ? 1 : Integer.MAX_VALUE;
+                    i++;
+                } else if (quantifier == '{') {
+                    int end = regex.indexOf('}', i);
+                    if (end < 0) {
+                        return null;
+                    }
+                    int[] bounds = parseBounds(regex.substring(i + 1, end));
+                    if (bounds == null) {
+                        return null;
+                    }
+                    min = bounds[0];
+                    max = bounds[1];
+                    i = end + 1;
+                }
+                if (i < regex.length() && (regex.charAt(i) == '?' || regex.charAt(i) == '+')
+                        && (min != 1 || max != 1)) {
+                    return null; // lazy and possessive quantifiers
+                }
+            }
+            atoms.add(new Atom(charClass, min, max));
+        }
+        return atoms;
+    }
+
+    private static int classEnd(String regex, int start) {
+        int bodyStart = regex.startsWith("^", start + 1) ? start + 2 : start + 1;
+        if (regex.startsWith("]", bodyStart)) {
+            return -1; // leading ']' is parsed differently by regex flavours, left to the regex engine
+        }
+        for (int i = bodyStart; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '[') {
+                return -1; // nested classes
+            } else if (c == ']') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int[] parseBounds(String bounds) {
+        try {
+            int comma = bounds.indexOf(',');
+            if (comma < 0) {
+                int exact = Integer.parseInt(bounds);
+                return new int[]{exact, exact};
+            }
+            int min = Integer.parseInt(bounds.substring(0, comma));
+            int max = comma == bounds.length() - 1 ? Integer.MAX_VALUE : Integer.parseInt(bounds.substring(comma + 1));
+            return min <= max ? new int[]{min, max} : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private record Atom(CharClass charClass, int min, int max) {
+        boolean isAnyString() {
+            return charClass == CharClass.ANY && min == 0 && max == Integer.MAX_VALUE;
+        }
+    }
+
+    // ascii character set, non ascii characters only match negated classes and '.'
+    private static final class CharClass {
+        static final CharClass ANY = new CharClass(new boolean[128], true, -1);
+
+        private final boolean[] ascii;
+        private final boolean negated;
+        private final int single; // the only matching character or -1
+
+        private CharClass(boolean[] ascii, boolean negated, int single) {
+            this.ascii = ascii;
+            this.negated = negated;
+            this.single = single;
+        }
+
+        static CharClass single(char c) {
+            boolean[] ascii = new boolean[128];
+            ascii[c] = true;
+            return new CharClass(ascii, false, c);
+        }
+
+        static CharClass escape(char c) {
+            boolean[] ascii = new boolean[128];
+            if (!addEscape(ascii, c)) {
+                return null;
+            }
+            return METACHARACTERS.indexOf(c) >= 0 || c == '-' || c == '/' ? single(c) : new CharClass(ascii, false, -1);
+        }
+
+        // [...] body without the brackets, null for intersections and other unsupported syntax
+        static CharClass parse(String regex, int from, int to) {
+            boolean[] ascii = new boolean[128];
+            boolean negated = from < to && regex.charAt(from) == '^';
+            int i = negated ? from + 1 : from;
+            while (i < to) {
+                char c = regex.charAt(i);
+                if (c == '&' && i + 1 < to && regex.charAt(i + 1) == '&') {
+                    return null;
+                }
+                if (c == '\\') {
+                    if (i + 1 >= to || !addEscape(ascii, regex.charAt(i + 1))) {
+                        return null;
+                    }
+                    i += 2;
+                    continue;
+                }
+                if (c >= 128) {
+                    return null;
+                }
+                if (i + 2 < to && regex.charAt(i + 1) == '-') {
+                    char last = regex.charAt(i + 2);
+                    if (last == '\\' || last >= 128 || last < c) {
+                        return null;
+                    }
+                    for (char range = c; range <= last; range++) {
+                        ascii[range] = true;
+                    }
+                    i += 3;
+                    continue;
+                }
+                ascii[c] = true;
+                i++;
+            }
+            return new CharClass(ascii, negated, -1);
+        }
+
+        private static boolean addEscape(boolean[] ascii, char c) {
+            switch (c) {
+                case 'd' -> fill(ascii, '0', '9');
+                case 'w' -> {
+                    fill(ascii, 'a', 'z');
+                    fill(ascii, 'A', 'Z');
+                    fill(ascii, '0', '9');
+                    ascii['_'] = true;
+                }
+                case 's' -> {
+                    for (char space : new char[]{' ', '\t', '\n', 0x0B, '\f', '\r'}) {
+                        ascii[space] = true;
+                    }
+                }
+                default -> {
+                    if (METACHARACTERS.indexOf(c) < 0 && c != '-' && c != '/') {
+                        return false; // letters and digits are escapes with their own meaning
+                    }
+                    ascii[c] = true;
+                }
+            }
+            return true;
+        }
+
+        private static void fill(boolean[] ascii, char from, char to) {
+            for (char c = from; c <= to; c++) {
+                ascii[c] = true;
+            }
+        }
+
+        boolean matches(char c) {
+            if (this == ANY) {
+                return c != '\n' && c != '\r' && c != '\u0085' && c != '\u2028' && c != '\u2029';
+            }
+            return c < 128 ? ascii[c] != negated : negated;
+        }
+    }
+
+    private record StatusTable(BitSet matching, double passRate) implements FieldMatcher {
+        @Override
+        public boolean matches(String text, int start, int end) {
+            int status = 0;
+            for (int i = start; i < end; i++) {
+                char c = text.charAt(i);
+                if (c < '0' || c > '9' || status >= STATUS_CODES) {
+                    return false;
+                }
+                status = status * 10 + (c - '0');
+            }
+            return end > start && status < STATUS_CODES && matching.get(status);
+        }
+
+        @Override
+        public double cost() {
+            return 0.5;
+        }
+    }
+
+    private record Literal(String literal) implements FieldMatcher {
+        @Override
+        public boolean matches(String text, int start, int end) {
+            return end - start == literal.length() && text.startsWith(literal, start);
+        }
+
+        @Override
+        public double cost() {
+            return 1;
+        }
+
+        @Override
+        public double passRate() {
+            return 0.1;
+        }
+    }
+
+    private record LiteralSet(String[] literals, Set<String> lookup) implements FieldMatcher {
+        @Override
+        public boolean matches(String text, int start, int end) {
+            if (lookup != null) {
+                return lookup.contains(text.substring(start, end));
+            }
+            int length = end - start;
+            for (String literal : literals) {
+                if (literal.length() == length && text.startsWith(literal, start)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public double cost() {
+            return lookup != null ? 3 : literals.length;
+        }
+
+        @Override
+        public double passRate() {
+            return Math.min(0.9, 0.1 * literals.length);
+        }
+    }
+
+    private record Prefix(String prefix) implements FieldMatcher {
+        @Override
+        public boolean matches(String text, int start, int end) {
+            return end - start >= prefix.length() && text.startsWith(prefix, start) && noLineBreaks(text, start, end);
+        }
+
+        @Override
+        public double cost() {
+            return 1.5;
+        }
+
+        @Override
+        public double passRate() {
+            return 0.3;
+        }
+    }
+
+    private record Suffix(String suffix) implements FieldMatcher {
+        @Override
+        public boolean matches(String text, int start, int end) {
+            return end - start >= suffix.length() && text.startsWith(suffix, end - suffix.length())
+                    && noLineBreaks(text, start, end);
+        }
+
+        @Override
+        public double cost() {
+            return 1.5;
+        }
+
+        @Override
+        public double passRate() {
+            return 0.3;
+        }
+    }
+
+    private record Contains(String infix) implements FieldMatcher {
+        @Override
+        public boolean matches(String text, int start, int end) {
+            int found = text.indexOf(infix, start);
+            return found >= 0 && found + infix.length() <= end && noLineBreaks(text, start, end);
+        }
+
+        @Override
+        public double cost() {
+            return 4;
+        }
+
+        @Override
+        public double passRate() {
+            return 0.3;
+        }
+    }
+
+    // fixed length sequence of classes, optionally followed by .*
+    private record ClassSequence(CharClass[] positions, boolean openEnd) implements FieldMatcher {
+        @Override
+        public boolean matches(String text, int start, int end) {
+            int length = end - start;
+            if (openEnd ? length < positions.length : length != positions.length) {
+                return false;
+            }
+            for (int i = 0; i < positions.length; i++) {
+                if (!positions[i].matches(text.charAt(start + i))) {
+                    return false;
+                }
+            }
+            return !openEnd || allMatch(CharClass.ANY, text, start + positions.length, end);
+        }
+
+        @Override
+        public double cost() {
+            return 2;
+        }
+
+        @Override
+        public double passRate() {
+            return 0.5;
+        }
+    }
+
+    // a single class repeated between min and max times, like \d+ or [a-z]{2,8}
+    private record RepeatedClass(Atom atom) implements FieldMatcher {
+        @Override
+        public boolean matches(String text, int start, int end) {
+            int length = end - start;
+            return length >= atom.min() && length <= atom.max()
+                    && allMatch(atom.charClass(), text, start, end);
+        }
+
+        @Override
+        public double cost() {
+            return 2;
+        }
+
+        @Override
+        public double passRate() {
+            return 0.5;
+        }
+    }
+
+    private record RegexMatcher(Pattern pattern) implements FieldMatcher {
+        @Override
+        public boolean matches(String text, int start, int end) {
+            return pattern.matcher(text).region(start, end).matches();
+        }
+
+        @Override
+        public double cost() {
+            return 20;
+        }
+
+        @Override
+        public double passRate() {
+            return 0.5;
+        }
+    }
+
+    private static boolean allMatch(CharClass charClass, String text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (!charClass.matches(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // '.' does not match line terminators, fields never contain '\n' but may contain the others
+    private static boolean noLineBreaks(String text, int start, int end) {
+        return allMatch(CharClass.ANY, text, start, end);
+    }
+}
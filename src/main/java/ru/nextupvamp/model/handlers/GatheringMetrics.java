@@ -0,0 +1,179 @@
+package ru.nextupvamp.model.handlers;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.springframework.stereotype.Component;
+import ru.nextupvamp.model.data.LogData;
+import ru.nextupvamp.model.entities.ResourceType;
+import ru.nextupvamp.model.entities.Statistics;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collector;
+
+// meters of the gathering pipeline tagged by the resource type. Reading, parsing and aggregation
+// run fused in one parallel stream, so the scan is timed as a whole and parsing and aggregation
+// are timed on every SAMPLE_RATE-th row, the rest of the scan is mostly reading
+@Component
+public class GatheringMetrics {
+    public static final String FILE = "file";
+    public static final String URL = "url";
+    public static final String STREAM = "stream";
+    public static final String MERGED = "merged";
+    static final int SAMPLE_RATE = 64;
+
+    private static final String STAGE = "logs.gathering.stage";
+    private static final String SCAN = "scan";
+    private static final String PARSE = "parse"; // along with the filters tested on the raw line
+    private static final String AGGREGATE = "aggregate";
+    private static final String FINISH = "finish";
+
+    private final MeterRegistry registry;
+    private final boolean enabled;
+
+    public GatheringMetrics(MeterRegistry registry) {
+        this(registry, true);
+    }
+
+    private GatheringMetrics(MeterRegistry registry, boolean enabled) {
+        this.registry = registry;
+        this.enabled = enabled;
+    }
+
+    public static GatheringMetrics disabled() {
+        return new GatheringMetrics(new CompositeMeterRegistry(), false);
+    }
+
+    LogLineParser timedParser(LogLineParser parser, String type) {
+        if (!enabled) {
+            return parser;
+        }
+        Timer timer = stageTimer(PARSE, type);
+        return line -> {
+            if (!sampled()) {
+                return parser.parseLine(line);
+            }
+            long start = System.nanoTime();
+            LogData logData = parser.parseLine(line);
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return logData;
+        };
+    }
+
+    Collector<LogData, StatisticsAccumulator, StatisticsAccumulator> collector(
+            AccumulatorSettings settings,
+            String type
+    ) {
+        if (!enabled) {
+            return StatisticsAccumulator.collector(settings);
+        }
+        Timer timer = stageTimer(AGGREGATE, type);
+        return Collector.of(
+                () -> new StatisticsAccumulator(settings),
+                (accumulator, logData) -> {
+                    if (!sampled()) {
+                        accumulator.accept(logData);
+                        return;
+                    }
+                    long start = System.nanoTime();
+                    accumulator.accept(logData);
+                    timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                },
+                StatisticsAccumulator::combine
+        );
+    }
+
+    // lines and bytes are the ones reported to the progress during the scan
+    void scanned(String type, long startNanos, long lines, long bytes, long ignoredRows) {
+        if (!enabled) {
+            return;
+        }
+        long nanos = System.nanoTime() - startNanos;
+        stageTimer(SCAN, type).record(nanos, TimeUnit.NANOSECONDS);
+        ingested(type, lines, ignoredRows);
+        registry.counter("logs.gathering.bytes", "type", type).increment(bytes);
+        if (lines > 0 && nanos > 0) {
+            DistributionSummary.builder("logs.gathering.throughput")
+                    .baseUnit("lines.per.second")
+                    .tag("type", type)
+                    .register(registry)
+                    .record(lines * 1e9 / nanos);
+        }
+    }
+
+    void ingested(String type, long lines, long ignoredRows) {
+        if (!enabled) {
+            return;
+        }
+        registry.counter("logs.gathering.lines", "type", type).increment(lines);
+        registry.counter("logs.gathering.ignored.lines", "type", type).increment(ignoredRows);
+    }
+
+    void finished(String type, long startNanos, Statistics statistics) {
+        if (!enabled) {
+            return;
+        }
+        stageTimer(FINISH, type).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        recordCardinality(type, "remote_addresses", statistics.remoteAddresses());
+        recordCardinality(type, "remote_users", statistics.remoteUsers());
+        recordCardinality(type, "requests_on_date", statistics.requestsOnDate());
+        recordCardinality(type, "request_methods", statistics.requestMethods());
+        recordCardinality(type, "request_resources", statistics.requestResources());
+        recordCardinality(type, "statuses", statistics.statuses());
+    }
+
+    // the cache counts its own requests, meters read them on every scrape
+    void resultCache(StatisticsResultCache cache) {
+        if (!enabled) {
+            return;
+        }
+        FunctionCounter.builder("logs.statistics.cache.hits", cache, it -> it.stats().hits())
+                .register(registry);
+        FunctionCounter.builder("logs.statistics.cache.misses", cache, it -> it.stats().misses())
+                .register(registry);
+        FunctionCounter.builder("logs.statistics.cache.evictions", cache, it -> it.stats().evictions())
+                .register(registry);
+        Gauge.builder("logs.statistics.cache.entries", cache, it -> it.stats().size())
+                .register(registry);
+        Gauge.builder("logs.statistics.cache.size", cache, it -> it.stats().bytes())
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    // statistics and checkpoints are saved with their resource
+    public void timeSave(ResourceType type, Runnable save) {
+        if (!enabled) {
+            save.run();
+            return;
+        }
+        Timer.builder("logs.statistics.save")
+                .tag("type", type.name().toLowerCase(Locale.ROOT))
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(save);
+    }
+
+    private void recordCardinality(String type, String map, Map<?, ?> values) {
+        DistributionSummary.builder("logs.statistics.cardinality")
+                .tags("type", type, "map", map)
+                .register(registry)
+                .record(values != null ? values.size() : 0);
+    }
+
+    private Timer stageTimer(String stage, String type) {
+        return Timer.builder(STAGE)
+                .tags("stage", stage, "type", type)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private static boolean sampled() {
+        return ThreadLocalRandom.current().nextInt(SAMPLE_RATE) == 0;
+    }
+}
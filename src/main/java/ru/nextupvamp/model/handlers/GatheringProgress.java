@@ -0,0 +1,45 @@
+package ru.nextupvamp.model.handlers;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.LongAdder;
+
+// shared between the reading workers and whoever watches or cancels the gathering
+public class GatheringProgress {
+    private final LongAdder bytesProcessed = new LongAdder();
+    private final LongAdder linesProcessed = new LongAdder();
+    private volatile long totalBytes = -1; // unknown
+    private volatile boolean cancelled;
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean cancelled() {
+        return cancelled;
+    }
+
+    public long bytesProcessed() {
+        return bytesProcessed.sum();
+    }
+
+    public long linesProcessed() {
+        return linesProcessed.sum();
+    }
+
+    public long totalBytes() {
+        return totalBytes;
+    }
+
+    void totalBytes(long totalBytes) {
+        this.totalBytes = totalBytes;
+    }
+
+    // readers report in batches, the pipeline stops at the next report after cancelling
+    void add(long lines, long bytes) {
+        linesProcessed.add(lines);
+        bytesProcessed.add(bytes);
+        if (cancelled) {
+            throw new CancellationException("Gathering has been cancelled");
+        }
+    }
+}
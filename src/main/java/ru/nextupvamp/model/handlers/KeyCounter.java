@@ -0,0 +1,19 @@
+package ru.nextupvamp.model.handlers;
+
+import java.util.Map;
+
+// per worker counter of field values, implementations are not thread safe
+interface KeyCounter<K> {
+    void increment(K key);
+
+    // other must not be used after merging
+    void merge(KeyCounter<K> other);
+
+    Map<K, Integer> toMap();
+
+    // independent counter with the same counts
+    KeyCounter<K> copy();
+
+    // approximate retained bytes, keys are taken as short strings instead of being measured one by one
+    long estimatedSize();
+}
@@ -0,0 +1,116 @@
+package ru.nextupvamp.model.handlers;
+
+import ru.nextupvamp.model.data.LogData;
+import ru.nextupvamp.model.data.RollupDto;
+import ru.nextupvamp.model.entities.GatheringCheckpoint;
+import ru.nextupvamp.model.entities.Statistics;
+
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+// rolling statistics of a resource fed with pushed lines, every micro batch is parsed into its own
+// accumulator without locking and folded into the shared state afterwards, so concurrent pushes
+// only contend on the fold
+public class LiveStatistics {
+    static final int BATCH_LINES = 4096;
+
+    private final LogLineParser parser;
+    private final StatisticsAccumulator state;
+    private final String filtersFingerprint;
+    private final Function<StatisticsAccumulator, Statistics> finisher;
+    private final GatheringMetrics metrics;
+    private final AtomicLong linesIngested = new AtomicLong();
+    private final AtomicLong version = new AtomicLong(); // changes with every folded batch
+
+    LiveStatistics(
+            LogLineParser parser,
+            StatisticsAccumulator state,
+            long linesIngested,
+            String filtersFingerprint,
+            Function<StatisticsAccumulator, Statistics> finisher,
+            GatheringMetrics metrics
+    ) {
+        this.parser = parser;
+        this.state = state;
+        this.linesIngested.set(linesIngested);
+        this.filtersFingerprint = filtersFingerprint;
+        this.finisher = finisher;
+        this.metrics = metrics;
+    }
+
+    // returns the amount of lines ingested, lines read before a failure are kept
+    public long ingest(Stream<String> lines) {
+        long ingested = 0;
+        StatisticsAccumulator batch = newBatch();
+        int batchLines = 0;
+        try {
+            Iterator<String> iterator = lines.iterator();
+            while (iterator.hasNext()) {
+                String line = iterator.next();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                LogData logData = parser.parseLine(line);
+                if (logData != LogData.FILTERED) {
+                    batch.accept(logData);
+                }
+                ingested++;
+                if (++batchLines == BATCH_LINES) {
+                    fold(batch, batchLines);
+                    batch = newBatch();
+                    batchLines = 0;
+                }
+            }
+        } finally {
+            fold(batch, batchLines);
+        }
+        return ingested;
+    }
+
+    public synchronized Statistics statistics() {
+        return finisher.apply(state);
+    }
+
+    public synchronized RollupDto rollup(int minutes) {
+        MinuteRollup rollup = state.rollup();
+        return rollup != null ? rollup.window(minutes) : null;
+    }
+
+    public AccumulatorSettings settings() {
+        return state.settings();
+    }
+
+    public long linesIngested() {
+        return linesIngested.get();
+    }
+
+    public long version() {
+        return version.get();
+    }
+
+    // the state can be restored from the checkpoint after a restart while the filters stay the same,
+    // the offset holds the amount of lines instead of bytes
+    public synchronized void saveCheckpoint(GatheringCheckpoint checkpoint) {
+        checkpoint.offset(linesIngested.get())
+                .filtersFingerprint(filtersFingerprint)
+                .snapshot(state.toSnapshot());
+    }
+
+    private StatisticsAccumulator newBatch() {
+        return new StatisticsAccumulator(state.settings());
+    }
+
+    private void fold(StatisticsAccumulator batch, int lines) {
+        if (lines == 0) {
+            return;
+        }
+        synchronized (this) {
+            state.combine(batch);
+            linesIngested.addAndGet(lines);
+            version.incrementAndGet();
+        }
+        metrics.ingested(GatheringMetrics.STREAM, lines, batch.ignoredRows());
+    }
+}
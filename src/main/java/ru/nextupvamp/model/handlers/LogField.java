@@ -0,0 +1,41 @@
+package ru.nextupvamp.model.handlers;
+
+import ru.nextupvamp.model.data.LogData;
+
+import java.util.function.Function;
+
+import static ru.nextupvamp.model.handlers.NginxLogLineParser.*;
+
+// log line fields which can be filtered by, named as in the filter map
+enum LogField {
+    REMOTE_ADDRESS(REMOTE_ADDRESS_GROUP, LogData::remoteAddress),
+    REMOTE_USER(USER_GROUP, LogData::remoteUser),
+    REQUEST_METHOD(METHOD_GROUP, LogData::requestMethod),
+    REQUEST_RESOURCE(RESOURCE_GROUP, LogData::requestResource),
+    REQUEST_HTTP_VERSION(HTTP_GROUP, LogData::requestHttpVersion),
+    STATUS(STATUS_GROUP, it -> String.valueOf(it.status())),
+    BYTES_SENT(BYTES_GROUP, it -> String.valueOf(it.bytesSent())),
+    HTTP_REFERER(REFERER_GROUP, LogData::httpReferer),
+    HTTP_USER_AGENT(USER_AGENT_GROUP, LogData::httpUserAgent);
+
+    private final String filterName;
+    private final Function<LogData, String> getter;
+
+    LogField(String filterName, Function<LogData, String> getter) {
+        this.filterName = filterName;
+        this.getter = getter;
+    }
+
+    String valueOf(LogData logData) {
+        return getter.apply(logData);
+    }
+
+    static LogField byFilterName(String filterName) {
+        for (LogField field : values()) {
+            if (field.filterName.equals(filterName)) {
+                return field;
+            }
+        }
+        throw new IllegalArgumentException("Unknown filter field: " + filterName);
+    }
+}
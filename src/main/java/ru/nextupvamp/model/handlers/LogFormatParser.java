@@ -0,0 +1,269 @@
+package ru.nextupvamp.model.handlers;
+
+import ru.nextupvamp.model.data.LogData;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import static ru.nextupvamp.model.handlers.NginxLogLineParser.*;
+
+// nginx log_format compiled once into a scanner: the text between the variables is matched in place
+// and every variable is read up to the text following it, so no regex is interpreted per line.
+// Variables which don't make it into LogData, like $upstream_response_time, are skipped
+public final class LogFormatParser implements LogLineParser {
+    private final String[] literals; // literals[i] comes before variables[i], the last one ends the line
+    private final Variable[] variables;
+    private final TimeLocalParser timeLocalParser = new TimeLocalParser();
+
+    private LogFormatParser(String[] literals, Variable[] variables) {
+        this.literals = literals;
+        this.variables = variables;
+    }
+
+    public static LogFormatParser compile(String logFormat) {
+        if (logFormat == null || logFormat.isBlank()) {
+            throw new IllegalArgumentException("Log format is empty");
+        }
+
+        List<String> literals = new ArrayList<>();
+        List<Variable> variables = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < logFormat.length()) {
+            char c = logFormat.charAt(i);
+            if (c != '$') {
+                literal.append(c);
+                i++;
+                continue;
+            }
+
+            boolean braced = i + 1 < logFormat.length() && logFormat.charAt(i + 1) == '{';
+            int nameStart = braced ? i + 2 : i + 1;
+            int nameEnd = nameStart;
+            while (nameEnd < logFormat.length() && isNameChar(logFormat.charAt(nameEnd))) {
+                nameEnd++;
+            }
+            if (nameEnd == nameStart || (braced && (nameEnd == logFormat.length() || logFormat.charAt(nameEnd) != '}'))) {
+                throw new IllegalArgumentException("Malformed variable at " + i + " in log format");
+            }
+            if (!variables.isEmpty() && literal.isEmpty()) {
+                throw new IllegalArgumentException("Variables of log format must be separated by some text");
+            }
+            literals.add(literal.toString());
+            literal.setLength(0);
+            variables.add(Variable.byName(logFormat.substring(nameStart, nameEnd)));
+            i = braced ? nameEnd + 1 : nameEnd;
+        }
+        literals.add(literal.toString());
+
+        Set<Variable> present = variables.isEmpty() ? EnumSet.noneOf(Variable.class) : EnumSet.copyOf(variables);
+        if (!present.contains(Variable.TIME_LOCAL) && !present.contains(Variable.TIME_ISO8601)) {
+            throw new IllegalArgumentException("Log format must contain $time_local or $time_iso8601");
+        }
+        if (!present.contains(Variable.STATUS)) {
+            throw new IllegalArgumentException("Log format must contain $status");
+        }
+        if (!present.contains(Variable.REQUEST)
+                && (!present.contains(Variable.REQUEST_METHOD)
+                || !present.contains(Variable.REQUEST_URI) && !present.contains(Variable.URI))) {
+            throw new IllegalArgumentException("Log format must contain $request or $request_method and $request_uri");
+        }
+        return new LogFormatParser(literals.toArray(String[]::new), variables.toArray(Variable[]::new));
+    }
+
+    @Override
+    public LogData parseLine(String line) {
+        if (!line.startsWith(literals[0])) {
+            return LogData.IGNORED;
+        }
+
+        // nginx logs empty values as "-", so values missing from the format are the same for the statistics
+        String empty = EMPTY_VALUES[0];
+        LogData.LogDataBuilder builder = LogData.builder()
+                .remoteAddress(empty)
+                .remoteUser(empty)
+                .requestHttpVersion(empty)
+                .httpReferer(empty)
+                .httpUserAgent(empty);
+        int position = literals[0].length();
+        for (int i = 0; i < variables.length; i++) {
+            String next = literals[i + 1];
+            int end = next.isEmpty() ? line.length() : line.indexOf(next, position);
+            if (end < 0 || !variables[i].read(line, position, end, builder, timeLocalParser)) {
+                return LogData.IGNORED;
+            }
+            position = end + next.length();
+        }
+        return position == line.length() ? builder.build() : LogData.IGNORED;
+    }
+
+    private static boolean isNameChar(char c) {
+        return c == '_' || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+    }
+
+    private enum Variable {
+        REMOTE_ADDR {
+            @Override
+            boolean read(String line, int start, int end, LogData.LogDataBuilder builder, TimeLocalParser times) {
+                builder.remoteAddress(ADDRESSES.intern(line, start, end));
+                return end > start;
+            }
+        },
+        REMOTE_USER {
+            @Override
+            boolean read(String line, int start, int end, LogData.LogDataBuilder builder, TimeLocalParser times) {
+                builder.remoteUser(USERS.intern(line, start, end));
+                return true;
+            }
+        },
+        TIME_LOCAL {
+            @Override
+            boolean read(String line, int start, int end, LogData.LogDataBuilder builder, TimeLocalParser times) {
+                if (end - start != TimeLocalParser.TIME_LOCAL_LENGTH) {
+                    return false;
+                }
+                ZonedDateTime timeLocal = times.parseTimeLocal(line, start);
+                builder.timeLocal(timeLocal);
+                return timeLocal != null;
+            }
+        },
+        TIME_ISO8601 {
+            @Override
+            boolean read(String line, int start, int end, LogData.LogDataBuilder builder, TimeLocalParser times) {
+                ZonedDateTime timeLocal = times.parseIso8601(line, start, end);
+                builder.timeLocal(timeLocal);
+                return timeLocal != null;
+            }
+        },
+        // method, resource and protocol separated by spaces
+        REQUEST {
+            @Override
+            boolean read(String line, int start, int end, LogData.LogDataBuilder builder, TimeLocalParser times) {
+                int methodEnd = line.indexOf(' ', start);
+                int resourceEnd = line.lastIndexOf(' ', end - 1);
+                if (methodEnd < 0 || methodEnd >= end || resourceEnd <= methodEnd + 1) {
+                    return false;
+                }
+                String method = lookup(METHODS, line, start, methodEnd);
+                builder.requestMethod(method)
+                        .requestResource(RESOURCES.intern(line, methodEnd + 1, resourceEnd))
+                        .requestHttpVersion(slice(HTTP_VERSIONS, line, resourceEnd + 1, end));
+                return method != null;
+            }
+        },
+        REQUEST_METHOD {
+            @Override
+            boolean read(String line, int start, int end, LogData.LogDataBuilder builder, TimeLocalParser times) {
+                String method = lookup(METHODS, line, start, end);
+                builder.requestMethod(method);
+                return method != null;
+            }
+        },
+        REQUEST_URI {
+            @Override
+            boolean read(String line, int start, int end, LogData.LogDataBuilder builder, TimeLocalParser times) {
+                builder.requestResource(RESOURCES.intern(line, start, end));
+                return end > start;
+            }
+        },
+        URI {
+            @Override
+            boolean read(String line, int start, int end, LogData.LogDataBuilder builder, TimeLocalParser times) {
+                return REQUEST_URI.read(line, start, end, builder, times);
+            }
+        },
+        SERVER_PROTOCOL {
+            @Override
+            boolean read(String line, int start, int end, LogData.LogDataBuilder builder, TimeLocalParser times) {
+                builder.requestHttpVersion(slice(HTTP_VERSIONS, line, start, end));
+                return true;
+            }
+        },
+        STATUS {
+            @Override
+            boolean read(String line, int start, int end, LogData.LogDataBuilder builder, TimeLocalParser times) {
+                int status = end - start == 3 ? parseDigits(line, start, end) : -1;
+                builder.status((short) status);
+                return status >= 0;
+            }
+        },
+        BODY_BYTES_SENT {
+            @Override
+            boolean read(String line, int start, int end, LogData.LogDataBuilder builder, TimeLocalParser times) {
+                if (end <= start || end - start > MAX_BYTES_DIGITS) {
+                    return false;
+                }
+                long bytesSent = parseLongDigits(line, start, end);
+                builder.bytesSent(bytesSent);
+                return bytesSent >= 0;
+            }
+        },
+        BYTES_SENT {
+            @Override
+            boolean read(String line, int start, int end, LogData.LogDataBuilder builder, TimeLocalParser times) {
+                return BODY_BYTES_SENT.read(line, start, end, builder, times);
+            }
+        },
+        HTTP_REFERER {
+            @Override
+            boolean read(String line, int start, int end, LogData.LogDataBuilder builder, TimeLocalParser times) {
+                builder.httpReferer(REFERERS.intern(line, start, end));
+                return true;
+            }
+        },
+        HTTP_USER_AGENT {
+            @Override
+            boolean read(String line, int start, int end, LogData.LogDataBuilder builder, TimeLocalParser times) {
+                builder.httpUserAgent(USER_AGENTS.intern(line, start, end));
+                return true;
+            }
+        },
+        // seconds with a milliseconds resolution, "-" if unknown
+        REQUEST_TIME {
+            @Override
+            boolean read(String line, int start, int end, LogData.LogDataBuilder builder, TimeLocalParser times) {
+                if (end - start == 1 && line.charAt(start) == '-') {
+                    return true;
+                }
+                int point = line.indexOf('.', start);
+                if (point < 0 || point >= end) {
+                    point = end;
+                }
+                if (point == start || point - start > MAX_BYTES_DIGITS - 3 || end - point > 4) {
+                    return false;
+                }
+                long seconds = parseLongDigits(line, start, point);
+                long fraction = point < end ? parseLongDigits(line, point + 1, end) : 0;
+                if (seconds < 0 || fraction < 0) {
+                    return false;
+                }
+                for (int digits = Math.max(0, end - point - 1); digits < 3; digits++) {
+                    fraction *= 10;
+                }
+                builder.requestTime(seconds * 1000 + fraction);
+                return true;
+            }
+        },
+        SKIPPED {
+            @Override
+            boolean read(String line, int start, int end, LogData.LogDataBuilder builder, TimeLocalParser times) {
+                return true;
+            }
+        };
+
+        static Variable byName(String name) {
+            for (Variable variable : values()) {
+                if (variable != SKIPPED && variable.name().equalsIgnoreCase(name)) {
+                    return variable;
+                }
+            }
+            return SKIPPED;
+        }
+
+        // returns false if the value is malformed
+        abstract boolean read(String line, int start, int end, LogData.LogDataBuilder builder, TimeLocalParser times);
+    }
+}
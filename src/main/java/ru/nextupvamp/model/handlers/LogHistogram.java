@@ -0,0 +1,103 @@
+package ru.nextupvamp.model.handlers;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+// HDR style log-linear histogram of non negative values. Values below 2^precision are counted exactly,
+// bigger ones fall into buckets whose width is at most 2 * relativeError of their lower bound, so the
+// memory is fixed (a few thousand longs for 1% error) no matter how many values are recorded.
+public class LogHistogram implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private final int precision;
+    private final long[] counts;
+    private long totalCount;
+    private long sum;
+    private long max;
+
+    public LogHistogram(double relativeError) {
+        if (!(relativeError > 0 && relativeError < 1)) {
+            throw new IllegalArgumentException("Relative error must be between 0 and 1");
+        }
+        precision = Math.max(1, (int) Math.ceil(Math.log(1 / relativeError) / Math.log(2)));
+        counts = new long[bucketIndex(Long.MAX_VALUE) + 1];
+    }
+
+    public void record(long value) {
+        value = Math.max(value, 0);
+        counts[bucketIndex(value)]++;
+        totalCount++;
+        sum += value;
+        max = Math.max(max, value);
+    }
+
+    public LogHistogram merge(LogHistogram other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Histograms with different precision can't be merged");
+        }
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        sum += other.sum;
+        max = Math.max(max, other.max);
+        return this;
+    }
+
+    long estimatedSize() {
+        return (long) counts.length * Long.BYTES;
+    }
+
+    public long totalCount() {
+        return totalCount;
+    }
+
+    public long max() {
+        return max;
+    }
+
+    public long average() {
+        return totalCount == 0 ? 0 : sum / totalCount;
+    }
+
+    // the value at index (int) (totalCount * quantile) of the sorted values
+    public long valueAtQuantile(double quantile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+
+        long rank = Math.min((long) (totalCount * quantile), totalCount - 1);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen > rank) {
+                return Math.min(bucketMiddle(i), max);
+            }
+        }
+        return max;
+    }
+
+    private int bucketIndex(long value) {
+        int subBuckets = 1 << precision;
+        if (value < subBuckets) {
+            return (int) value;
+        }
+
+        int magnitude = 64 - Long.numberOfLeadingZeros(value) - precision;
+        int halfSubBuckets = subBuckets >> 1;
+        return subBuckets + (magnitude - 1) * halfSubBuckets + (int) (value >>> magnitude) - halfSubBuckets;
+    }
+
+    private long bucketMiddle(int index) {
+        int subBuckets = 1 << precision;
+        if (index < subBuckets) {
+            return index;
+        }
+
+        int halfSubBuckets = subBuckets >> 1;
+        int magnitude = (index - subBuckets) / halfSubBuckets + 1;
+        long lowerBound = (long) ((index - subBuckets) % halfSubBuckets + halfSubBuckets) << magnitude;
+        return lowerBound + (1L << (magnitude - 1));
+    }
+}
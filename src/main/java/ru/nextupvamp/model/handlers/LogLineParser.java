@@ -4,4 +4,11 @@ import ru.nextupvamp.model.data.LogData;
 
 public interface LogLineParser {
     LogData parseLine(String line);
+
+    // returns FILTERED for well formed rows rejected by the filter,
+    // parsers which know the field boundaries check the filter before building the row
+    default LogData parseLine(String line, RowFilter filter) {
+        LogData logData = parseLine(line);
+        return logData == LogData.IGNORED || filter.test(logData) ? logData : LogData.FILTERED;
+    }
 }
@@ -0,0 +1,17 @@
+package ru.nextupvamp.model.handlers;
+
+import ru.nextupvamp.model.entities.ResourceFilters;
+
+import java.net.URI;
+import java.nio.file.Path;
+
+// one of the resources gathered into merged statistics, either file or uri is set
+public record LogSource(Path file, URI uri, ResourceFilters filters) {
+    public static LogSource ofFile(Path file, ResourceFilters filters) {
+        return new LogSource(file, null, filters);
+    }
+
+    public static LogSource ofUri(URI uri, ResourceFilters filters) {
+        return new LogSource(null, uri, filters);
+    }
+}
@@ -1,13 +1,55 @@
 package ru.nextupvamp.model.handlers;
 
+import ru.nextupvamp.model.entities.GatheringCheckpoint;
 import ru.nextupvamp.model.entities.ResourceFilters;
 import ru.nextupvamp.model.entities.Statistics;
 
 import java.net.URI;
 import java.nio.file.Path;
+import java.util.List;
 
 public interface LogsStatisticsGatherer {
-    Statistics gatherStatisticsFromFile(Path file, ResourceFilters filters);
+    default Statistics gatherStatisticsFromFile(Path file, ResourceFilters filters) {
+        return gatherStatisticsFromFile(file, filters, new GatheringProgress());
+    }
 
-    Statistics gatherStatisticsFromUri(URI uri, ResourceFilters filters);
+    Statistics gatherStatisticsFromFile(Path file, ResourceFilters filters, GatheringProgress progress);
+
+    default Statistics gatherStatisticsFromFile(Path file, ResourceFilters filters, GatheringCheckpoint checkpoint) {
+        return gatherStatisticsFromFile(file, filters, checkpoint, new GatheringProgress());
+    }
+
+    // parses only the bytes appended since the checkpoint if possible, the checkpoint is updated in place
+    Statistics gatherStatisticsFromFile(
+            Path file,
+            ResourceFilters filters,
+            GatheringCheckpoint checkpoint,
+            GatheringProgress progress
+    );
+
+    default Statistics gatherStatisticsFromUri(URI uri, ResourceFilters filters) {
+        return gatherStatisticsFromUri(uri, filters, new GatheringProgress());
+    }
+
+    Statistics gatherStatisticsFromUri(URI uri, ResourceFilters filters, GatheringProgress progress);
+
+    default Statistics gatherStatisticsFromUri(URI uri, ResourceFilters filters, GatheringCheckpoint checkpoint) {
+        return gatherStatisticsFromUri(uri, filters, checkpoint, new GatheringProgress());
+    }
+
+    // fetches only the bytes appended since the checkpoint with a range request if the server supports it,
+    // the checkpoint is updated in place
+    Statistics gatherStatisticsFromUri(
+            URI uri,
+            ResourceFilters filters,
+            GatheringCheckpoint checkpoint,
+            GatheringProgress progress
+    );
+
+    // sources are gathered concurrently, at most parallelism at a time, and their partial states are merged,
+    // all the filters have to share the same time bucket and top k
+    Statistics gatherMergedStatistics(List<LogSource> sources, int parallelism);
+
+    // state for lines pushed to a resource, restored from the checkpoint if it was saved with the same filters
+    LiveStatistics liveStatistics(ResourceFilters filters, GatheringCheckpoint checkpoint);
 }
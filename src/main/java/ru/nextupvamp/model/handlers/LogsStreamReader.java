@@ -4,29 +4,82 @@ import lombok.SneakyThrows;
 import ru.nextupvamp.model.data.LogData;
 
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URI;
 import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class LogsStreamReader implements AutoCloseable {
+    private static final int CHUNKS_PER_THREAD = 4; // some slack to balance uneven chunks
+    private static final long MIN_CHUNK_SIZE = 1 << 20;
+    private static final long MAX_CHUNK_SIZE = 64 << 20;
+    private static final int ALIGNMENT_BUFFER_SIZE = 8 << 10;
+    private static final int PROGRESS_REPORT_LINES = 1 << 12;
+
     private InputStream inputStream;
     private InputStreamReader inputStreamReader;
     private BufferedReader bufferedReader;
+    private FileChannel fileChannel;
     private final HttpClient httpClient = HttpClient.newHttpClient();
+    private final GatheringProgress progress;
+
+    public LogsStreamReader() {
+        this(new GatheringProgress());
+    }
+
+    public LogsStreamReader(GatheringProgress progress) {
+        this.progress = progress;
+    }
 
     @SneakyThrows
     public Stream<LogData> readFromFileAsStream(Path file, LogLineParser parser) {
         inputStream = Files.newInputStream(file);
         initReaders(inputStream);
 
-        return bufferedReader.lines().map(parser::parseLine);
+        return bufferedReader.lines().map(line -> parseWithProgress(line, parser));
+    }
+
+    // the file is split into newline aligned chunks which are memory mapped and parsed independently,
+    // so the returned stream is parallel and every worker reads its own part of the file
+    @SneakyThrows
+    public Stream<LogData> readFromFileInChunksAsStream(Path file, LogLineParser parser) {
+        return readFromFileInChunksAsStream(file, 0, Files.size(file), parser);
+    }
+
+    // reads the byte range [from, to), from must be a line start
+    public Stream<LogData> readFromFileInChunksAsStream(Path file, long from, long to, LogLineParser parser) {
+        return readFromFileRangesInChunksAsStream(file, List.of(new FileChunk(from, to)), parser);
+    }
+
+    // reads several byte ranges as one stream, every range has to start at a line start
+    @SneakyThrows
+    public Stream<LogData> readFromFileRangesInChunksAsStream(Path file, List<FileChunk> ranges, LogLineParser parser) {
+        fileChannel = FileChannel.open(file, StandardOpenOption.READ);
+        long length = ranges.stream().mapToLong(FileChunk::length).sum();
+        long chunkSize = chunkSize(length, currentParallelism());
+
+        List<FileChunk> chunks = new ArrayList<>();
+        for (FileChunk range : ranges) {
+            chunks.addAll(splitIntoChunks(fileChannel, range.start(), range.end(), chunkSize));
+        }
+        return chunks.parallelStream()
+                .flatMap(chunk -> readLines(fileChannel, chunk, progress).map(parser::parseLine));
     }
 
     @SneakyThrows
@@ -34,17 +87,168 @@ public class LogsStreamReader implements AutoCloseable {
         HttpRequest request = HttpRequest.newBuilder()
                 .uri(uri)
                 .build();
-        inputStream = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream()).body();
+        HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        response.headers().firstValueAsLong("Content-Length").ifPresent(progress::totalBytes);
+        inputStream = response.body();
         initReaders(inputStream);
 
-        return bufferedReader.lines().map(parser::parseLine);
+        return bufferedReader.lines().map(line -> parseWithProgress(line, parser));
+    }
+
+    // requests the content from the given offset on, a server may still answer with the whole content (200),
+    // with 416 if the content has become shorter or with 304 if it has not changed since the validator was read
+    @SneakyThrows
+    RemoteLogContent openUri(URI uri, long from, String validator) {
+        HttpRequest.Builder request = HttpRequest.newBuilder().uri(uri);
+        if (from > 0) {
+            request.header("Range", "bytes=" + from + "-");
+        }
+        if (validator != null) {
+            String[] parts = validator.split("\\|", -1);
+            if (!parts[0].isEmpty()) {
+                request.header("If-None-Match", parts[0]);
+            } else if (parts.length > 1 && !parts[1].isEmpty()) {
+                request.header("If-Modified-Since", parts[1]);
+            }
+        }
+
+        HttpResponse<InputStream> response = httpClient.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+        inputStream = response.body();
+        HttpHeaders headers = response.headers();
+        long start = response.statusCode() == RemoteLogContent.PARTIAL_CONTENT
+                ? headers.firstValue("Content-Range").map(LogsStreamReader::rangeStart).orElse(-1L)
+                : 0;
+        return new RemoteLogContent(
+                response.statusCode(),
+                start,
+                validator(headers),
+                headers.firstValueAsLong("Content-Length").orElse(-1),
+                inputStream
+        );
+    }
+
+    Stream<LogData> readFromRemoteContentAsStream(RemoteLogContent content, LogLineParser parser) {
+        if (content.contentLength() >= 0) {
+            progress.totalBytes(content.contentLength());
+        }
+        inputStream = content.body();
+        initReaders(inputStream);
+
+        return bufferedReader.lines().map(line -> parseWithProgress(line, parser));
+    }
+
+    // "bytes 100-199/200" or "bytes 100-199/*"
+    private static long rangeStart(String contentRange) {
+        int start = contentRange.indexOf(' ') + 1;
+        int end = contentRange.indexOf('-', start);
+        try {
+            return end > start ? Long.parseLong(contentRange.substring(start, end).trim()) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String validator(HttpHeaders headers) {
+        Optional<String> eTag = headers.firstValue("ETag");
+        Optional<String> lastModified = headers.firstValue("Last-Modified");
+        if (eTag.isEmpty() && lastModified.isEmpty()) {
+            return null;
+        }
+        return eTag.orElse("") + "|" + lastModified.orElse("");
+    }
+
+    // ETag or Last-Modified of the remote resource, null if the server provides neither
+    public String readUriVersion(URI uri) {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(uri)
+                .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                .build();
+        try {
+            HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+            if (response.statusCode() / 100 != 2) {
+                return null;
+            }
+            return validator(response.headers());
+        } catch (IOException e) {
+            return null; // the actual read will report the problem
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    static Stream<String> readLines(FileChannel channel, FileChunk chunk) {
+        return readLines(channel, chunk, new GatheringProgress());
+    }
+
+    @SneakyThrows
+    static Stream<String> readLines(FileChannel channel, FileChunk chunk, GatheringProgress progress) {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, chunk.start(), chunk.length());
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(
+                        new MappedLinesIterator(buffer, progress), Spliterator.ORDERED | Spliterator.NONNULL),
+                false);
+    }
+
+    // decoded line length is close enough to the byte count for progress reporting
+    private LogData parseWithProgress(String line, LogLineParser parser) {
+        progress.add(1, line.length() + 1);
+        return parser.parseLine(line);
+    }
+
+    // parallel streams run in the pool of the thread starting them, which is the scheduler pool for gatherings
+    static int currentParallelism() {
+        return ForkJoinTask.inForkJoinPool()
+                ? ForkJoinTask.getPool().getParallelism()
+                : ForkJoinPool.getCommonPoolParallelism();
+    }
+
+    static long chunkSize(long fileSize, int parallelism) {
+        long chunkSize = fileSize / ((long) Math.max(parallelism, 1) * CHUNKS_PER_THREAD);
+        return Math.clamp(chunkSize, MIN_CHUNK_SIZE, MAX_CHUNK_SIZE);
+    }
+
+    static List<FileChunk> splitIntoChunks(FileChannel channel, long from, long to, long chunkSize)
+            throws IOException {
+        List<FileChunk> chunks = new ArrayList<>();
+        long start = from;
+        while (start < to) {
+            long end = to - start <= chunkSize ? to : nextLineStart(channel, start + chunkSize, to);
+            chunks.add(new FileChunk(start, end));
+            start = end;
+        }
+        return chunks;
+    }
+
+    private static long nextLineStart(FileChannel channel, long position, long limit) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(ALIGNMENT_BUFFER_SIZE);
+        while (position < limit) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return Math.min(position + i + 1, limit);
+                }
+            }
+            position += read;
+        }
+        return limit;
     }
 
     @Override
     public void close() throws Exception {
-        inputStream.close();
-        inputStreamReader.close();
-        bufferedReader.close();
+        if (inputStream != null) {
+            inputStream.close();
+        }
+        if (bufferedReader != null) {
+            bufferedReader.close();
+        }
+        if (fileChannel != null) {
+            fileChannel.close();
+        }
         httpClient.close();
     }
 
@@ -52,4 +256,65 @@ public class LogsStreamReader implements AutoCloseable {
         inputStreamReader = new InputStreamReader(inputStream, StandardCharsets.UTF_8);
         bufferedReader = new BufferedReader(inputStreamReader);
     }
+
+    // splits a mapped chunk by '\n' the same way BufferedReader.lines() does
+    private static class MappedLinesIterator implements Iterator<String> {
+        private final ByteBuffer buffer;
+        private final GatheringProgress progress;
+        private byte[] lineBytes = new byte[256];
+        private int position;
+        private int reportedPosition;
+        private int unreportedLines;
+
+        MappedLinesIterator(ByteBuffer buffer, GatheringProgress progress) {
+            this.buffer = buffer;
+            this.progress = progress;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (position < buffer.limit()) {
+                return true;
+            }
+            reportProgress();
+            return false;
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            int limit = buffer.limit();
+            int lineStart = position;
+            int lineEnd = lineStart;
+            while (lineEnd < limit && buffer.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            position = lineEnd + 1;
+            if (++unreportedLines == PROGRESS_REPORT_LINES) {
+                reportProgress();
+            }
+            if (lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r') {
+                lineEnd--;
+            }
+
+            int length = lineEnd - lineStart;
+            if (lineBytes.length < length) {
+                lineBytes = new byte[Math.max(length, lineBytes.length * 2)];
+            }
+            buffer.get(lineStart, lineBytes, 0, length);
+            return new String(lineBytes, 0, length, StandardCharsets.UTF_8);
+        }
+
+        private void reportProgress() {
+            int reportTo = Math.min(position, buffer.limit());
+            if (unreportedLines > 0 || reportTo > reportedPosition) {
+                progress.add(unreportedLines, reportTo - reportedPosition);
+                unreportedLines = 0;
+                reportedPosition = reportTo;
+            }
+        }
+    }
 }
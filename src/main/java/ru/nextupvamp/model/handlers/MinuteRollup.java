@@ -0,0 +1,198 @@
+package ru.nextupvamp.model.handlers;
+
+import ru.nextupvamp.model.data.LogData;
+import ru.nextupvamp.model.data.RollupDto;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+// per minute counters of the latest day of requests in a ring indexed by minute, so a window query
+// reads only its own minutes, minutes older than a day before the newest one are dropped.
+// Rings of several workers are merged slot by slot
+class MinuteRollup implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    static final int MINUTES = 24 * 60;
+    static final int TOP_RESOURCES = 10;
+    private static final int TOP_RESOURCES_CAPACITY = 4 * TOP_RESOURCES;
+    private static final int SECONDS_IN_MINUTE = 60;
+
+    private final Slot[] slots = new Slot[MINUTES];
+    private long newestMinute = Long.MIN_VALUE;
+
+    void record(LogData it) {
+        Slot slot = slot(Math.floorDiv(it.timeLocal().toEpochSecond(), SECONDS_IN_MINUTE));
+        if (slot != null) {
+            slot.record(it);
+        }
+    }
+
+    // other must not be used after merging
+    void merge(MinuteRollup other) {
+        newestMinute = Math.max(newestMinute, other.newestMinute);
+        for (Slot otherSlot : other.slots) {
+            if (otherSlot == null || expired(otherSlot.minute)) {
+                continue;
+            }
+            int index = index(otherSlot.minute);
+            Slot slot = slots[index];
+            if (slot == null || slot.minute < otherSlot.minute) {
+                slots[index] = otherSlot;
+            } else if (slot.minute == otherSlot.minute) {
+                slot.merge(otherSlot);
+            }
+        }
+    }
+
+    // merging a slot only reads the other one, so every slot is merged into a new one
+    MinuteRollup copy() {
+        MinuteRollup copy = new MinuteRollup();
+        copy.newestMinute = newestMinute;
+        for (int i = 0; i < MINUTES; i++) {
+            if (slots[i] != null) {
+                copy.slots[i] = new Slot(slots[i].minute);
+                copy.slots[i].merge(slots[i]);
+            }
+        }
+        return copy;
+    }
+
+    // the window ends with the newest minute seen, which is not the current one for old logs
+    RollupDto window(int minutes) {
+        if (minutes <= 0 || minutes > MINUTES) {
+            throw new IllegalArgumentException("Window must be from 1 to " + MINUTES + " minutes");
+        }
+        if (newestMinute == Long.MIN_VALUE) {
+            return new RollupDto(null, null, 0, 0, Map.of(), Map.of(), Map.of());
+        }
+
+        long firstMinute = newestMinute - minutes + 1;
+        long requests = 0;
+        long bytesSent = 0;
+        Map<Short, Integer> statuses = new TreeMap<>();
+        SpaceSaving<String> resources = new SpaceSaving<>(TOP_RESOURCES, TOP_RESOURCES_CAPACITY);
+        Map<ZonedDateTime, Integer> requestsPerMinute = new LinkedHashMap<>();
+        for (long minute = firstMinute; minute <= newestMinute; minute++) {
+            Slot slot = slots[index(minute)];
+            if (slot == null || slot.minute != minute) {
+                continue;
+            }
+            requests += slot.requests;
+            bytesSent += slot.bytesSent;
+            for (int i = 0; i < slot.statusesSize; i++) {
+                statuses.merge(slot.statusCodes[i], slot.statusCounts[i], Integer::sum);
+            }
+            resources.merge(slot.resources); // reads the slot summary only
+            requestsPerMinute.put(minuteStart(minute), slot.requests);
+        }
+        return new RollupDto(
+                minuteStart(firstMinute),
+                minuteStart(newestMinute + 1),
+                requests,
+                bytesSent,
+                statuses,
+                resources.toMap(),
+                requestsPerMinute
+        );
+    }
+
+    long estimatedSize() {
+        long size = (long) MINUTES * Long.BYTES;
+        for (Slot slot : slots) {
+            if (slot != null) {
+                size += slot.estimatedSize();
+            }
+        }
+        return size;
+    }
+
+    private Slot slot(long minute) {
+        if (expired(minute)) {
+            return null;
+        }
+        newestMinute = Math.max(newestMinute, minute);
+        int index = index(minute);
+        Slot slot = slots[index];
+        if (slot == null || slot.minute < minute) { // the previous minute of the slot is out of the ring
+            slot = new Slot(minute);
+            slots[index] = slot;
+        } else if (slot.minute > minute) {
+            return null;
+        }
+        return slot;
+    }
+
+    private boolean expired(long minute) {
+        return newestMinute != Long.MIN_VALUE && minute <= newestMinute - MINUTES;
+    }
+
+    private static int index(long minute) {
+        return Math.floorMod(minute, MINUTES);
+    }
+
+    private static ZonedDateTime minuteStart(long minute) {
+        return ZonedDateTime.ofInstant(Instant.ofEpochSecond(minute * SECONDS_IN_MINUTE), ZoneOffset.UTC);
+    }
+
+    private static class Slot implements Serializable {
+        @Serial
+        private static final long serialVersionUID = 1L;
+        private static final long SLOT_SIZE = 96; // the slot with the headers of its arrays and summary
+
+        private final long minute;
+        private int requests;
+        private long bytesSent;
+        // a minute has just a few distinct statuses, so they are scanned instead of hashed
+        private short[] statusCodes = new short[4];
+        private int[] statusCounts = new int[4];
+        private int statusesSize;
+        private final SpaceSaving<String> resources = new SpaceSaving<>(TOP_RESOURCES, TOP_RESOURCES_CAPACITY);
+
+        Slot(long minute) {
+            this.minute = minute;
+        }
+
+        void record(LogData it) {
+            requests++;
+            bytesSent += it.bytesSent();
+            addStatus(it.status(), 1);
+            resources.increment(it.requestResource());
+        }
+
+        void merge(Slot other) {
+            requests += other.requests;
+            bytesSent += other.bytesSent;
+            for (int i = 0; i < other.statusesSize; i++) {
+                addStatus(other.statusCodes[i], other.statusCounts[i]);
+            }
+            resources.merge(other.resources);
+        }
+
+        long estimatedSize() {
+            return SLOT_SIZE + (long) statusCodes.length * (Short.BYTES + Integer.BYTES) + resources.estimatedSize();
+        }
+
+        private void addStatus(short status, int amount) {
+            for (int i = 0; i < statusesSize; i++) {
+                if (statusCodes[i] == status) {
+                    statusCounts[i] += amount;
+                    return;
+                }
+            }
+            if (statusesSize == statusCodes.length) {
+                statusCodes = Arrays.copyOf(statusCodes, statusesSize * 2);
+                statusCounts = Arrays.copyOf(statusCounts, statusesSize * 2);
+            }
+            statusCodes[statusesSize] = status;
+            statusCounts[statusesSize++] = amount;
+        }
+    }
+}
@@ -1,21 +1,16 @@
 package ru.nextupvamp.model.handlers;
 
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 import ru.nextupvamp.model.data.LogData;
 
 import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.Locale;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
+// single pass scanner for the nginx combined log format:
+// $remote_addr - $remote_user [$time_local] "$request" $status $body_bytes_sent "$http_referer" "$http_user_agent"
 @Component
+@ConditionalOnProperty(name = "logs.parser", havingValue = "scanner", matchIfMissing = true)
 public class NginxLogLineParser implements LogLineParser {
-    private static final Pattern LOG_PATTERN = Pattern.compile("(?<address>\\S+) - (?<user>\\S+) \\[(?<time>.*)] "
-            + "\"(?<method>GET|POST|HEAD|PUT|DELETE|CONNECT|OPTIONS|TRACE|PATCH) (?<resource>\\S+) "
-            + "(?<http>[^\"]+)\" (?<status>\\d{3}) (?<bytes>\\d+) \"(?<referer>[^\"]+)\" \"(?<userAgent>[^\"]+)\".*");
-    private static final String LOG_DATE_FORMAT = "dd/MMM/yyyy:HH:mm:ss Z";
-    private static final Locale LOG_DATE_LOCALE = Locale.ENGLISH;
     static final String REMOTE_ADDRESS_GROUP = "address";
     static final String USER_GROUP = "user";
     static final String TIME_GROUP = "time";
@@ -27,27 +22,175 @@ public class NginxLogLineParser implements LogLineParser {
     static final String REFERER_GROUP = "referer";
     static final String USER_AGENT_GROUP = "userAgent";
 
+    static final String[] METHODS =
+            {"GET", "POST", "HEAD", "PUT", "DELETE", "CONNECT", "OPTIONS", "TRACE", "PATCH"};
+    static final String[] HTTP_VERSIONS = {"HTTP/1.1", "HTTP/1.0", "HTTP/2.0", "HTTP/2", "HTTP/3"};
+    static final String[] EMPTY_VALUES = {"-"};
+    static final int MAX_BYTES_DIGITS = 18; // keeps the value inside long range
+    static final ValueDictionary ADDRESSES = ValueDictionary.of(LogField.REMOTE_ADDRESS);
+    static final ValueDictionary USERS = ValueDictionary.of(LogField.REMOTE_USER);
+    static final ValueDictionary RESOURCES = ValueDictionary.of(LogField.REQUEST_RESOURCE);
+    static final ValueDictionary REFERERS = ValueDictionary.of(LogField.HTTP_REFERER);
+    static final ValueDictionary USER_AGENTS = ValueDictionary.of(LogField.HTTP_USER_AGENT);
+
+    private final TimeLocalParser timeLocalParser = new TimeLocalParser();
+
     @Override
     public LogData parseLine(String line) {
-        Matcher matcher = LOG_PATTERN.matcher(line);
-        if (!matcher.matches()) {
+        return parseLine(line, RowFilter.ACCEPT_ALL);
+    }
+
+    // the whole line is validated first, so malformed rows are ignored whatever the filter is
+    @Override
+    public LogData parseLine(String line, RowFilter filter) {
+        int addressEnd = line.indexOf(' ');
+        if (addressEnd <= 0 || !line.startsWith("- ", addressEnd + 1)) {
+            return LogData.IGNORED;
+        }
+
+        int userStart = addressEnd + 3;
+        int userEnd = line.indexOf(' ', userStart);
+        if (userEnd <= userStart || !line.startsWith("[", userEnd + 1)) {
             return LogData.IGNORED;
         }
 
-        DateTimeFormatter dateTimeFormatter = DateTimeFormatter.ofPattern(LOG_DATE_FORMAT, LOG_DATE_LOCALE);
+        int timeStart = userEnd + 2;
+        int timeEnd = timeStart + TimeLocalParser.TIME_LOCAL_LENGTH;
+        if (!line.startsWith("] \"", timeEnd)) {
+            return LogData.IGNORED;
+        }
+        ZonedDateTime timeLocal = timeLocalParser.parseTimeLocal(line, timeStart);
+        if (timeLocal == null) {
+            return LogData.IGNORED;
+        }
+
+        int methodStart = timeEnd + 3;
+        int methodEnd = line.indexOf(' ', methodStart);
+        String method = methodEnd < 0 ? null : lookup(METHODS, line, methodStart, methodEnd);
+        if (method == null) {
+            return LogData.IGNORED;
+        }
+
+        int resourceStart = methodEnd + 1;
+        int resourceEnd = line.indexOf(' ', resourceStart);
+        if (resourceEnd <= resourceStart) {
+            return LogData.IGNORED;
+        }
+
+        int httpStart = resourceEnd + 1;
+        int httpEnd = line.indexOf('"', httpStart);
+        if (httpEnd <= httpStart) {
+            return LogData.IGNORED;
+        }
+
+        int statusStart = httpEnd + 2;
+        if (!line.startsWith(" ", httpEnd + 1) || !line.startsWith(" ", statusStart + 3)) {
+            return LogData.IGNORED;
+        }
+        int status = parseDigits(line, statusStart, statusStart + 3);
+        if (status < 0) {
+            return LogData.IGNORED;
+        }
+
+        int bytesStart = statusStart + 4;
+        int bytesEnd = line.indexOf(' ', bytesStart);
+        if (bytesEnd <= bytesStart || bytesEnd - bytesStart > MAX_BYTES_DIGITS) {
+            return LogData.IGNORED;
+        }
+        long bytesSent = parseLongDigits(line, bytesStart, bytesEnd);
+        if (bytesSent < 0) {
+            return LogData.IGNORED;
+        }
+
+        int refererStart = bytesEnd + 2;
+        if (!line.startsWith("\"", bytesEnd + 1)) {
+            return LogData.IGNORED;
+        }
+        int refererEnd = line.indexOf('"', refererStart);
+        if (refererEnd <= refererStart || !line.startsWith(" \"", refererEnd + 1)) {
+            return LogData.IGNORED;
+        }
+
+        int userAgentStart = refererEnd + 3;
+        int userAgentEnd = line.indexOf('"', userAgentStart);
+        if (userAgentEnd <= userAgentStart) {
+            return LogData.IGNORED;
+        }
+
+        if (!filter.testTime(timeLocal)) {
+            return LogData.FILTERED;
+        }
+        if (filter.hasFieldFilters()) {
+            int bytesDigitsStart = bytesStart; // filters see the number the way String.valueOf prints it
+            while (bytesDigitsStart < bytesEnd - 1 && line.charAt(bytesDigitsStart) == '0') {
+                bytesDigitsStart++;
+            }
+            int[] bounds = { // in LogField order
+                    0, addressEnd,
+                    userStart, userEnd,
+                    methodStart, methodEnd,
+                    resourceStart, resourceEnd,
+                    httpStart, httpEnd,
+                    statusStart, statusStart + 3,
+                    bytesDigitsStart, bytesEnd,
+                    refererStart, refererEnd,
+                    userAgentStart, userAgentEnd
+            };
+            if (!filter.testFields(line, bounds)) {
+                return LogData.FILTERED;
+            }
+        }
 
         return LogData.builder()
-                .remoteAddress(matcher.group(REMOTE_ADDRESS_GROUP))
-                .remoteUser(matcher.group(USER_GROUP))
-                .timeLocal(ZonedDateTime.parse(matcher.group(TIME_GROUP), dateTimeFormatter))
-                .requestMethod(matcher.group(METHOD_GROUP))
-                .requestResource(matcher.group(RESOURCE_GROUP))
-                .requestHttpVersion(matcher.group(HTTP_GROUP))
-                .status(Short.parseShort(matcher.group(STATUS_GROUP)))
-                .bytesSent(Long.parseLong(matcher.group(BYTES_GROUP)))
-                .httpReferer(matcher.group(REFERER_GROUP))
-                .httpUserAgent(matcher.group(USER_AGENT_GROUP))
+                .remoteAddress(ADDRESSES.intern(line, 0, addressEnd))
+                .remoteUser(USERS.intern(line, userStart, userEnd))
+                .timeLocal(timeLocal)
+                .requestMethod(method)
+                .requestResource(RESOURCES.intern(line, resourceStart, resourceEnd))
+                .requestHttpVersion(slice(HTTP_VERSIONS, line, httpStart, httpEnd))
+                .status((short) status)
+                .bytesSent(bytesSent)
+                .httpReferer(REFERERS.intern(line, refererStart, refererEnd))
+                .httpUserAgent(USER_AGENTS.intern(line, userAgentStart, userAgentEnd))
                 .build();
+    }
 
+    // returns -1 if there is a non digit character in the range
+    static int parseDigits(String line, int from, int to) {
+        long value = parseLongDigits(line, from, to);
+        return value > Integer.MAX_VALUE ? -1 : (int) value;
+    }
+
+    static long parseLongDigits(String line, int from, int to) {
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            char c = line.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    // returns a shared constant for well known values instead of allocating a new substring
+    static String slice(String[] knownValues, String line, int from, int to) {
+        String known = lookup(knownValues, line, from, to);
+        return known != null ? known : line.substring(from, to);
+    }
+
+    static String lookup(String[] values, String line, int from, int to) {
+        int index = indexOf(values, line, from, to);
+        return index < 0 ? null : values[index];
+    }
+
+    static int indexOf(String[] values, String line, int from, int to) {
+        int length = to - from;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i].length() == length && line.regionMatches(from, values[i], 0, length)) {
+                return i;
+            }
+        }
+        return -1;
     }
 }
@@ -1,185 +1,604 @@
 package ru.nextupvamp.model.handlers;
 
-import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import ru.nextupvamp.model.data.LogData;
+import ru.nextupvamp.model.entities.GatheringCheckpoint;
 import ru.nextupvamp.model.entities.ResourceFilters;
 import ru.nextupvamp.model.entities.Statistics;
+import ru.nextupvamp.model.entities.TimeBucket;
 
+import java.io.IOException;
 import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.time.ZonedDateTime;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
 import java.util.function.Function;
-import java.util.function.Predicate;
-import java.util.regex.Pattern;
 import java.util.stream.Stream;
 
 @Component
-@RequiredArgsConstructor
 public class NginxLogsStatisticsGatherer implements LogsStatisticsGatherer {
+    private static final double THE_50_TH_PERCENTILE = 0.5;
+    private static final double THE_90_TH_PERCENTILE = 0.9;
     private static final double THE_95_TH_PERCENTILE = 0.95;
+    private static final double THE_99_TH_PERCENTILE = 0.99;
+    private static final double DEFAULT_QUANTILE_RELATIVE_ERROR = 0.01;
+    private static final int DEFAULT_TIME_INDEX_BLOCK_SIZE = 256 << 10;
+    private static final int MAX_COMPILED_FORMATS = 64;
 
     private final LogLineParser logsHandler;
+    private final StatisticsResultCache resultCache;
+    private final RollupStore rollupStore;
+    private final GatheringMetrics metrics;
+    private final Map<String, LogLineParser> compiledFormats = new ConcurrentHashMap<>();
+    @Value("${statistics.quantile-relative-error:" + DEFAULT_QUANTILE_RELATIVE_ERROR + "}")
+    private double quantileRelativeError = DEFAULT_QUANTILE_RELATIVE_ERROR;
+    @Value("${statistics.time-index.block-size:" + DEFAULT_TIME_INDEX_BLOCK_SIZE + "}")
+    private int timeIndexBlockSize = DEFAULT_TIME_INDEX_BLOCK_SIZE;
+    @Value("${statistics.columnar.enabled:false}")
+    private boolean columnarEnabled;
+
+    public NginxLogsStatisticsGatherer(LogLineParser logsHandler) {
+        this(logsHandler, StatisticsResultCache.disabled());
+    }
+
+    public NginxLogsStatisticsGatherer(LogLineParser logsHandler, StatisticsResultCache resultCache) {
+        this(logsHandler, resultCache, new RollupStore(RollupStore.DEFAULT_MAX_SOURCES));
+    }
+
+    public NginxLogsStatisticsGatherer(
+            LogLineParser logsHandler,
+            StatisticsResultCache resultCache,
+            RollupStore rollupStore
+    ) {
+        this(logsHandler, resultCache, rollupStore, GatheringMetrics.disabled());
+    }
+
+    @Autowired
+    public NginxLogsStatisticsGatherer(
+            LogLineParser logsHandler,
+            StatisticsResultCache resultCache,
+            RollupStore rollupStore,
+            GatheringMetrics metrics
+    ) {
+        this.logsHandler = logsHandler;
+        this.resultCache = resultCache;
+        this.rollupStore = rollupStore;
+        this.metrics = metrics;
+    }
+
+    public Statistics gatherStatisticsFromFile(Path file, ResourceFilters filters, GatheringProgress progress) {
+        StatisticsAccumulator accumulator = accumulateFromFile(file, filters, progress);
+        storeRollup(RollupStore.keyOf(file), accumulator);
+        return toStatistics(accumulator, filters, GatheringMetrics.FILE);
+    }
 
     @SneakyThrows
-    public Statistics gatherStatisticsFromFile(Path file, ResourceFilters filters) {
+    public Statistics gatherStatisticsFromFile(
+            Path file,
+            ResourceFilters filters,
+            GatheringCheckpoint checkpoint,
+            GatheringProgress progress
+    ) {
         if (file == null || Files.notExists(file)) {
             throw new IllegalArgumentException("File does not exist");
         }
-        try (LogsStreamReader logsStreamReader = new LogsStreamReader()) {
-            return gatherData(logsStreamReader.readFromFileAsStream(file, logsHandler), filters);
+
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        String fileKey = String.valueOf(attributes.fileKey());
+        long size = attributes.size();
+        String fingerprint = filtersFingerprint(filters);
+
+        String cacheKey = resultCache.enabled() ? fileCacheKey(file, filters) : null;
+        StatisticsAccumulator cached = cacheKey != null ? resultCache.get(cacheKey) : null;
+        if (cached != null) {
+            if (!checkpointIsUpToDate(checkpoint, fileKey, size, fingerprint)) {
+                saveCheckpoint(checkpoint, file, fileKey, size, fingerprint, cached);
+            }
+            storeRollup(RollupStore.keyOf(file), cached);
+            return toStatistics(cached, filters, GatheringMetrics.FILE);
         }
+
+        StatisticsAccumulator previous = restoreAccumulator(file, fileKey, size, fingerprint, checkpoint);
+        long from = previous != null ? checkpoint.offset() : 0;
+
+        StatisticsAccumulator appended = accumulateFile(file, from, size, filters, progress);
+        StatisticsAccumulator accumulator = previous != null ? previous.combine(appended) : appended;
+
+        saveCheckpoint(checkpoint, file, fileKey, size, fingerprint, accumulator);
+        resultCache.put(cacheKey, accumulator);
+        storeRollup(RollupStore.keyOf(file), accumulator);
+        return toStatistics(accumulator, filters, GatheringMetrics.FILE);
+    }
+
+    public Statistics gatherStatisticsFromUri(URI uri, ResourceFilters filters, GatheringProgress progress) {
+        StatisticsAccumulator accumulator = accumulateFromUri(uri, filters, progress);
+        storeRollup(RollupStore.keyOf(uri), accumulator);
+        return toStatistics(accumulator, filters, GatheringMetrics.URL);
     }
 
+    // the last bytes read before are requested again along with the new ones, so a rewritten content
+    // is told from an appended one, a server ignoring the range sends 200 and the known prefix is skipped,
+    // a 416 or a changed tail lead to a full fetch
     @SneakyThrows
-    public Statistics gatherStatisticsFromUri(URI uri, ResourceFilters filters) {
+    public Statistics gatherStatisticsFromUri(
+            URI uri,
+            ResourceFilters filters,
+            GatheringCheckpoint checkpoint,
+            GatheringProgress progress
+    ) {
         if (uri == null) {
             throw new IllegalArgumentException("URI is null");
         }
-        try (LogsStreamReader logsStreamReader = new LogsStreamReader()) {
-            return gatherData(logsStreamReader.readFromUriAsStream(uri, logsHandler), filters);
+
+        String fingerprint = filtersFingerprint(filters);
+        LogLineParser parser = filteringParser(filters, GatheringMetrics.URL);
+        try (LogsStreamReader logsStreamReader = new LogsStreamReader(progress)) {
+            StatisticsAccumulator previous = restoreAccumulator(uri, fingerprint, checkpoint);
+            RemoteLogContent content;
+            if (previous != null) {
+                int tailLength = (int) Math.min(checkpoint.offset(), FileChecksums.WINDOW);
+                long tailStart = checkpoint.offset() - tailLength;
+                content = logsStreamReader.openUri(uri, tailStart, checkpoint.validator());
+                if (content.status() == RemoteLogContent.NOT_MODIFIED) {
+                    content.close();
+                    storeRollup(RollupStore.keyOf(uri), previous);
+                    return toStatistics(previous, filters, GatheringMetrics.URL);
+                }
+                if ((content.status() == RemoteLogContent.PARTIAL_CONTENT || content.status() == RemoteLogContent.OK)
+                        && content.continuesTail(tailStart, tailLength, checkpoint.tailChecksum())) {
+                    StatisticsAccumulator appended = accumulate(
+                            logsStreamReader.readFromRemoteContentAsStream(content, parser),
+                            filters,
+                            GatheringMetrics.URL,
+                            progress
+                    );
+                    StatisticsAccumulator accumulator = previous.combine(appended);
+                    saveCheckpoint(checkpoint, uri, content, fingerprint, accumulator);
+                    storeRollup(RollupStore.keyOf(uri), accumulator);
+                    return toStatistics(accumulator, filters, GatheringMetrics.URL);
+                }
+                content.close(); // 416 or changed, the body has been partly read anyway
+            }
+
+            content = logsStreamReader.openUri(uri, 0, null);
+            if (content.status() != RemoteLogContent.OK) {
+                content.close();
+                throw new IllegalStateException("Unexpected response status " + content.status() + " for " + uri);
+            }
+            StatisticsAccumulator accumulator = accumulate(
+                    logsStreamReader.readFromRemoteContentAsStream(content, parser),
+                    filters,
+                    GatheringMetrics.URL,
+                    progress
+            );
+            saveCheckpoint(checkpoint, uri, content, fingerprint, accumulator);
+            storeRollup(RollupStore.keyOf(uri), accumulator);
+            return toStatistics(accumulator, filters, GatheringMetrics.URL);
         }
     }
 
-    private Statistics gatherData(Stream<LogData> logDataStream, ResourceFilters filters) {
-        Queue<Long> bytesSent = new ConcurrentLinkedQueue<>();
-        Map<String, Integer> remoteAddresses = new ConcurrentHashMap<>();
-        Map<String, Integer> remoteUsers = new ConcurrentHashMap<>();
-        Map<String, Integer> requestMethods = new ConcurrentHashMap<>();
-        Map<String, Integer> requestResources = new ConcurrentHashMap<>();
-        Map<Short, Integer> statuses = new ConcurrentHashMap<>();
-        AtomicInteger requestsAmount = new AtomicInteger(0);
-        AtomicInteger ignoredRows = new AtomicInteger(0);
-        Map<ZonedDateTime, Integer> requestsOnDate = new ConcurrentHashMap<>();
+    public LiveStatistics liveStatistics(ResourceFilters filters, GatheringCheckpoint checkpoint) {
+        String fingerprint = filtersFingerprint(filters);
+        StatisticsAccumulator restored = null;
+        if (checkpoint != null && checkpoint.snapshot() != null && fingerprint.equals(checkpoint.filtersFingerprint())) {
+            try {
+                restored = StatisticsAccumulator.fromSnapshot(checkpoint.snapshot());
+            } catch (IOException | ClassNotFoundException | ClassCastException e) {
+                // snapshot of an older version, starting over
+            }
+        }
+        return new LiveStatistics(
+                filteringParser(filters, GatheringMetrics.STREAM),
+                restored != null ? restored : new StatisticsAccumulator(initSettings(filters)),
+                restored != null ? checkpoint.offset() : 0,
+                fingerprint,
+                accumulator -> toStatistics(accumulator, filters, GatheringMetrics.STREAM),
+                metrics
+        );
+    }
 
-        FilterPredicates filterPredicates;
-        if (filters != null) { // to avoid npe
-            filterPredicates = initPredicates(filters.fromDate(), filters.toDate(), filters.filterMap());
-        } else {
-            filterPredicates = initPredicates(null, null, null);
-        }
-        Predicate<LogData> dateTimePredicate = filterPredicates.dateTimePredicate();
-        Predicate<LogData> fieldFilterPredicate = filterPredicates.fieldFilterPredicate();
-
-        logDataStream.filter(dateTimePredicate)
-                .parallel()
-                .filter(fieldFilterPredicate)
-                .forEach(it -> {
-                    if (it == LogData.IGNORED) {
-                        ignoredRows.incrementAndGet();
-                    } else {
-                        requestsAmount.incrementAndGet();
-                        bytesSent.add(it.bytesSent());
-                        remoteAddresses.merge(it.remoteAddress(), 1, Integer::sum);
-                        remoteUsers.merge(it.remoteUser(), 1, Integer::sum);
-                        requestMethods.merge(it.requestMethod(), 1, Integer::sum);
-                        requestResources.merge(it.requestResource(), 1, Integer::sum);
-                        statuses.merge(it.status(), 1, Integer::sum);
-                        requestsOnDate.merge(it.timeLocal(), 1, Integer::sum);
-                    }
-                });
-
-        Statistics statistics = new Statistics();
+    @SneakyThrows
+    public Statistics gatherMergedStatistics(List<LogSource> sources, int parallelism) {
+        if (sources.isEmpty()) {
+            throw new IllegalArgumentException("No resources to merge");
+        }
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+        Set<AccumulatorSettings> settings = new HashSet<>();
+        for (LogSource source : sources) {
+            settings.add(initSettings(source.filters()).withoutRollup()); // merged statistics keep no rollup
+        }
+        if (settings.size() > 1) {
+            throw new IllegalArgumentException("Resources with different time buckets or top k can't be merged");
+        }
+
+        // parallel streams run in the pool of the thread starting them, so the sources are accumulated
+        // in the pool of the caller rather than on the virtual threads, which only bound their amount
+        ForkJoinPool pool = ForkJoinTask.inForkJoinPool() ? ForkJoinTask.getPool() : ForkJoinPool.commonPool();
+        List<Future<StatisticsAccumulator>> partials = new ArrayList<>(sources.size());
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(parallelism, sources.size()), Thread.ofVirtual().factory());
+        try {
+            for (LogSource source : sources) {
+                partials.add(executor.submit(() -> pool.submit(() -> accumulateSource(source)).join()));
+            }
+        } finally {
+            closeManaged(executor);
+        }
+
+        // merging takes over the parts of the merged state, so the ones shared with the result cache are copied
+        StatisticsAccumulator merged = new StatisticsAccumulator(settings.iterator().next());
+        for (Future<StatisticsAccumulator> partial : partials) {
+            if (partial.state() == Future.State.FAILED) {
+                throw partial.exceptionNow();
+            }
+            StatisticsAccumulator accumulator = partial.resultNow();
+            merged.combine(resultCache.enabled() ? accumulator.copy() : accumulator);
+        }
+
+        ResourceFilters mergedFilters = new ResourceFilters();
+        mergedFilters.fromDate(commonValue(sources, ResourceFilters::fromDate))
+                .toDate(commonValue(sources, ResourceFilters::toDate));
+        return toStatistics(merged, mergedFilters, GatheringMetrics.MERGED);
+    }
+
+    // a pool worker waiting for the sources lets the pool start a spare one,
+    // otherwise the sources queued in the same pool could wait for the blocked worker forever
+    private static void closeManaged(ExecutorService executor) throws InterruptedException {
+        ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+            @Override
+            public boolean block() {
+                executor.close();
+                return true;
+            }
+
+            @Override
+            public boolean isReleasable() {
+                return executor.isTerminated();
+            }
+        });
+    }
+
+    private StatisticsAccumulator accumulateSource(LogSource source) {
+        return source.file() != null
+                ? accumulateFromFile(source.file(), source.filters(), new GatheringProgress())
+                : accumulateFromUri(source.uri(), source.filters(), new GatheringProgress());
+    }
+
+    // the date range of merged statistics is known only if all the resources were filtered by the same one
+    private static <T> T commonValue(List<LogSource> sources, Function<ResourceFilters, T> getter) {
+        Set<T> values = new HashSet<>();
+        for (LogSource source : sources) {
+            values.add(source.filters() != null ? getter.apply(source.filters()) : null);
+        }
+        return values.size() == 1 ? values.iterator().next() : null;
+    }
+
+    @SneakyThrows
+    private StatisticsAccumulator accumulateFromFile(Path file, ResourceFilters filters, GatheringProgress progress) {
+        if (file == null || Files.notExists(file)) {
+            throw new IllegalArgumentException("File does not exist");
+        }
+
+        String cacheKey = resultCache.enabled() ? fileCacheKey(file, filters) : null;
+        StatisticsAccumulator cached = cacheKey != null ? resultCache.get(cacheKey) : null;
+        if (cached != null) {
+            return cached;
+        }
+
+        StatisticsAccumulator accumulator = accumulateFile(file, 0, Files.size(file), filters, progress);
+        resultCache.put(cacheKey, accumulator);
+        return accumulator;
+    }
+
+    @SneakyThrows
+    private StatisticsAccumulator accumulateFromUri(URI uri, ResourceFilters filters, GatheringProgress progress) {
+        if (uri == null) {
+            throw new IllegalArgumentException("URI is null");
+        }
+        try (LogsStreamReader logsStreamReader = new LogsStreamReader(progress)) {
+            String version = resultCache.enabled() ? logsStreamReader.readUriVersion(uri) : null;
+            String cacheKey = version != null ? uri + "|" + version + "#" + filtersFingerprint(filters) : null;
+            StatisticsAccumulator cached = cacheKey != null ? resultCache.get(cacheKey) : null;
+            if (cached != null) {
+                return cached;
+            }
+
+            StatisticsAccumulator accumulator = accumulate(
+                    logsStreamReader.readFromUriAsStream(uri, filteringParser(filters, GatheringMetrics.URL)),
+                    filters,
+                    GatheringMetrics.URL,
+                    progress
+            );
+            resultCache.put(cacheKey, accumulator);
+            return accumulator;
+        }
+    }
+
+    // date filtered ranges are narrowed down to the blocks of the time index which may contain matching rows
+    @SneakyThrows
+    private StatisticsAccumulator accumulateFile(
+            Path file,
+            long from,
+            long to,
+            ResourceFilters filters,
+            GatheringProgress progress
+    ) {
+        LogLineParser parser = filteringParser(filters, GatheringMetrics.FILE);
+        // sidecars are built with the parser of the default format, so files of other formats are always scanned
+        boolean defaultFormat = filters == null || filters.logFormat() == null;
+        if (columnarEnabled && from == 0 && defaultFormat) {
+            try (ColumnarLog columnarLog = ColumnarLog.loadOrBuild(file, logsHandler)) {
+                if (columnarLog.sourceSize() == to) { // otherwise the file has changed since its size was taken
+                    return accumulateColumns(columnarLog, filters, progress);
+                }
+            }
+        }
+
+        List<FileChunk> ranges = List.of(new FileChunk(from, to));
+        long skippedIgnoredRows = 0;
+        if (timeIndexBlockSize > 0 && defaultFormat
+                && filters != null && (filters.fromDate() != null || filters.toDate() != null)) {
+            TimeIndex.Selection selection = TimeIndex.loadOrBuild(file, logsHandler, timeIndexBlockSize)
+                    .select(from, to, filters.fromDate(), filters.toDate());
+            ranges = selection.ranges();
+            skippedIgnoredRows = selection.skippedIgnoredLines();
+        }
+
+        progress.totalBytes(ranges.stream().mapToLong(FileChunk::length).sum());
+        try (LogsStreamReader logsStreamReader = new LogsStreamReader(progress)) {
+            return accumulate(
+                    logsStreamReader.readFromFileRangesInChunksAsStream(file, ranges, parser),
+                    filters,
+                    GatheringMetrics.FILE,
+                    progress
+            ).addIgnoredRows(skippedIgnoredRows);
+        }
+    }
+
+    private StatisticsAccumulator accumulateColumns(
+            ColumnarLog columnarLog,
+            ResourceFilters filters,
+            GatheringProgress progress
+    ) {
+        ZonedDateTime fromDate = filters != null ? filters.fromDate() : null;
+        ZonedDateTime toDate = filters != null ? filters.toDate() : null;
+        progress.totalBytes(columnarLog.sourceSize());
+        return accumulate(
+                columnarLog.rows(RowFilter.of(filters), fromDate, toDate, progress),
+                filters,
+                GatheringMetrics.FILE,
+                progress
+        ).addIgnoredRows(columnarLog.ignoredRows());
+    }
+
+    // the stream has to be read with the filtering parser, so rejected rows come as FILTERED
+    private StatisticsAccumulator accumulate(
+            Stream<LogData> logDataStream,
+            ResourceFilters filters,
+            String type,
+            GatheringProgress progress
+    ) {
+        long start = System.nanoTime();
+        long lines = progress.linesProcessed();
+        long bytes = progress.bytesProcessed();
+        StatisticsAccumulator accumulator;
+        ValueDictionary.gatheringStarted(); // the stream is lazy, rows are parsed while they are collected
+        try {
+            accumulator = logDataStream
+                    .parallel()
+                    .filter(it -> it != LogData.FILTERED)
+                    .collect(metrics.collector(initSettings(filters), type));
+        } finally {
+            ValueDictionary.gatheringFinished();
+        }
+        metrics.scanned(
+                type,
+                start,
+                progress.linesProcessed() - lines,
+                progress.bytesProcessed() - bytes,
+                accumulator.ignoredRows()
+        );
+        return accumulator;
+    }
+
+    // filters are compiled before reading, so unknown filter fields fail fast
+    private LogLineParser filteringParser(ResourceFilters filters, String type) {
+        RowFilter rowFilter = RowFilter.of(filters);
+        LogLineParser parser = parserOf(filters);
+        return metrics.timedParser(
+                rowFilter.acceptsAll() ? parser : line -> parser.parseLine(line, rowFilter),
+                type
+        );
+    }
+
+    // custom formats are compiled once and shared between gatherings like the default parser
+    private LogLineParser parserOf(ResourceFilters filters) {
+        if (filters == null || filters.logFormat() == null) {
+            return logsHandler;
+        }
+        if (compiledFormats.size() >= MAX_COMPILED_FORMATS) {
+            compiledFormats.clear();
+        }
+        return compiledFormats.computeIfAbsent(filters.logFormat(), LogFormatParser::compile);
+    }
+
+    private Statistics toStatistics(StatisticsAccumulator accumulator, ResourceFilters filters, String type) {
+        long start = System.nanoTime();
         ZonedDateTime from = null;
         ZonedDateTime to = null;
         if (filters != null) {
             from = filters.fromDate();
             to = filters.toDate();
         }
-        statistics.ignoredRows(ignoredRows.get())
-                .remoteAddresses(remoteAddresses)
-                .remoteUsers(remoteUsers)
-                .fromDate(from)
-                .toDate(to)
-                .requestsOnDate(requestsOnDate)
-                .requestMethods(requestMethods)
-                .requestResources(requestResources)
-                .statuses(statuses)
-                .requestsAmount(requestsAmount.get())
-                .averageBytesSent(countAverageBytesSent((bytesSent)))
-                .p95BytesSent(count95pBytesSent(bytesSent));
+        LogHistogram bytesSent = accumulator.bytesSent();
+        Statistics statistics = accumulator.toStatistics(from, to)
+                .averageBytesSent(countAverageBytesSent(bytesSent))
+                .p50BytesSent(bytesSent.valueAtQuantile(THE_50_TH_PERCENTILE))
+                .p90BytesSent(bytesSent.valueAtQuantile(THE_90_TH_PERCENTILE))
+                .p95BytesSent(count95pBytesSent(bytesSent))
+                .p99BytesSent(bytesSent.valueAtQuantile(THE_99_TH_PERCENTILE))
+                .maxBytesSent(bytesSent.max());
+        LogHistogram requestTimes = accumulator.requestTimes();
+        if (requestTimes.totalCount() > 0) {
+            statistics.averageRequestTime(requestTimes.average())
+                    .p50RequestTime(requestTimes.valueAtQuantile(THE_50_TH_PERCENTILE))
+                    .p90RequestTime(requestTimes.valueAtQuantile(THE_90_TH_PERCENTILE))
+                    .p95RequestTime(requestTimes.valueAtQuantile(THE_95_TH_PERCENTILE))
+                    .p99RequestTime(requestTimes.valueAtQuantile(THE_99_TH_PERCENTILE))
+                    .maxRequestTime(requestTimes.max());
+        }
+        metrics.finished(type, start, statistics);
         return statistics;
     }
 
-    long countAverageBytesSent(Queue<Long> bytesSent) {
-        if (bytesSent.isEmpty()) {
-            return 0;
+    // returns null if the file has to be gathered from the beginning
+    private StatisticsAccumulator restoreAccumulator(
+            Path file,
+            String fileKey,
+            long size,
+            String fingerprint,
+            GatheringCheckpoint checkpoint
+    ) throws IOException {
+        if (checkpoint.snapshot() == null
+                || !fingerprint.equals(checkpoint.filtersFingerprint())
+                || !fileKey.equals(checkpoint.fileKey()) // rotated
+                || size < checkpoint.offset() // truncated
+                || FileChecksums.tailChecksum(file, checkpoint.offset()) != checkpoint.tailChecksum()) { // rewritten
+            return null;
+        }
+        if (size > checkpoint.offset() && !FileChecksums.endsWithLineBreak(file, checkpoint.offset())) {
+            return null; // the last gathered line was incomplete and something has been appended to it
         }
 
-        return bytesSent.stream().reduce(0L, Long::sum) / bytesSent.size();
+        try {
+            return StatisticsAccumulator.fromSnapshot(checkpoint.snapshot());
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            return null; // snapshot of an older version
+        }
     }
 
-    long count95pBytesSent(Queue<Long> bytesSent) {
-        if (bytesSent.isEmpty()) {
-            return 0;
+    // returns null if the uri has to be fetched from the beginning
+    private StatisticsAccumulator restoreAccumulator(URI uri, String fingerprint, GatheringCheckpoint checkpoint) {
+        if (checkpoint.snapshot() == null
+                || checkpoint.offset() == 0
+                || !fingerprint.equals(checkpoint.filtersFingerprint())
+                || !uri.toString().equals(checkpoint.fileKey())) {
+            return null;
         }
 
-        List<Long> converted = new ArrayList<>(bytesSent);
-        converted.sort(Long::compareTo);
-
-        return converted.get((int) (bytesSent.size() * THE_95_TH_PERCENTILE));
+        try {
+            return StatisticsAccumulator.fromSnapshot(checkpoint.snapshot());
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            return null; // snapshot of an older version
+        }
     }
 
-    private FilterPredicates initPredicates(
-            ZonedDateTime from,
-            ZonedDateTime to,
-            Map<String, String> filterMap
+    // the content has to be read up to its end
+    private void saveCheckpoint(
+            GatheringCheckpoint checkpoint,
+            URI uri,
+            RemoteLogContent content,
+            String fingerprint,
+            StatisticsAccumulator accumulator
     ) {
-        Map<String, Pattern> compiledFilterMap = new HashMap<>();
-        if (filterMap != null) {
-            filterMap.forEach((field, value) -> {
-                Pattern filterValuePattern = null;
-                if (value != null && !value.isEmpty()) {
-                    filterValuePattern = Pattern.compile(value);
-                }
-                compiledFilterMap.put(field, filterValuePattern);
-            });
-        }
+        checkpoint.fileKey(uri.toString())
+                .validator(content.validator())
+                .offset(content.offset())
+                .tailChecksum(content.tailChecksum())
+                .filtersFingerprint(fingerprint)
+                .snapshot(accumulator.toSnapshot());
+    }
 
-        var dateTimePredicate = buildDateTimePredicate(from, to);
-        var fieldFilterPredicates = buildFieldFilterPredicate(compiledFilterMap);
-        return new FilterPredicates(dateTimePredicate, fieldFilterPredicates);
+    private void saveCheckpoint(
+            GatheringCheckpoint checkpoint,
+            Path file,
+            String fileKey,
+            long size,
+            String fingerprint,
+            StatisticsAccumulator accumulator
+    ) throws IOException {
+        checkpoint.fileKey(fileKey)
+                .offset(size)
+                .tailChecksum(FileChecksums.tailChecksum(file, size))
+                .filtersFingerprint(fingerprint)
+                .snapshot(accumulator.toSnapshot());
     }
 
-    private Predicate<LogData> buildDateTimePredicate(ZonedDateTime from, ZonedDateTime to) {
-        return it -> {
-            boolean before = Optional.ofNullable(from).map(it.timeLocal()::isBefore).orElse(false);
-            boolean after = Optional.ofNullable(to).map(it.timeLocal()::isAfter).orElse(false);
-            return !before && !after;
-        };
+    private boolean checkpointIsUpToDate(GatheringCheckpoint checkpoint, String fileKey, long size, String fingerprint) {
+        return checkpoint.snapshot() != null
+                && fileKey.equals(checkpoint.fileKey())
+                && size == checkpoint.offset()
+                && fingerprint.equals(checkpoint.filtersFingerprint());
     }
 
-    private Predicate<LogData> buildFieldFilterPredicate(Map<String, Pattern> compiledFilterMap) {
-        List<Predicate<LogData>> predicateList = new ArrayList<>();
+    // hashing the whole file would cost as much as parsing it, so the content is identified
+    // by its attributes and checksums of the first and the last bytes
+    private String fileCacheKey(Path file, ResourceFilters filters) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        long size = attributes.size();
+        return new StringJoiner("|")
+                .add(file.toAbsolutePath().toString())
+                .add(String.valueOf(attributes.fileKey()))
+                .add(String.valueOf(size))
+                .add(String.valueOf(attributes.lastModifiedTime().toMillis()))
+                .add(String.valueOf(FileChecksums.headChecksum(file, size)))
+                .add(String.valueOf(FileChecksums.tailChecksum(file, size)))
+                + "#" + filtersFingerprint(filters);
+    }
+
+    private String filtersFingerprint(ResourceFilters filters) {
+        StringJoiner fingerprint = new StringJoiner("|");
+        fingerprint.add(initSettings(filters).toString());
+        if (filters != null) {
+            fingerprint.add(String.valueOf(filters.fromDate()))
+                    .add(String.valueOf(filters.toDate()))
+                    .add(String.valueOf(filters.filterMap() != null ? new TreeMap<>(filters.filterMap()) : null))
+                    .add(String.valueOf(filters.logFormat()));
+        }
+        return fingerprint.toString();
+    }
 
-        compiledFilterMap.forEach((field, value) -> {
-            if (field == null || value == null) {
-                predicateList.add(ignored -> true);
-                return;
+    private AccumulatorSettings initSettings(ResourceFilters filters) {
+        TimeBucket timeBucket = TimeBucket.SECOND;
+        Integer topK = null;
+        boolean rollup = false;
+        if (filters != null) {
+            if (filters.timeBucket() != null) {
+                timeBucket = filters.timeBucket();
             }
+            topK = filters.topK();
+            rollup = Boolean.TRUE.equals(filters.rollup());
+        }
+        return new AccumulatorSettings(quantileRelativeError, timeBucket, topK, rollup);
+    }
 
-            Function<LogData, String> method = switch (field) {
-                case NginxLogLineParser.REMOTE_ADDRESS_GROUP -> LogData::remoteAddress;
-                case NginxLogLineParser.USER_GROUP -> LogData::remoteUser;
-                case NginxLogLineParser.METHOD_GROUP -> LogData::requestMethod;
-                case NginxLogLineParser.RESOURCE_GROUP -> LogData::requestResource;
-                case NginxLogLineParser.HTTP_GROUP -> LogData::requestHttpVersion;
-                case NginxLogLineParser.STATUS_GROUP -> it -> String.valueOf(it.status());
-                case NginxLogLineParser.REFERER_GROUP -> LogData::httpReferer;
-                case NginxLogLineParser.USER_AGENT_GROUP -> LogData::httpUserAgent;
-                default -> throw new IllegalArgumentException("Unknown filter field: " + field);
-            };
-
-            predicateList.add(it -> value.matcher(method.apply(it)).matches());
-        });
+    // a rollup of the previous gathering must not be shown once the filters don't request it
+    private void storeRollup(String key, StatisticsAccumulator accumulator) {
+        if (accumulator.rollup() != null) {
+            rollupStore.put(key, accumulator.rollup());
+        } else {
+            rollupStore.remove(key);
+        }
+    }
 
-        return predicateList.stream().reduce(Predicate::and).orElse(ignored -> true);
+    long countAverageBytesSent(LogHistogram bytesSent) {
+        return bytesSent.average();
     }
-}
 
+    long count95pBytesSent(LogHistogram bytesSent) {
+        return bytesSent.valueAtQuantile(THE_95_TH_PERCENTILE);
+    }
+}
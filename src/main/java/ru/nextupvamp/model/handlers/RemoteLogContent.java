@@ -0,0 +1,146 @@
+package ru.nextupvamp.model.handlers;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+
+// response body of a possibly ranged request for a remote log, keeps track of the bytes read so far,
+// so the reached offset and the checksum of its last bytes can be saved like the ones of a file
+class RemoteLogContent implements AutoCloseable {
+    static final int OK = 200;
+    static final int PARTIAL_CONTENT = 206;
+    static final int NOT_MODIFIED = 304;
+    private static final int SKIP_BUFFER_SIZE = 8 << 10;
+
+    private final int status;
+    private final long start;
+    private final String validator;
+    private final long contentLength;
+    private final TailTrackingInputStream body;
+
+    RemoteLogContent(int status, long start, String validator, long contentLength, InputStream body) {
+        this.status = status;
+        this.start = start;
+        this.validator = validator;
+        this.contentLength = contentLength;
+        this.body = new TailTrackingInputStream(body);
+    }
+
+    int status() {
+        return status;
+    }
+
+    // offset of the first body byte in the whole content
+    long start() {
+        return start;
+    }
+
+    String validator() {
+        return validator;
+    }
+
+    long contentLength() {
+        return contentLength;
+    }
+
+    InputStream body() {
+        return body;
+    }
+
+    // offset right after the last byte read
+    long offset() {
+        return start + body.count;
+    }
+
+    long tailChecksum() {
+        return body.tailChecksum();
+    }
+
+    boolean endsWithLineBreak() {
+        return body.count == 0 ? start == 0 : body.lastByte == '\n';
+    }
+
+    // skips to the tail read last time and tells whether it is still the same, so the bytes after it
+    // can be read as appended ones, a tail which ended in the middle of a line is valid only
+    // if nothing has been appended to it
+    boolean continuesTail(long tailStart, int length, long tailChecksum) throws IOException {
+        if (start < 0 || start > tailStart || body.skip(tailStart - start) != tailStart - start) {
+            return false;
+        }
+        if (body.readNBytes(length).length != length || body.tailChecksum() != tailChecksum) {
+            return false;
+        }
+        if (endsWithLineBreak()) {
+            return true;
+        }
+        return body.read() < 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        body.close();
+    }
+
+    private static class TailTrackingInputStream extends FilterInputStream {
+        private final byte[] tail = new byte[FileChecksums.WINDOW];
+        private long count;
+        private int lastByte = -1;
+
+        TailTrackingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = super.read();
+            if (read >= 0) {
+                track(new byte[]{(byte) read}, 0, 1);
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            int read = super.read(bytes, offset, length);
+            if (read > 0) {
+                track(bytes, offset, read);
+            }
+            return read;
+        }
+
+        // skipped bytes are read anyway, otherwise they would be missing from the tail
+        @Override
+        public long skip(long n) throws IOException {
+            byte[] buffer = new byte[SKIP_BUFFER_SIZE];
+            long skipped = 0;
+            while (skipped < n) {
+                int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+                if (read < 0) {
+                    break;
+                }
+                skipped += read;
+            }
+            return skipped;
+        }
+
+        private void track(byte[] bytes, int offset, int length) {
+            for (int i = Math.max(0, length - tail.length); i < length; i++) {
+                tail[(int) ((count + i) % tail.length)] = bytes[offset + i];
+            }
+            count += length;
+            lastByte = bytes[offset + length - 1] & 0xFF;
+        }
+
+        // same as FileChecksums.tailChecksum at the current offset
+        private long tailChecksum() {
+            CRC32 crc32 = new CRC32();
+            int length = (int) Math.min(count, tail.length);
+            int first = (int) ((count - length) % tail.length);
+            int firstPart = Math.min(length, tail.length - first);
+            crc32.update(tail, first, firstPart);
+            crc32.update(tail, 0, length - firstPart);
+            return crc32.getValue();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package ru.nextupvamp.model.handlers;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.nextupvamp.model.data.RollupDto;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// minute rollups of the last gathering of every file and url, least recently used ones are dropped,
+// stored rollups are never modified
+@Component
+public class RollupStore {
+    static final int DEFAULT_MAX_SOURCES = 256;
+
+    private final int maxSources;
+    private final Map<String, MinuteRollup> rollups;
+
+    public RollupStore(@Value("${statistics.rollup.max-sources:" + DEFAULT_MAX_SOURCES + "}") int maxSources) {
+        this.maxSources = maxSources;
+        this.rollups = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, MinuteRollup> eldest) {
+                return size() > RollupStore.this.maxSources;
+            }
+        };
+    }
+
+    public static String keyOf(Path file) {
+        return file.toAbsolutePath().toString();
+    }
+
+    public static String keyOf(URI uri) {
+        return uri.toString();
+    }
+
+    // null if the source hasn't been gathered since the start or its rollup has been dropped
+    public synchronized RollupDto window(String key, int minutes) {
+        MinuteRollup rollup = rollups.get(key);
+        return rollup != null ? rollup.window(minutes) : null;
+    }
+
+    synchronized void put(String key, MinuteRollup rollup) {
+        if (maxSources > 0) {
+            rollups.put(key, rollup);
+        }
+    }
+
+    public synchronized void remove(String key) {
+        rollups.remove(key);
+    }
+}
@@ -0,0 +1,122 @@
+package ru.nextupvamp.model.handlers;
+
+import ru.nextupvamp.model.data.LogData;
+import ru.nextupvamp.model.entities.ResourceFilters;
+
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.Comparator;
+
+// resource filters compiled once per gathering. rows can be tested on the parsed LogData
+// or, by parsers which know the field boundaries, on the raw line before the row is built
+public class RowFilter {
+    public static final RowFilter ACCEPT_ALL = new RowFilter(null, null, new FieldMatcher[LogField.values().length]);
+
+    private final ZonedDateTime from;
+    private final ZonedDateTime to;
+    private final FieldMatcher[] matchers; // by field ordinal, null if the field is not filtered
+    private final LogField[] order; // filtered fields, the cheapest and most selective first
+
+    private RowFilter(ZonedDateTime from, ZonedDateTime to, FieldMatcher[] matchers) {
+        this.from = from;
+        this.to = to;
+        this.matchers = matchers;
+        // expected cost of a filter chain is minimal when sorted by cost / rejection rate
+        this.order = Arrays.stream(LogField.values())
+                .filter(field -> matchers[field.ordinal()] != null)
+                .sorted(Comparator.comparingDouble(field -> rank(matchers[field.ordinal()])))
+                .toArray(LogField[]::new);
+    }
+
+    public static RowFilter of(ResourceFilters filters) {
+        if (filters == null) { // to avoid npe
+            return ACCEPT_ALL;
+        }
+
+        FieldMatcher[] matchers = new FieldMatcher[LogField.values().length];
+        if (filters.filterMap() != null) {
+            filters.filterMap().forEach((field, value) -> {
+                if (field == null || value == null) {
+                    return;
+                }
+                LogField logField = LogField.byFilterName(field);
+                if (!value.isEmpty()) {
+                    matchers[logField.ordinal()] = FilterCompiler.compile(logField, value);
+                }
+            });
+        }
+        return new RowFilter(filters.fromDate(), filters.toDate(), matchers);
+    }
+
+    public boolean acceptsAll() {
+        return from == null && to == null && order.length == 0;
+    }
+
+    public boolean test(LogData logData) {
+        if (!testTime(logData.timeLocal())) {
+            return false;
+        }
+        for (LogField field : order) {
+            if (!matchers[field.ordinal()].matches(field.valueOf(logData))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean testTime(ZonedDateTime timeLocal) {
+        return (from == null || !timeLocal.isBefore(from)) && (to == null || !timeLocal.isAfter(to));
+    }
+
+    boolean hasFieldFilters() {
+        return order.length > 0;
+    }
+
+    // bounds holds [start, end) of every field by its ordinal, slices are matched without copying
+    boolean testFields(String line, int[] bounds) {
+        for (LogField field : order) {
+            int index = field.ordinal() * 2;
+            if (!matchers[field.ordinal()].matches(line, bounds[index], bounds[index + 1])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    boolean filters(LogField field) {
+        return matchers[field.ordinal()] != null;
+    }
+
+    boolean accepts(LogField field, String value) {
+        FieldMatcher matcher = matchers[field.ordinal()];
+        return matcher == null || matcher.matches(value);
+    }
+
+    // filter results for every value of a dictionary, null if the field is not filtered
+    boolean[] acceptedValues(LogField field, String[] values) {
+        if (!filters(field)) {
+            return null;
+        }
+        boolean[] accepted = new boolean[values.length];
+        for (int i = 0; i < values.length; i++) {
+            accepted[i] = accepts(field, values[i]);
+        }
+        return accepted;
+    }
+
+    // filter results for every status code, null if status is not filtered
+    boolean[] acceptedStatuses() {
+        if (!filters(LogField.STATUS)) {
+            return null;
+        }
+        boolean[] accepted = new boolean[1000];
+        for (int status = 0; status < accepted.length; status++) {
+            accepted[status] = accepts(LogField.STATUS, String.valueOf(status));
+        }
+        return accepted;
+    }
+
+    private static double rank(FieldMatcher matcher) {
+        return matcher.cost() / Math.max(1 - matcher.passRate(), 0.01);
+    }
+}
@@ -0,0 +1,178 @@
+package ru.nextupvamp.model.handlers;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.*;
+
+// Space-Saving heavy hitters summary (Metwally et al.) over a fixed number of monitored keys.
+// Every reported count overestimates the real one by at most its error, which is bounded by
+// total / capacity, so any key seen more than total / capacity times is guaranteed to be monitored.
+// Summaries are merged as described by Agarwal et al. "Mergeable summaries".
+class SpaceSaving<K> implements KeyCounter<K>, Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private final int capacity;
+    private final int reportedKeys;
+    private final Map<K, Entry<K>> entries;
+    private Entry<K>[] heap; // min heap by count
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    SpaceSaving(int reportedKeys, int capacity) {
+        if (reportedKeys <= 0 || capacity < reportedKeys) {
+            throw new IllegalArgumentException("Capacity must not be less than the number of reported keys");
+        }
+        this.reportedKeys = reportedKeys;
+        this.capacity = capacity;
+        entries = new HashMap<>(Math.max(16, (int) (capacity / 0.75f) + 1));
+        heap = new Entry[capacity];
+    }
+
+    @Override
+    public void increment(K key) {
+        Entry<K> entry = entries.get(key);
+        if (entry != null) {
+            entry.count++;
+            siftDown(entry.index);
+            return;
+        }
+
+        if (size < capacity) {
+            entry = new Entry<>(key, 1, 0);
+            entries.put(key, entry);
+            heap[size] = entry;
+            entry.index = size;
+            siftUp(size++);
+            return;
+        }
+
+        // the least frequent key is replaced and the new one inherits its count as the error
+        entry = heap[0];
+        entries.remove(entry.key);
+        entry.key = key;
+        entry.error = entry.count;
+        entry.count++;
+        entries.put(key, entry);
+        siftDown(0);
+    }
+
+    @Override
+    public void merge(KeyCounter<K> counter) {
+        SpaceSaving<K> other = (SpaceSaving<K>) counter;
+        if (other.capacity != capacity) {
+            throw new IllegalArgumentException("Summaries with different capacity can't be merged");
+        }
+
+        // a key missing in a full summary may have been seen up to its min count times
+        int minCount = minCount();
+        int otherMinCount = other.minCount();
+        List<Entry<K>> merged = new ArrayList<>(size + other.size);
+        for (int i = 0; i < size; i++) {
+            Entry<K> entry = heap[i];
+            Entry<K> otherEntry = other.entries.get(entry.key);
+            if (otherEntry != null) {
+                merged.add(new Entry<>(entry.key, entry.count + otherEntry.count, entry.error + otherEntry.error));
+            } else {
+                merged.add(new Entry<>(entry.key, entry.count + otherMinCount, entry.error + otherMinCount));
+            }
+        }
+        for (int i = 0; i < other.size; i++) {
+            Entry<K> otherEntry = other.heap[i];
+            if (!entries.containsKey(otherEntry.key)) {
+                merged.add(new Entry<>(otherEntry.key, otherEntry.count + minCount, otherEntry.error + minCount));
+            }
+        }
+
+        merged.sort(Comparator.comparingInt((Entry<K> it) -> it.count).reversed());
+        entries.clear();
+        size = 0;
+        for (Entry<K> entry : merged.subList(0, Math.min(capacity, merged.size()))) {
+            entries.put(entry.key, entry);
+            heap[size] = entry;
+            entry.index = size;
+            siftUp(size++);
+        }
+    }
+
+    // merging only reads the other summary, so an empty one takes the same keys, counts and errors
+    @Override
+    public SpaceSaving<K> copy() {
+        SpaceSaving<K> copy = new SpaceSaving<>(reportedKeys, capacity);
+        copy.merge(this);
+        return copy;
+    }
+
+    // the most frequent keys with their estimated (over) counts
+    @Override
+    public Map<K, Integer> toMap() {
+        Map<K, Integer> result = new LinkedHashMap<>();
+        Arrays.stream(heap, 0, size)
+                .sorted(Comparator.comparingInt((Entry<K> it) -> it.count).reversed())
+                .limit(reportedKeys)
+                .forEach(it -> result.put(it.key, it.count));
+        return result;
+    }
+
+    // the heap is allocated for the whole capacity, entries only for the monitored keys
+    @Override
+    public long estimatedSize() {
+        return (long) capacity * Long.BYTES + entries.size() * CountingMap.ENTRY_SIZE;
+    }
+
+    private int minCount() {
+        return size < capacity ? 0 : heap[0].count;
+    }
+
+    private void siftUp(int index) {
+        Entry<K> entry = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (heap[parent].count <= entry.count) {
+                break;
+            }
+            place(heap[parent], index);
+            index = parent;
+        }
+        place(entry, index);
+    }
+
+    private void siftDown(int index) {
+        Entry<K> entry = heap[index];
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            int right = child + 1;
+            if (right < size && heap[right].count < heap[child].count) {
+                child = right;
+            }
+            if (entry.count <= heap[child].count) {
+                break;
+            }
+            place(heap[child], index);
+            index = child;
+        }
+        place(entry, index);
+    }
+
+    private void place(Entry<K> entry, int index) {
+        heap[index] = entry;
+        entry.index = index;
+    }
+
+    private static class Entry<K> implements Serializable {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private K key;
+        private int count;
+        private int error;
+        private int index;
+
+        Entry(K key, int count, int error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+    }
+}
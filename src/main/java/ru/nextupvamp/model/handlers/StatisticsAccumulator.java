@@ -0,0 +1,275 @@
+package ru.nextupvamp.model.handlers;
+
+import lombok.SneakyThrows;
+import ru.nextupvamp.model.data.LogData;
+import ru.nextupvamp.model.entities.Statistics;
+import ru.nextupvamp.model.entities.TimeBucket;
+
+import java.io.*;
+import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collector;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// mutable partial aggregation state of one worker, partial states are combined once at the end
+public class StatisticsAccumulator implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+    private static final int STATUS_CODES = 1000; // statuses are always three digits
+    private static final int TOP_K_CAPACITY_FACTOR = 10; // monitored keys per reported key
+    // has to be increased whenever fields of the accumulator or of its parts change, since java serialization
+    // would restore an old snapshot with the new fields unset. Snapshots of other versions are not restored
+    static final byte SNAPSHOT_VERSION = 2;
+    private static final Set<Class<?>> SNAPSHOT_JDK_CLASSES = Set.of(
+            String.class, Number.class, Integer.class, Long.class, Enum.class,
+            HashMap.class, LinkedHashMap.class, Map.Entry.class); // tables of maps are checked as entry arrays
+    // only the parts of the accumulator can be restored, so a forged snapshot can't instantiate other classes
+    private static final ObjectInputFilter SNAPSHOT_FILTER =
+            ObjectInputFilter.allowFilter(StatisticsAccumulator::isSnapshotClass, ObjectInputFilter.Status.REJECTED);
+
+    private final KeyCounter<String> remoteAddresses;
+    private final KeyCounter<String> remoteUsers;
+    private final CountingMap<String> requestMethods = new CountingMap<>();
+    private final KeyCounter<String> requestResources;
+    private final TimeBucketCounter requestsOnDate;
+    private final int[] statuses = new int[STATUS_CODES];
+    private int requestsAmount;
+    private int ignoredRows;
+    private final LogHistogram bytesSent;
+    private final LogHistogram requestTimes;
+    private final HyperLogLog distinctRemoteAddresses = new HyperLogLog();
+    private final HyperLogLog distinctRemoteUsers = new HyperLogLog();
+    private final HyperLogLog distinctRequestResources = new HyperLogLog();
+    private final HyperLogLog distinctHttpUserAgents = new HyperLogLog();
+    private final MinuteRollup rollup; // null unless requested, every row would update its top resources
+    private final AccumulatorSettings settings;
+
+    public StatisticsAccumulator(AccumulatorSettings settings) {
+        this.settings = settings;
+        bytesSent = new LogHistogram(settings.quantileRelativeError());
+        requestTimes = new LogHistogram(settings.quantileRelativeError());
+        requestsOnDate = new TimeBucketCounter(settings.timeBucket());
+        remoteAddresses = newKeyCounter();
+        remoteUsers = newKeyCounter();
+        requestResources = newKeyCounter();
+        rollup = settings.rollup() ? new MinuteRollup() : null;
+    }
+
+    public static Collector<LogData, StatisticsAccumulator, StatisticsAccumulator> collector(
+            AccumulatorSettings settings
+    ) {
+        return Collector.of(
+                () -> new StatisticsAccumulator(settings),
+                StatisticsAccumulator::accept,
+                StatisticsAccumulator::combine
+        );
+    }
+
+    public void accept(LogData it) {
+        if (it == LogData.IGNORED) {
+            ignoredRows++;
+            return;
+        }
+
+        requestsAmount++;
+        bytesSent.record(it.bytesSent());
+        if (it.requestTime() != null) {
+            requestTimes.record(it.requestTime());
+        }
+        remoteAddresses.increment(it.remoteAddress());
+        remoteUsers.increment(it.remoteUser());
+        requestMethods.increment(it.requestMethod());
+        requestResources.increment(it.requestResource());
+        requestsOnDate.increment(it.timeLocal());
+        statuses[Math.floorMod(it.status(), STATUS_CODES)]++;
+        // values of the parsers are shared instances, so their hashes are not computed again
+        distinctRemoteAddresses.addHash(NginxLogLineParser.ADDRESSES.sketchHash(it.remoteAddress()));
+        distinctRemoteUsers.addHash(NginxLogLineParser.USERS.sketchHash(it.remoteUser()));
+        distinctRequestResources.addHash(NginxLogLineParser.RESOURCES.sketchHash(it.requestResource()));
+        distinctHttpUserAgents.addHash(NginxLogLineParser.USER_AGENTS.sketchHash(it.httpUserAgent()));
+        if (rollup != null) {
+            rollup.record(it);
+        }
+    }
+
+    // rows skipped without being read which are known to be ignored ones
+    StatisticsAccumulator addIgnoredRows(long rows) {
+        ignoredRows += (int) rows;
+        return this;
+    }
+
+    public StatisticsAccumulator combine(StatisticsAccumulator other) {
+        remoteAddresses.merge(other.remoteAddresses);
+        remoteUsers.merge(other.remoteUsers);
+        requestMethods.merge(other.requestMethods);
+        requestResources.merge(other.requestResources);
+        requestsOnDate.merge(other.requestsOnDate);
+        for (int i = 0; i < STATUS_CODES; i++) {
+            statuses[i] += other.statuses[i];
+        }
+        bytesSent.merge(other.bytesSent);
+        requestTimes.merge(other.requestTimes);
+        requestsAmount += other.requestsAmount;
+        ignoredRows += other.ignoredRows;
+        distinctRemoteAddresses.merge(other.distinctRemoteAddresses);
+        distinctRemoteUsers.merge(other.distinctRemoteUsers);
+        distinctRequestResources.merge(other.distinctRequestResources);
+        distinctHttpUserAgents.merge(other.distinctHttpUserAgents);
+        if (rollup != null) { // states of the same settings have a rollup both
+            rollup.merge(other.rollup);
+        }
+        return this;
+    }
+
+    // combining takes over the counters of the other state, so states shared with the result cache
+    // are copied first. Sketches and histograms are only read by merging and are merged into new ones
+    public StatisticsAccumulator copy() {
+        StatisticsAccumulator copy = new StatisticsAccumulator(settings);
+        copy.remoteAddresses.merge(remoteAddresses.copy());
+        copy.remoteUsers.merge(remoteUsers.copy());
+        copy.requestMethods.merge(requestMethods.copy());
+        copy.requestResources.merge(requestResources.copy());
+        copy.requestsOnDate.merge(requestsOnDate.copy());
+        System.arraycopy(statuses, 0, copy.statuses, 0, STATUS_CODES);
+        copy.requestsAmount = requestsAmount;
+        copy.ignoredRows = ignoredRows;
+        copy.bytesSent.merge(bytesSent);
+        copy.requestTimes.merge(requestTimes);
+        copy.distinctRemoteAddresses.merge(distinctRemoteAddresses);
+        copy.distinctRemoteUsers.merge(distinctRemoteUsers);
+        copy.distinctRequestResources.merge(distinctRequestResources);
+        copy.distinctHttpUserAgents.merge(distinctHttpUserAgents);
+        if (rollup != null) {
+            copy.rollup.merge(rollup.copy());
+        }
+        return copy;
+    }
+
+    // compressed java serialization of the whole state, used to continue gathering later
+    @SneakyThrows(IOException.class)
+    public byte[] toSnapshot() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(new GZIPOutputStream(bytes))) {
+            out.writeByte(SNAPSHOT_VERSION);
+            out.writeObject(this);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static StatisticsAccumulator fromSnapshot(byte[] snapshot) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new GZIPInputStream(new ByteArrayInputStream(snapshot)))) {
+            in.setObjectInputFilter(SNAPSHOT_FILTER);
+            byte version = in.readByte();
+            if (version != SNAPSHOT_VERSION) {
+                throw new InvalidClassException("Snapshot of version " + version + " can't be restored");
+            }
+            return (StatisticsAccumulator) in.readObject();
+        }
+    }
+
+    private static boolean isSnapshotClass(Class<?> type) {
+        while (type.isArray()) {
+            type = type.getComponentType();
+        }
+        return type.isPrimitive()
+                || type.getPackageName().equals(StatisticsAccumulator.class.getPackageName())
+                || type == TimeBucket.class
+                || SNAPSHOT_JDK_CLASSES.contains(type);
+    }
+
+    public AccumulatorSettings settings() {
+        return settings;
+    }
+
+    public int requestsAmount() {
+        return requestsAmount;
+    }
+
+    int ignoredRows() {
+        return ignoredRows;
+    }
+
+    LogHistogram bytesSent() {
+        return bytesSent;
+    }
+
+    // empty unless the log format has $request_time
+    LogHistogram requestTimes() {
+        return requestTimes;
+    }
+
+    // null if the settings don't request a rollup
+    MinuteRollup rollup() {
+        return rollup;
+    }
+
+    // approximate retained bytes, used to weigh the states kept by the result cache
+    long estimatedSize() {
+        long size = (long) STATUS_CODES * Integer.BYTES
+                + remoteAddresses.estimatedSize()
+                + remoteUsers.estimatedSize()
+                + requestMethods.estimatedSize()
+                + requestResources.estimatedSize()
+                + requestsOnDate.estimatedSize()
+                + bytesSent.estimatedSize()
+                + requestTimes.estimatedSize()
+                + distinctRemoteAddresses.estimatedSize()
+                + distinctRemoteUsers.estimatedSize()
+                + distinctRequestResources.estimatedSize()
+                + distinctHttpUserAgents.estimatedSize();
+        return rollup != null ? size + rollup.estimatedSize() : size;
+    }
+
+    // fills everything except the derived bytes sent and request time values
+    Statistics toStatistics(ZonedDateTime from, ZonedDateTime to) {
+        Map<Short, Integer> statusesMap = new HashMap<>();
+        for (int i = 0; i < STATUS_CODES; i++) {
+            if (statuses[i] != 0) {
+                statusesMap.put((short) i, statuses[i]);
+            }
+        }
+
+        Map<String, Integer> remoteAddressesMap = remoteAddresses.toMap();
+        Map<String, Integer> remoteUsersMap = remoteUsers.toMap();
+        Map<String, Integer> requestResourcesMap = requestResources.toMap();
+
+        Statistics statistics = new Statistics();
+        statistics.ignoredRows(ignoredRows)
+                .topK(settings.topK())
+                .remoteAddresses(remoteAddressesMap)
+                .distinctRemoteAddresses(distinct(distinctRemoteAddresses, remoteAddressesMap))
+                .remoteUsers(remoteUsersMap)
+                .distinctRemoteUsers(distinct(distinctRemoteUsers, remoteUsersMap))
+                .fromDate(from)
+                .toDate(to)
+                .timeBucket(settings.timeBucket())
+                .requestsOnDate(requestsOnDate.toMap())
+                .requestMethods(requestMethods.toMap())
+                .requestResources(requestResourcesMap)
+                .distinctRequestResources(distinct(distinctRequestResources, requestResourcesMap))
+                .statuses(statusesMap)
+                .distinctHttpUserAgents(distinctHttpUserAgents.estimate())
+                .requestsAmount(requestsAmount)
+                .remoteAddressesSketch(distinctRemoteAddresses.toBytes())
+                .remoteUsersSketch(distinctRemoteUsers.toBytes())
+                .requestResourcesSketch(distinctRequestResources.toBytes())
+                .httpUserAgentsSketch(distinctHttpUserAgents.toBytes());
+        return statistics;
+    }
+
+    private KeyCounter<String> newKeyCounter() {
+        if (settings.topK() == null) {
+            return new CountingMap<>();
+        }
+        return new SpaceSaving<>(settings.topK(), settings.topK() * TOP_K_CAPACITY_FACTOR);
+    }
+
+    // full maps give the exact value, top k ones only hold a part of the keys
+    private long distinct(HyperLogLog sketch, Map<String, Integer> map) {
+        return settings.topK() == null ? map.size() : sketch.estimate();
+    }
+}
@@ -0,0 +1,90 @@
+package ru.nextupvamp.model.handlers;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import ru.nextupvamp.model.data.CacheStatsDto;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// lru cache of gathered accumulators keyed by resource content and filters fingerprints,
+// cached accumulators are never modified, statistics entities are built from them on every hit.
+// Accumulators of big resources hold far more keys than small ones, so entries are weighed by
+// their estimated size and the eldest ones are evicted until the cache fits its budget
+@Component
+public class StatisticsResultCache {
+    private final long maxBytes;
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public StatisticsResultCache(
+            @Value("${statistics.cache.max-size:256MB}") DataSize maxSize,
+            GatheringMetrics metrics
+    ) {
+        this.maxBytes = maxSize.toBytes();
+        metrics.resultCache(this);
+    }
+
+    StatisticsResultCache(DataSize maxSize) {
+        this(maxSize, GatheringMetrics.disabled());
+    }
+
+    static StatisticsResultCache disabled() {
+        return new StatisticsResultCache(DataSize.ofBytes(0));
+    }
+
+    boolean enabled() {
+        return maxBytes > 0;
+    }
+
+    // null key means the resource version is unknown, such resources are never cached nor counted
+    synchronized StatisticsAccumulator get(String key) {
+        if (key == null) {
+            return null;
+        }
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            hits.increment();
+            return entry.accumulator();
+        }
+        misses.increment();
+        return null;
+    }
+
+    // an accumulator bigger than the whole budget is not cached instead of evicting everything else
+    synchronized void put(String key, StatisticsAccumulator accumulator) {
+        if (key == null || !enabled()) {
+            return;
+        }
+        long size = accumulator.estimatedSize();
+        if (size > maxBytes) {
+            return;
+        }
+        Entry previous = entries.put(key, new Entry(accumulator, size));
+        bytes += size - (previous != null ? previous.size() : 0);
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (bytes > maxBytes) {
+            bytes -= eldest.next().size();
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    public synchronized CacheStatsDto stats() {
+        return new CacheStatsDto(hits.sum(), misses.sum(), evictions.sum(), entries.size(), bytes, maxBytes);
+    }
+
+    private record Entry(StatisticsAccumulator accumulator, long size) {
+    }
+}
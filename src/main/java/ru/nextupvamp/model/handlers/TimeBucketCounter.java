@@ -0,0 +1,105 @@
+package ru.nextupvamp.model.handlers;
+
+import ru.nextupvamp.model.entities.TimeBucket;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+// counts requests per time bucket in a dense array indexed by the offset from the first bucket,
+// buckets too far from the dense window (e.g. a stray 1970 timestamp) are kept in a sparse map
+class TimeBucketCounter implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+    private static final int INITIAL_BUCKETS = 64;
+    private static final int MAX_DENSE_BUCKETS = 1 << 20; // 4 MB, about 12 days of seconds
+
+    private final TimeBucket timeBucket;
+    private long firstBucket;
+    private int[] counts = new int[0];
+    private final CountingMap<Long> sparse = new CountingMap<>();
+
+    TimeBucketCounter(TimeBucket timeBucket) {
+        this.timeBucket = timeBucket;
+    }
+
+    void increment(ZonedDateTime time) {
+        add(Math.floorDiv(time.toEpochSecond(), timeBucket.seconds()), 1);
+    }
+
+    void merge(TimeBucketCounter other) {
+        if (other.timeBucket != timeBucket) {
+            throw new IllegalArgumentException("Counters with different time buckets can't be merged");
+        }
+        for (int i = 0; i < other.counts.length; i++) {
+            if (other.counts[i] != 0) {
+                add(other.firstBucket + i, other.counts[i]);
+            }
+        }
+        sparse.merge(other.sparse);
+    }
+
+    TimeBucketCounter copy() {
+        TimeBucketCounter copy = new TimeBucketCounter(timeBucket);
+        copy.firstBucket = firstBucket;
+        copy.counts = counts.clone();
+        copy.sparse.merge(sparse.copy());
+        return copy;
+    }
+
+    long estimatedSize() {
+        return (long) counts.length * Integer.BYTES + sparse.estimatedSize();
+    }
+
+    Map<ZonedDateTime, Integer> toMap() {
+        Map<ZonedDateTime, Integer> result = new HashMap<>();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) {
+                result.put(bucketStart(firstBucket + i), counts[i]);
+            }
+        }
+        sparse.toMap().forEach((bucket, amount) -> result.merge(bucketStart(bucket), amount, Integer::sum));
+        return result;
+    }
+
+    private void add(long bucket, int amount) {
+        if (counts.length == 0) {
+            firstBucket = bucket;
+            counts = new int[INITIAL_BUCKETS];
+        }
+
+        long offset = bucket - firstBucket;
+        if (offset < 0 || offset >= counts.length) {
+            if (!grow(bucket)) {
+                sparse.add(bucket, amount);
+                return;
+            }
+            offset = bucket - firstBucket;
+        }
+        counts[(int) offset] += amount;
+    }
+
+    private boolean grow(long bucket) {
+        long lastBucket = firstBucket + counts.length - 1;
+        long span = Math.max(lastBucket, bucket) - Math.min(firstBucket, bucket) + 1;
+        if (span > MAX_DENSE_BUCKETS) {
+            return false;
+        }
+
+        int length = (int) Math.min(MAX_DENSE_BUCKETS, Math.max(span, counts.length * 2L));
+        long newFirstBucket = bucket < firstBucket ? lastBucket - length + 1 : firstBucket;
+        int[] grown = new int[length];
+        System.arraycopy(counts, 0, grown, (int) (firstBucket - newFirstBucket), counts.length);
+        counts = grown;
+        firstBucket = newFirstBucket;
+        return true;
+    }
+
+    private ZonedDateTime bucketStart(long bucket) {
+        return ZonedDateTime.ofInstant(Instant.ofEpochSecond(bucket * timeBucket.seconds()), ZoneOffset.UTC);
+    }
+}
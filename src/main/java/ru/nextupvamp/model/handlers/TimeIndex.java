@@ -0,0 +1,204 @@
+package ru.nextupvamp.model.handlers;
+
+import ru.nextupvamp.model.data.LogData;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+// sparse sidecar index of a log file: every line aligned block of about blockSize bytes keeps
+// the min and max timestamps of its rows, so date filtered gathering reads only the blocks
+// which may contain rows inside the window. logs are nearly sorted by time, so these are few
+public final class TimeIndex {
+    private static final String SIDECAR_SUFFIX = ".idx";
+    private static final int FORMAT_VERSION = 1;
+
+    private final String fileKey;
+    private final long indexedSize;
+    private final long tailChecksum;
+    private final int blockSize;
+    private final List<Block> blocks;
+
+    private TimeIndex(String fileKey, long indexedSize, long tailChecksum, int blockSize, List<Block> blocks) {
+        this.fileKey = fileKey;
+        this.indexedSize = indexedSize;
+        this.tailChecksum = tailChecksum;
+        this.blockSize = blockSize;
+        this.blocks = blocks;
+    }
+
+    public static Path sidecarOf(Path file) {
+        return file.resolveSibling(file.getFileName() + SIDECAR_SUFFIX);
+    }
+
+    // timestamps of the block rows, a block of ignored rows only has min > max
+    record Block(long start, long end, long minEpochSecond, long maxEpochSecond, int ignoredLines) {
+        boolean overlaps(long fromEpochSecond, long toEpochSecond) {
+            return maxEpochSecond >= fromEpochSecond && minEpochSecond <= toEpochSecond;
+        }
+    }
+
+    // line aligned ranges to read, rows of the skipped blocks can only be ignored ones or outside the window
+    record Selection(List<FileChunk> ranges, long skippedIgnoredLines) {
+    }
+
+    // the index is extended when the file has been appended and rebuilt when it has been rewritten
+    static TimeIndex loadOrBuild(Path file, LogLineParser parser, int blockSize) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        String fileKey = String.valueOf(attributes.fileKey());
+        long size = attributes.size();
+
+        TimeIndex saved = load(sidecarOf(file));
+        if (saved != null && saved.blockSize == blockSize && saved.fileKey.equals(fileKey)
+                && saved.indexedSize <= size
+                && saved.tailChecksum == FileChecksums.tailChecksum(file, saved.indexedSize)) {
+            if (saved.indexedSize == size) {
+                return saved;
+            }
+            // the last block might end with an incomplete line, so it is indexed again
+            List<Block> blocks = new ArrayList<>(saved.blocks);
+            long from = blocks.isEmpty() ? 0 : blocks.removeLast().start();
+            blocks.addAll(buildBlocks(file, from, size, parser, blockSize));
+            return save(file, new TimeIndex(fileKey, size, FileChecksums.tailChecksum(file, size), blockSize, blocks));
+        }
+
+        List<Block> blocks = buildBlocks(file, 0, size, parser, blockSize);
+        return save(file, new TimeIndex(fileKey, size, FileChecksums.tailChecksum(file, size), blockSize, blocks));
+    }
+
+    // blocks crossing the range bounds are always read, since some of their rows are outside the range
+    Selection select(long from, long to, ZonedDateTime fromDate, ZonedDateTime toDate) {
+        // rows have whole seconds, so flooring the bounds keeps every matching row
+        long fromEpochSecond = fromDate != null ? fromDate.toEpochSecond() : Long.MIN_VALUE;
+        long toEpochSecond = toDate != null ? toDate.toEpochSecond() : Long.MAX_VALUE;
+
+        List<FileChunk> ranges = new ArrayList<>();
+        long skippedIgnoredLines = 0;
+        long rangeStart = -1;
+        long rangeEnd = -1;
+        for (Block block : blocks) {
+            if (block.end() <= from || block.start() >= to) {
+                continue;
+            }
+            boolean inside = block.start() >= from && block.end() <= to;
+            if (inside && !block.overlaps(fromEpochSecond, toEpochSecond)) {
+                skippedIgnoredLines += block.ignoredLines();
+                continue;
+            }
+
+            long start = Math.max(block.start(), from);
+            long end = Math.min(block.end(), to);
+            if (start != rangeEnd) {
+                if (rangeStart >= 0) {
+                    ranges.add(new FileChunk(rangeStart, rangeEnd));
+                }
+                rangeStart = start;
+            }
+            rangeEnd = end;
+        }
+        if (rangeStart >= 0) {
+            ranges.add(new FileChunk(rangeStart, rangeEnd));
+        }
+        if (to > indexedSize) { // appended after the index has been built
+            ranges.add(new FileChunk(Math.max(from, indexedSize), to));
+        }
+        return new Selection(ranges, skippedIgnoredLines);
+    }
+
+    List<Block> blocks() {
+        return blocks;
+    }
+
+    private static List<Block> buildBlocks(Path file, long from, long to, LogLineParser parser, int blockSize)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return LogsStreamReader.splitIntoChunks(channel, from, to, blockSize).parallelStream()
+                    .map(chunk -> buildBlock(channel, chunk, parser))
+                    .toList();
+        }
+    }
+
+    private static Block buildBlock(FileChannel channel, FileChunk chunk, LogLineParser parser) {
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        int ignoredLines = 0;
+        for (String line : (Iterable<String>) LogsStreamReader.readLines(channel, chunk)::iterator) {
+            LogData logData = parser.parseLine(line);
+            if (logData == LogData.IGNORED) {
+                ignoredLines++;
+                continue;
+            }
+            long epochSecond = logData.timeLocal().toEpochSecond();
+            min = Math.min(min, epochSecond);
+            max = Math.max(max, epochSecond);
+        }
+        return new Block(chunk.start(), chunk.end(), min, max, ignoredLines);
+    }
+
+    private static TimeIndex load(Path sidecar) {
+        if (Files.notExists(sidecar)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(sidecar)))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+            String fileKey = in.readUTF();
+            long indexedSize = in.readLong();
+            long tailChecksum = in.readLong();
+            int blockSize = in.readInt();
+            int count = in.readInt();
+            List<Block> blocks = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                blocks.add(new Block(in.readLong(), in.readLong(), in.readLong(), in.readLong(), in.readInt()));
+            }
+            return new TimeIndex(fileKey, indexedSize, tailChecksum, blockSize, blocks);
+        } catch (IOException e) {
+            return null; // corrupted, built again
+        }
+    }
+
+    // a sidecar that cannot be written only means the index is built again next time
+    private static TimeIndex save(Path file, TimeIndex index) {
+        Path sidecar = sidecarOf(file);
+        Path temporary = null;
+        try {
+            temporary = Files.createTempFile(
+                    sidecar.toAbsolutePath().getParent(), sidecar.getFileName().toString(), ".tmp");
+            try (DataOutputStream out =
+                         new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(FORMAT_VERSION);
+                out.writeUTF(index.fileKey);
+                out.writeLong(index.indexedSize);
+                out.writeLong(index.tailChecksum);
+                out.writeInt(index.blockSize);
+                out.writeInt(index.blocks.size());
+                for (Block block : index.blocks) {
+                    out.writeLong(block.start());
+                    out.writeLong(block.end());
+                    out.writeLong(block.minEpochSecond());
+                    out.writeLong(block.maxEpochSecond());
+                    out.writeInt(block.ignoredLines());
+                }
+            }
+            Files.move(temporary, sidecar, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            deleteQuietly(temporary);
+        }
+        return index;
+    }
+
+    private static void deleteQuietly(Path temporary) {
+        if (temporary == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(temporary);
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package ru.nextupvamp.model.handlers;
+
+import java.time.DateTimeException;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+
+import static ru.nextupvamp.model.handlers.NginxLogLineParser.indexOf;
+import static ru.nextupvamp.model.handlers.NginxLogLineParser.parseDigits;
+
+// nginx $time_local and $time_iso8601 values. Logs are written in time order,
+// so consecutive lines usually share the same timestamp and the last parsed one is reused
+final class TimeLocalParser {
+    static final int TIME_LOCAL_LENGTH = "dd/MMM/yyyy:HH:mm:ss +hhmm".length();
+    private static final String[] MONTHS =
+            {"Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec"};
+
+    private final ThreadLocal<CachedTimestamp> lastTimestamp = new ThreadLocal<>();
+
+    // the line has to be long enough, returns null if the value is malformed
+    ZonedDateTime parseTimeLocal(String line, int start) {
+        ZonedDateTime cached = cached(line, start, start + TIME_LOCAL_LENGTH);
+        if (cached != null) {
+            return cached;
+        }
+        return cache(line, start, start + TIME_LOCAL_LENGTH, parseTimeLocalFields(line, start));
+    }
+
+    ZonedDateTime parseIso8601(String line, int start, int end) {
+        ZonedDateTime cached = cached(line, start, end);
+        if (cached != null) {
+            return cached;
+        }
+        try {
+            return cache(line, start, end, OffsetDateTime.parse(line.substring(start, end)).toZonedDateTime());
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private ZonedDateTime cached(String line, int start, int end) {
+        CachedTimestamp cached = lastTimestamp.get();
+        if (cached != null && cached.text().length() == end - start
+                && line.regionMatches(start, cached.text(), 0, end - start)) {
+            return cached.value();
+        }
+        return null;
+    }
+
+    private ZonedDateTime cache(String line, int start, int end, ZonedDateTime value) {
+        if (value != null) {
+            lastTimestamp.set(new CachedTimestamp(line.substring(start, end), value));
+        }
+        return value;
+    }
+
+    // dd/MMM/yyyy:HH:mm:ss +hhmm
+    private static ZonedDateTime parseTimeLocalFields(String line, int start) {
+        if (line.charAt(start + 2) != '/' || line.charAt(start + 6) != '/' || line.charAt(start + 11) != ':'
+                || line.charAt(start + 14) != ':' || line.charAt(start + 17) != ':' || line.charAt(start + 20) != ' ') {
+            return null;
+        }
+
+        int day = parseDigits(line, start, start + 2);
+        int month = indexOf(MONTHS, line, start + 3, start + 6) + 1;
+        int year = parseDigits(line, start + 7, start + 11);
+        int hour = parseDigits(line, start + 12, start + 14);
+        int minute = parseDigits(line, start + 15, start + 17);
+        int second = parseDigits(line, start + 18, start + 20);
+        char sign = line.charAt(start + 21);
+        int offsetHours = parseDigits(line, start + 22, start + 24);
+        int offsetMinutes = parseDigits(line, start + 24, start + 26);
+        if ((day | month | year | hour | minute | second | offsetHours | offsetMinutes) < 0
+                || month == 0 || (sign != '+' && sign != '-')) {
+            return null;
+        }
+
+        try {
+            ZoneOffset offset = sign == '+'
+                    ? ZoneOffset.ofHoursMinutes(offsetHours, offsetMinutes)
+                    : ZoneOffset.ofHoursMinutes(-offsetHours, -offsetMinutes);
+            return ZonedDateTime.of(year, month, day, hour, minute, second, 0, offset);
+        } catch (DateTimeException e) {
+            return null;
+        }
+    }
+
+    private record CachedTimestamp(String text, ZonedDateTime value) {
+    }
+}
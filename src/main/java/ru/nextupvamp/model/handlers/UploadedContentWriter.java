@@ -0,0 +1,72 @@
+package ru.nextupvamp.model.handlers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+// copies an upload to disk through a fixed buffer, hashing and counting lines in the same pass
+public class UploadedContentWriter {
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final String HASH_ALGORITHM = "SHA-256";
+
+    public record WrittenContent(long size, long lines, String sha256) {
+    }
+
+    public static WrittenContent write(InputStream inputStream, Path target) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] bytes = new byte[BUFFER_SIZE];
+        long size = 0;
+        long lines = 0;
+        byte lastByte = '\n';
+
+        FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        try (channel) {
+            int read;
+            while ((read = inputStream.readNBytes(bytes, 0, bytes.length)) > 0) {
+                digest.update(bytes, 0, read);
+                lines += countLineBreaks(bytes, read);
+                lastByte = bytes[read - 1];
+                size += read;
+
+                ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, read);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // partial uploads are not left behind, aborted multipart streams may fail unchecked
+            Files.deleteIfExists(target);
+            throw e;
+        }
+
+        if (lastByte != '\n') {
+            lines++; // the last line has no line break
+        }
+        return new WrittenContent(size, lines, HexFormat.of().formatHex(digest.digest()));
+    }
+
+    private static long countLineBreaks(byte[] bytes, int length) {
+        long lineBreaks = 0;
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] == '\n') {
+                lineBreaks++;
+            }
+        }
+        return lineBreaks;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every jvm has to provide sha-256
+        }
+    }
+}
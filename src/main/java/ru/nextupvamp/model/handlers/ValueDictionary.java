@@ -0,0 +1,185 @@
+package ru.nextupvamp.model.handlers;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// bounded concurrent dictionary of repeated values of one field shared by the parsers and the accumulators.
+// A value is looked up by its range of the line, so a repeated address or user agent is not allocated again
+// and all rows holding it share one String with a cached hash code, which counting maps compare by reference.
+// Entries also keep the sketch hash, so distinct value estimators don't hash the chars of known values.
+// A field with more distinct values than the capacity is not worth a lookup per row, so once full
+// the dictionary drops its table and passes values through: they stay correct, only allocated every time.
+// Tables are only kept for the gatherings in progress: a field which overflowed in an earlier gathering
+// gets a new table when the next one starts, and all values are dropped once no gathering is running,
+// so the values of one resource are not kept for the next ones
+final class ValueDictionary {
+    static final int DEFAULT_CAPACITY = 1 << 14;
+    static final int DEFAULT_MAX_LENGTH = 256; // longer values are rarely repeated and would take most memory
+    private static final ValueDictionary[] BY_FIELD = new ValueDictionary[LogField.values().length];
+    private static final AtomicInteger GATHERINGS = new AtomicInteger();
+
+    static {
+        for (LogField field : LogField.values()) {
+            BY_FIELD[field.ordinal()] = new ValueDictionary(DEFAULT_CAPACITY, DEFAULT_MAX_LENGTH);
+        }
+    }
+
+    private final int capacity;
+    private final int maxLength;
+    private volatile Table table; // null once the field has turned out to have too many distinct values
+
+    ValueDictionary(int capacity, int maxLength) {
+        if (capacity <= 0 || maxLength < 0) {
+            throw new IllegalArgumentException("Dictionary capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.maxLength = maxLength;
+        this.table = new Table(capacity);
+    }
+
+    // a field of low cardinality keeps its dictionary, whatever the values of the others are
+    static ValueDictionary of(LogField field) {
+        return BY_FIELD[field.ordinal()];
+    }
+
+    // a reset meanwhile only makes the running gatherings allocate values which are already shared
+    static void gatheringStarted() {
+        GATHERINGS.incrementAndGet();
+        for (ValueDictionary dictionary : BY_FIELD) {
+            if (dictionary.passesThrough()) {
+                dictionary.reset();
+            }
+        }
+    }
+
+    static void gatheringFinished() {
+        if (GATHERINGS.decrementAndGet() == 0) {
+            for (ValueDictionary dictionary : BY_FIELD) {
+                dictionary.reset();
+            }
+        }
+    }
+
+    // the value of [from, to) of the line, the shared instance if it has been seen before
+    String intern(String line, int from, int to) {
+        int length = to - from;
+        Table current = table;
+        if (current == null || length > maxLength) {
+            return line.substring(from, to);
+        }
+
+        int hash = 0; // same as String.hashCode() of the value
+        for (int i = from; i < to; i++) {
+            hash = 31 * hash + line.charAt(i);
+        }
+        for (int slot = current.slotOf(hash); ; slot = current.next(slot)) {
+            Entry entry = current.entries.get(slot);
+            if (entry == null) {
+                return insert(current, slot, line.substring(from, to), hash);
+            }
+            if (entry.hash == hash && entry.value.length() == length
+                    && line.regionMatches(from, entry.value, 0, length)) {
+                return entry.value;
+            }
+        }
+    }
+
+    // the shared instance of an already allocated value
+    String intern(String value) {
+        Table current = table;
+        if (current == null || value == null || value.length() > maxLength) {
+            return value;
+        }
+
+        int hash = value.hashCode();
+        for (int slot = current.slotOf(hash); ; slot = current.next(slot)) {
+            Entry entry = current.entries.get(slot);
+            if (entry == null) {
+                return insert(current, slot, value, hash);
+            }
+            if (entry.matches(value, hash)) {
+                return entry.value;
+            }
+        }
+    }
+
+    // HyperLogLog hash of the value, taken from the dictionary for known values.
+    // Values of a passed through field are hashed without probing a table they can't be in
+    long sketchHash(String value) {
+        Table current = table;
+        if (current != null && value.length() <= maxLength) {
+            int hash = value.hashCode(); // cached for the shared instances
+            for (int slot = current.slotOf(hash); ; slot = current.next(slot)) {
+                Entry entry = current.entries.get(slot);
+                if (entry == null) {
+                    break;
+                }
+                if (entry.matches(value, hash)) {
+                    return entry.sketchHash;
+                }
+            }
+        }
+        return HyperLogLog.hash(value);
+    }
+
+    int size() {
+        Table current = table;
+        return current != null ? current.size.get() : 0;
+    }
+
+    boolean passesThrough() {
+        return table == null;
+    }
+
+    void reset() {
+        table = new Table(capacity);
+    }
+
+    // the slot is reserved before it is taken, so there are always empty slots to end the probing
+    private String insert(Table current, int slot, String value, int hash) {
+        if (current.size.incrementAndGet() > capacity) {
+            table = null;
+            return value;
+        }
+
+        Entry entry = new Entry(value, hash, HyperLogLog.hash(value));
+        while (true) {
+            Entry existing = current.entries.compareAndExchange(slot, null, entry);
+            if (existing == null) {
+                return value;
+            }
+            if (existing.matches(value, hash)) { // inserted by another thread meanwhile
+                current.size.decrementAndGet();
+                return existing.value;
+            }
+            slot = current.next(slot);
+        }
+    }
+
+    private record Entry(String value, int hash, long sketchHash) {
+        boolean matches(String other, int otherHash) {
+            return value == other || (hash == otherHash && value.equals(other));
+        }
+    }
+
+    // open addressing with linear probing, at most half full
+    private static final class Table {
+        private final AtomicReferenceArray<Entry> entries;
+        private final AtomicInteger size = new AtomicInteger();
+        private final int mask;
+
+        Table(int capacity) {
+            int length = Integer.highestOneBit(capacity) << 2;
+            entries = new AtomicReferenceArray<>(length);
+            mask = length - 1;
+        }
+
+        int slotOf(int hash) {
+            return (hash ^ (hash >>> 16)) & mask;
+        }
+
+        int next(int slot) {
+            return (slot + 1) & mask;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package ru.nextupvamp.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.SneakyThrows;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import ru.nextupvamp.exception.GatheringRejectedException;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+// admits statistics gatherings within the cpu and memory budget and runs them on a pool of their own,
+// so parallel scans never take the common pool from the rest of the application. Callers over the budget
+// wait in a bounded queue for a limited time, the rest are rejected with a retry hint
+@Service
+public class GatheringScheduler {
+    private static final double DURATION_SMOOTHING = 0.2;
+    private static final long MIN_RETRY_AFTER_SECONDS = 1;
+
+    private final ForkJoinPool pool;
+    private final int maxConcurrent;
+    private final int perUserConcurrent;
+    private final int queueCapacity;
+    private final Duration maxWait;
+    private final long memoryBudget;
+    private final long memoryPerGathering;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private final Map<String, Integer> runningByUser = new HashMap<>();
+    private int running;
+    private int waiting;
+    private long reservedMemory;
+    private double averageDurationNanos; // smoothed, for the retry hint
+
+    public GatheringScheduler(
+            @Value("${statistics.scheduler.parallelism:0}") int parallelism,
+            @Value("${statistics.scheduler.max-concurrent:4}") int maxConcurrent,
+            @Value("${statistics.scheduler.per-user-concurrent:2}") int perUserConcurrent,
+            @Value("${statistics.scheduler.queue-capacity:16}") int queueCapacity,
+            @Value("${statistics.scheduler.max-wait:PT30S}") Duration maxWait,
+            @Value("${statistics.scheduler.memory-budget:1GB}") DataSize memoryBudget,
+            @Value("${statistics.scheduler.memory-per-gathering:64MB}") DataSize memoryPerGathering
+    ) {
+        if (maxConcurrent <= 0 || perUserConcurrent <= 0 || queueCapacity < 0) {
+            throw new IllegalArgumentException("Scheduler limits must be positive");
+        }
+        this.pool = new ForkJoinPool(
+                parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors(),
+                pool -> {
+                    var thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                    thread.setName("statistics-gathering-" + thread.getPoolIndex());
+                    return thread;
+                },
+                null,
+                false
+        );
+        this.maxConcurrent = maxConcurrent;
+        this.perUserConcurrent = perUserConcurrent;
+        this.queueCapacity = queueCapacity;
+        this.maxWait = maxWait;
+        this.memoryBudget = memoryBudget.toBytes();
+        this.memoryPerGathering = memoryPerGathering.toBytes();
+    }
+
+    // user is the owner of the gathered resources, gatherings of anonymous ones are limited only globally.
+    // Every source reserves the same share of memory, since partial states of all of them are kept until merged
+    @SneakyThrows
+    public <T> T run(String user, int sources, Supplier<T> gathering) {
+        long memory = Math.min(memoryBudget, Math.max(1, sources) * memoryPerGathering);
+        acquire(user, memory);
+        long start = System.nanoTime();
+        try {
+            ForkJoinTask<T> task = pool.submit(gathering::get);
+            try {
+                return task.get();
+            } catch (ExecutionException e) {
+                throw e.getCause();
+            } catch (InterruptedException e) {
+                // a running task can't be stopped from here, so its budget is held until it ends
+                task.quietlyJoin();
+                throw e;
+            }
+        } finally {
+            release(user, memory, System.nanoTime() - start);
+        }
+    }
+
+    private void acquire(String user, long memory) throws InterruptedException {
+        lock.lock();
+        try {
+            if (!admissible(user, memory)) {
+                if (waiting >= queueCapacity) {
+                    throw rejected();
+                }
+                waiting++;
+                try {
+                    long nanos = maxWait.toNanos();
+                    while (!admissible(user, memory)) {
+                        if (nanos <= 0) {
+                            throw rejected();
+                        }
+                        nanos = released.awaitNanos(nanos);
+                    }
+                } finally {
+                    waiting--;
+                }
+            }
+            running++;
+            reservedMemory += memory;
+            if (user != null) {
+                runningByUser.merge(user, 1, Integer::sum);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(String user, long memory, long durationNanos) {
+        lock.lock();
+        try {
+            running--;
+            reservedMemory -= memory;
+            if (user != null) {
+                runningByUser.computeIfPresent(user, (key, amount) -> amount > 1 ? amount - 1 : null);
+            }
+            averageDurationNanos = averageDurationNanos == 0
+                    ? durationNanos
+                    : averageDurationNanos + DURATION_SMOOTHING * (durationNanos - averageDurationNanos);
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean admissible(String user, long memory) {
+        return running < maxConcurrent
+                && reservedMemory + memory <= memoryBudget
+                && (user == null || runningByUser.getOrDefault(user, 0) < perUserConcurrent);
+    }
+
+    // the queue ahead is drained maxConcurrent gatherings at a time
+    private GatheringRejectedException rejected() {
+        double waves = (double) (waiting + 1) / maxConcurrent;
+        long seconds = (long) Math.ceil(waves * averageDurationNanos / TimeUnit.SECONDS.toNanos(1));
+        return new GatheringRejectedException(Duration.ofSeconds(Math.max(MIN_RETRY_AFTER_SECONDS, seconds)));
+    }
+
+    @PreDestroy
+    void shutdown() {
+        pool.shutdownNow();
+    }
+}
@@ -0,0 +1,169 @@
+package ru.nextupvamp.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.SneakyThrows;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.nextupvamp.model.data.RollupDto;
+import ru.nextupvamp.model.entities.*;
+import ru.nextupvamp.model.handlers.GatheringMetrics;
+import ru.nextupvamp.model.handlers.LiveStatistics;
+import ru.nextupvamp.model.handlers.LogsStatisticsGatherer;
+import ru.nextupvamp.repository.ResourceRepository;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+// in memory statistics of stream resources which are fed with pushed lines,
+// the states are flushed to the statistics and checkpoints of their resources periodically
+@Service
+@RequiredArgsConstructor
+public class LiveStatisticsService {
+    private static final Supplier<NoSuchElementException> NO_RESOURCE_WITH_SUCH_ID =
+            () -> new NoSuchElementException("No Resource With Such ID");
+
+    private final ResourceRepository resourceRepository;
+    private final LogsStatisticsGatherer logsStatisticsGatherer;
+    private final ObjectMapper objectMapper;
+    private final GatheringMetrics gatheringMetrics;
+    private final TransactionTemplate transactionTemplate; // flushes run outside of requests, checkpoints are lazy
+    private final Map<Integer, LiveStatistics> liveStatistics = new ConcurrentHashMap<>();
+    private final Map<Integer, Long> flushedVersions = new ConcurrentHashMap<>();
+    // a removed state must not be saved over a resource whose filters have just been reset
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    @Value("${statistics.ingest.top-k:1000}")
+    private int defaultTopK;
+
+    // ndjson lines are either json strings or objects with a "line" field
+    @SneakyThrows
+    public long ingest(int resourceId, InputStream body, boolean ndjson) {
+        LiveStatistics statistics = getLiveStatistics(resourceId);
+        try (var reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            Stream<String> lines = reader.lines();
+            return statistics.ingest(ndjson ? lines.map(this::ndjsonLine) : lines);
+        }
+    }
+
+    // time bucket of a live resource is set by its filters, the request one may only repeat it
+    public Statistics getStatistics(int resourceId, TimeBucket timeBucket) {
+        LiveStatistics statistics = getLiveStatistics(resourceId);
+        if (timeBucket != null && timeBucket != statistics.settings().timeBucket()) {
+            throw new IllegalArgumentException("Time bucket of a stream resource is set by its filters");
+        }
+        return statistics.statistics();
+    }
+
+    public RollupDto getRollup(int resourceId, int minutes) {
+        return getLiveStatistics(resourceId).rollup(minutes);
+    }
+
+    @Scheduled(fixedDelayString = "${statistics.ingest.flush-interval:PT10S}")
+    public void flush() {
+        liveStatistics.keySet().forEach(this::flush);
+    }
+
+    public void flush(int resourceId) {
+        LiveStatistics statistics = liveStatistics.get(resourceId);
+        if (statistics == null) {
+            return;
+        }
+        long version = statistics.version();
+        if (flushedVersions.getOrDefault(resourceId, -1L) == version) {
+            return;
+        }
+
+        flushLock.lock();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                if (liveStatistics.get(resourceId) != statistics) {
+                    return; // removed meanwhile
+                }
+                var resource = resourceRepository.findById(resourceId).orElse(null);
+                if (resource == null) {
+                    remove(resourceId);
+                    return;
+                }
+                var checkpoint = resource.checkpoint() != null ? resource.checkpoint() : new GatheringCheckpoint();
+                statistics.saveCheckpoint(checkpoint);
+                resource.statistics(statistics.statistics()).checkpoint(checkpoint);
+                gatheringMetrics.timeSave(resource.type(), () -> resourceRepository.save(resource));
+                flushedVersions.put(resourceId, version);
+            });
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    // pushed lines which haven't been flushed yet are lost, a running flush is waited for
+    public void remove(int resourceId) {
+        flushLock.lock();
+        try {
+            liveStatistics.remove(resourceId);
+            flushedVersions.remove(resourceId);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private LiveStatistics getLiveStatistics(int resourceId) {
+        return liveStatistics.computeIfAbsent(resourceId, id -> transactionTemplate.execute(status -> {
+            var resource = resourceRepository.findById(id).orElseThrow(NO_RESOURCE_WITH_SUCH_ID);
+            if (resource.type() != ResourceType.STREAM) {
+                throw new IllegalArgumentException("Lines can be pushed to stream resources only");
+            }
+            return logsStatisticsGatherer.liveStatistics(boundedFilters(resource.filters()), resource.checkpoint());
+        }));
+    }
+
+    // live state has to fit in memory however long the stream is, so only the top k keys are kept and
+    // requests are counted per minute at least, which keeps the dense counter of two years within 4 MB
+    private ResourceFilters boundedFilters(ResourceFilters filters) {
+        var boundedFilters = new ResourceFilters();
+        if (filters != null) {
+            boundedFilters.fromDate(filters.fromDate())
+                    .toDate(filters.toDate())
+                    .filterMap(filters.filterMap())
+                    .timeBucket(filters.timeBucket())
+                    .topK(filters.topK())
+                    .logFormat(filters.logFormat())
+                    .rollup(filters.rollup());
+        }
+        if (boundedFilters.topK() == null) {
+            boundedFilters.topK(defaultTopK);
+        }
+        if (boundedFilters.timeBucket() == null || boundedFilters.timeBucket() == TimeBucket.SECOND) {
+            boundedFilters.timeBucket(TimeBucket.MINUTE);
+        }
+        return boundedFilters;
+    }
+
+    private String ndjsonLine(String json) {
+        if (json.isBlank()) {
+            return "";
+        }
+        try {
+            JsonNode node = objectMapper.readTree(json);
+            JsonNode line = node.isObject() ? node.get("line") : node;
+            if (line == null || !line.isTextual()) {
+                throw new IllegalArgumentException("NDJSON line must be a string or an object with a line field");
+            }
+            return line.asText();
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Malformed NDJSON line: " + e.getOriginalMessage());
+        }
+    }
+}
@@ -1,26 +1,34 @@
 package ru.nextupvamp.service;
 
-import lombok.Cleanup;
 import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 import ru.nextupvamp.model.data.ResourceDto;
+import ru.nextupvamp.model.data.RollupDto;
 import ru.nextupvamp.model.data.UserDto;
 import ru.nextupvamp.model.entities.*;
+import ru.nextupvamp.model.handlers.ColumnarLog;
+import ru.nextupvamp.model.handlers.GatheringMetrics;
+import ru.nextupvamp.model.handlers.GatheringProgress;
+import ru.nextupvamp.model.handlers.LogFormatParser;
+import ru.nextupvamp.model.handlers.LogSource;
 import ru.nextupvamp.model.handlers.LogsStatisticsGatherer;
+import ru.nextupvamp.model.handlers.RollupStore;
+import ru.nextupvamp.model.handlers.TimeIndex;
+import ru.nextupvamp.model.handlers.UploadedContentWriter;
+import ru.nextupvamp.model.handlers.UploadedContentWriter.WrittenContent;
 import ru.nextupvamp.repository.ResourceRepository;
 import ru.nextupvamp.repository.UserRepository;
 
-import java.io.File;
-import java.io.FileOutputStream;
+import java.io.InputStream;
 import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.time.ZonedDateTime;
-import java.util.Map;
-import java.util.NoSuchElementException;
+import java.util.*;
 import java.util.function.Supplier;
 
 @Service
@@ -33,9 +41,15 @@ public class ResourceService {
 
     @Value("${file.user-file-directory}")
     private String userFilesDirectory;
+    @Value("${statistics.merge.parallelism:4}")
+    private int mergeParallelism;
     private final ResourceRepository resourceRepository;
     private final UserRepository userRepository;
     private final LogsStatisticsGatherer logsStatisticsGatherer;
+    private final LiveStatisticsService liveStatisticsService;
+    private final RollupStore rollupStore;
+    private final GatheringMetrics gatheringMetrics;
+    private final GatheringScheduler gatheringScheduler;
 
     public ResourceDto getResource(int id) {
         var foundResource = resourceRepository.findById(id).orElseThrow(NO_RESOURCE_WITH_SUCH_ID);
@@ -43,45 +57,200 @@ public class ResourceService {
         if (foundResource.user() != null) {
             userLogin = foundResource.user().login();
         }
-        return new ResourceDto(id, userLogin, foundResource.type(), foundResource.path());
+        return new ResourceDto(
+                id,
+                userLogin,
+                foundResource.type(),
+                foundResource.path(),
+                foundResource.size(),
+                foundResource.linesAmount(),
+                foundResource.sha256()
+        );
     }
 
     public Statistics getSavedStatistics(int resourceId) {
         return resourceRepository.findById(resourceId).orElseThrow(NO_RESOURCE_WITH_SUCH_ID).statistics();
     }
 
-    public Statistics getUpdatedStatistics(int resourceId) {
+    public Statistics getUpdatedStatistics(int resourceId, TimeBucket timeBucket) {
+        return getUpdatedStatistics(resourceId, timeBucket, new GatheringProgress());
+    }
+
+    public Statistics getUpdatedStatistics(int resourceId, TimeBucket timeBucket, GatheringProgress progress) {
         var resource = resourceRepository.findById(resourceId).orElseThrow(NO_RESOURCE_WITH_SUCH_ID);
-        var statistics = gatherStatistics(resource);
+        var filters = effectiveFilters(resource.filters(), timeBucket);
+        var statistics = switch (resource.type()) {
+            case FILE -> getUpdatedStatisticsFromFile(resource, filters, progress);
+            case URL -> getUpdatedStatisticsFromUri(resource, filters, progress);
+            case STREAM -> liveStatisticsService.getStatistics(resourceId, timeBucket);
+        };
         resource.statistics(statistics);
-        resourceRepository.save(resource);
+        gatheringMetrics.timeSave(resource.type(), () -> resourceRepository.save(resource));
         return statistics;
     }
 
-    public Statistics getStatisticsOnce(int resourceId) {
+    public Statistics getStatisticsOnce(int resourceId, TimeBucket timeBucket) {
+        return getStatisticsOnce(resourceId, timeBucket, new GatheringProgress());
+    }
+
+    public Statistics getStatisticsOnce(int resourceId, TimeBucket timeBucket, GatheringProgress progress) {
         var resource = resourceRepository.findById(resourceId).orElseThrow(NO_RESOURCE_WITH_SUCH_ID);
-        var statistics = gatherStatistics(resource);
+        var statistics = gatherStatistics(resource, timeBucket, progress);
         resourceRepository.delete(resource);
+        liveStatisticsService.remove(resourceId);
         return statistics;
     }
 
-    private Statistics gatherStatistics(Resource resource) {
+    // resources are given either by ids or by the login of their owner, nothing is saved or deleted
+    public Statistics getMergedStatistics(List<Integer> resourceIds, String userLogin, TimeBucket timeBucket) {
+        List<Resource> resources;
+        if (userLogin != null) {
+            if (resourceIds != null) {
+                throw new IllegalArgumentException("Either resource ids or user login must be passed, not both");
+            }
+            resources = userRepository.findById(userLogin).orElseThrow(USER_NOT_FOUND).resources();
+        } else if (resourceIds != null) {
+            resources = new ArrayList<>();
+            for (int id : new LinkedHashSet<>(resourceIds)) {
+                resources.add(resourceRepository.findById(id).orElseThrow(NO_RESOURCE_WITH_SUCH_ID));
+            }
+        } else {
+            throw new IllegalArgumentException("Resource ids or user login must be passed");
+        }
+
+        List<LogSource> sources = new ArrayList<>(resources.size());
+        for (Resource resource : resources) {
+            var filters = effectiveFilters(resource.filters(), timeBucket);
+            sources.add(switch (resource.type()) {
+                case FILE -> LogSource.ofFile(Path.of(resource.path()), filters);
+                case URL -> LogSource.ofUri(URI.create(resource.path()), filters);
+                case STREAM -> throw new IllegalArgumentException("Stream resources can't be merged");
+            });
+        }
+        return gatheringScheduler.run(
+                commonOwner(resources),
+                sources.size(),
+                () -> logsStatisticsGatherer.gatherMergedStatistics(sources, mergeParallelism)
+        );
+    }
+
+    // rollups of files and urls are filled by their last gathering, the window ends with its newest minute
+    public RollupDto getRollup(int resourceId, Duration window) {
+        if (window == null || window.toSecondsPart() != 0 || window.toNanosPart() != 0) {
+            throw new IllegalArgumentException("Window must be a whole amount of minutes");
+        }
+        int minutes = (int) Math.min(window.toMinutes(), Integer.MAX_VALUE);
+        var resource = resourceRepository.findById(resourceId).orElseThrow(NO_RESOURCE_WITH_SUCH_ID);
+        var rollup = switch (resource.type()) {
+            case FILE -> rollupStore.window(RollupStore.keyOf(Path.of(resource.path())), minutes);
+            case URL -> rollupStore.window(RollupStore.keyOf(URI.create(resource.path())), minutes);
+            case STREAM -> liveStatisticsService.getRollup(resourceId, minutes);
+        };
+        if (rollup == null) {
+            throw new NoSuchElementException(
+                    "No rollup for the resource, its filters have to request one and be gathered first");
+        }
+        return rollup;
+    }
+
+    private Statistics gatherStatistics(Resource resource, TimeBucket timeBucket, GatheringProgress progress) {
+        var resourceFilters = effectiveFilters(resource.filters(), timeBucket);
         return switch (resource.type()) {
-            case FILE -> getStatisticsFromFile(resource);
-            case URL -> getStatisticsFromUri(resource);
+            case FILE -> getStatisticsFromFile(resource, resourceFilters, progress);
+            case URL -> getStatisticsFromUri(resource, resourceFilters, progress);
+            case STREAM -> liveStatisticsService.getStatistics(resource.id(), timeBucket);
         };
     }
 
-    private Statistics getStatisticsFromFile(Resource resource) {
+    private Statistics getStatisticsFromFile(
+            Resource resource,
+            ResourceFilters resourceFilters,
+            GatheringProgress progress
+    ) {
+        var file = Path.of(resource.path());
+        return gatheringScheduler.run(
+                ownerOf(resource),
+                1,
+                () -> logsStatisticsGatherer.gatherStatisticsFromFile(file, resourceFilters, progress)
+        );
+    }
+
+    // appended files are gathered incrementally from the saved checkpoint
+    private Statistics getUpdatedStatisticsFromFile(
+            Resource resource,
+            ResourceFilters resourceFilters,
+            GatheringProgress progress
+    ) {
         var file = Path.of(resource.path());
-        var resourceFilters = resource.filters();
-        return logsStatisticsGatherer.gatherStatisticsFromFile(file, resourceFilters);
+        var checkpoint = resource.checkpoint() != null ? resource.checkpoint() : new GatheringCheckpoint();
+        var statistics = gatheringScheduler.run(
+                ownerOf(resource),
+                1,
+                () -> logsStatisticsGatherer.gatherStatisticsFromFile(file, resourceFilters, checkpoint, progress)
+        );
+        resource.checkpoint(checkpoint);
+        return statistics;
+    }
+
+    // only the appended tail of a url is fetched if the server supports range requests
+    private Statistics getUpdatedStatisticsFromUri(
+            Resource resource,
+            ResourceFilters resourceFilters,
+            GatheringProgress progress
+    ) {
+        var uri = URI.create(resource.path());
+        var checkpoint = resource.checkpoint() != null ? resource.checkpoint() : new GatheringCheckpoint();
+        var statistics = gatheringScheduler.run(
+                ownerOf(resource),
+                1,
+                () -> logsStatisticsGatherer.gatherStatisticsFromUri(uri, resourceFilters, checkpoint, progress)
+        );
+        resource.checkpoint(checkpoint);
+        return statistics;
     }
 
-    private Statistics getStatisticsFromUri(Resource resource) {
+    private Statistics getStatisticsFromUri(
+            Resource resource,
+            ResourceFilters resourceFilters,
+            GatheringProgress progress
+    ) {
         var uri = URI.create(resource.path());
-        var resourceFilters = resource.filters();
-        return logsStatisticsGatherer.gatherStatisticsFromUri(uri, resourceFilters);
+        return gatheringScheduler.run(
+                ownerOf(resource),
+                1,
+                () -> logsStatisticsGatherer.gatherStatisticsFromUri(uri, resourceFilters, progress)
+        );
+    }
+
+    private static String ownerOf(Resource resource) {
+        return resource.user() != null ? resource.user().login() : null;
+    }
+
+    // resources of several owners are limited only by the global budget
+    private static String commonOwner(List<Resource> resources) {
+        Set<String> owners = new HashSet<>();
+        for (Resource resource : resources) {
+            owners.add(ownerOf(resource));
+        }
+        return owners.size() == 1 ? owners.iterator().next() : null;
+    }
+
+    // request time bucket takes precedence over the saved one, saved filters are left untouched
+    private ResourceFilters effectiveFilters(ResourceFilters filters, TimeBucket timeBucket) {
+        if (timeBucket == null) {
+            return filters;
+        }
+
+        var effectiveFilters = new ResourceFilters();
+        if (filters != null) {
+            effectiveFilters.fromDate(filters.fromDate())
+                    .toDate(filters.toDate())
+                    .filterMap(filters.filterMap())
+                    .topK(filters.topK())
+                    .logFormat(filters.logFormat())
+                    .rollup(filters.rollup());
+        }
+        return effectiveFilters.timeBucket(timeBucket);
     }
 
     @SneakyThrows
@@ -92,12 +261,18 @@ public class ResourceService {
         }
 
         String path = getFreeFileName();
-        File actualFile = new File(path);
-        @Cleanup FileOutputStream fos = new FileOutputStream(actualFile);
-        fos.write(file.getBytes());
+        WrittenContent content;
+        try (InputStream inputStream = file.getInputStream()) {
+            content = UploadedContentWriter.write(inputStream, Path.of(path));
+        }
 
         var resource = new Resource();
-        resource.type(ResourceType.FILE).path(path).user(persistentUser);
+        resource.type(ResourceType.FILE)
+                .path(path)
+                .user(persistentUser)
+                .size(content.size())
+                .linesAmount(content.lines())
+                .sha256(content.sha256());
         resourceRepository.save(resource);
         return resource.id();
     }
@@ -132,18 +307,38 @@ public class ResourceService {
         return resource.id();
     }
 
+    public int uploadStream(UserDto user) {
+        User persistentUser = null;
+        if (user != null && user.login() != null && !user.login().isEmpty()) {
+            persistentUser = userRepository.findById(user.login()).orElseThrow(USER_NOT_FOUND);
+        }
+
+        var resource = new Resource();
+        resource.type(ResourceType.STREAM).user(persistentUser);
+        resourceRepository.save(resource);
+        return resource.id();
+    }
+
     public int uploadFilters(int id, ResourceFilters filters) {
         validateFilters(filters);
 
         var resource = resourceRepository.findById(id).orElseThrow(NO_RESOURCE_WITH_SUCH_ID);
+        if (resource.type() == ResourceType.STREAM && filters.timeBucket() == TimeBucket.SECOND) {
+            throw new IllegalArgumentException("Requests of stream resources are counted per minute at least");
+        }
 
         var resourceFilters = new ResourceFilters();
         resourceFilters.fromDate(filters.fromDate())
                 .toDate(filters.toDate())
-                .filterMap(filters.filterMap());
+                .filterMap(filters.filterMap())
+                .timeBucket(filters.timeBucket())
+                .topK(filters.topK())
+                .logFormat(filters.logFormat())
+                .rollup(filters.rollup());
 
-        resource.filters(resourceFilters);
+        resource.filters(resourceFilters).checkpoint(null); // the saved state was gathered with the old filters
         resourceRepository.save(resource);
+        liveStatisticsService.remove(id); // pushed lines can't be filtered again
 
         return id;
     }
@@ -160,6 +355,15 @@ public class ResourceService {
         if (from != null && to != null && from.isAfter(to)) {
             throw new IllegalArgumentException("From time must not be after to time");
         }
+        if (filters.topK() != null && (filters.topK() <= 0 || filters.topK() > ResourceFilters.MAX_TOP_K)) {
+            throw new IllegalArgumentException("Top k must be from 1 to " + ResourceFilters.MAX_TOP_K);
+        }
+        if (filters.logFormat() != null) {
+            if (filters.logFormat().length() > ResourceFilters.LOG_FORMAT_LENGTH) {
+                throw new IllegalArgumentException("Log format is too long");
+            }
+            LogFormatParser.compile(filters.logFormat()); // throws if the format can't be parsed
+        }
         if (filterMap != null) {
             filterMap.forEach((field, value) -> {
                 if (field == null && value != null) {
@@ -177,7 +381,11 @@ public class ResourceService {
         var resource = resourceRepository.findById(id).orElseThrow(NO_RESOURCE_WITH_SUCH_ID);
         if (resource.type() == ResourceType.FILE) {
             Files.delete(Path.of(resource.path()));
+            Files.deleteIfExists(TimeIndex.sidecarOf(Path.of(resource.path())));
+            Files.deleteIfExists(ColumnarLog.sidecarOf(Path.of(resource.path())));
+            rollupStore.remove(RollupStore.keyOf(Path.of(resource.path())));
         }
         resourceRepository.delete(resource);
+        liveStatisticsService.remove(id);
     }
 }
@@ -0,0 +1,175 @@
+package ru.nextupvamp.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.nextupvamp.exception.JobNotFinishedException;
+import ru.nextupvamp.exception.JobUnsuccessfulException;
+import ru.nextupvamp.model.data.JobStatus;
+import ru.nextupvamp.model.data.StatisticsJobDto;
+import ru.nextupvamp.model.entities.Statistics;
+import ru.nextupvamp.model.entities.TimeBucket;
+import ru.nextupvamp.model.handlers.GatheringProgress;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// runs statistics gathering off the request threads, jobs are kept in memory for the retention period
+@Service
+@RequiredArgsConstructor
+public class StatisticsJobService {
+    private static final Supplier<NoSuchElementException> NO_JOB_WITH_SUCH_ID =
+            () -> new NoSuchElementException("No job with such id");
+
+    private final ResourceService resourceService;
+    private final Map<Integer, StatisticsJob> jobs = new ConcurrentHashMap<>();
+    private final AtomicInteger jobIds = new AtomicInteger();
+    private volatile ThreadPoolExecutor executor;
+
+    @Value("${statistics.jobs.threads:2}")
+    private int threads;
+
+    @Value("${statistics.jobs.queue-capacity:100}")
+    private int queueCapacity;
+
+    @Value("${statistics.jobs.retention:PT1H}")
+    private Duration retention;
+
+    // once = true gathers like the anonymous endpoint and deletes the resource afterwards
+    public int submit(int resourceId, boolean once, TimeBucket timeBucket) {
+        resourceService.getResource(resourceId); // fails fast on unknown resource
+        evictExpiredJobs();
+
+        var job = new StatisticsJob(jobIds.incrementAndGet(), resourceId);
+        jobs.put(job.id, job);
+        try {
+            job.future = executor().submit(() -> run(job, once, timeBucket));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.id);
+            throw e;
+        }
+        return job.id;
+    }
+
+    public StatisticsJobDto getStatus(int jobId) {
+        return toDto(getJob(jobId));
+    }
+
+    public Statistics getResult(int jobId) {
+        var job = getJob(jobId);
+        return switch (job.status) {
+            case DONE -> job.result;
+            case FAILED -> throw new JobUnsuccessfulException(JobStatus.FAILED, "Job has failed", job.error);
+            case CANCELLED -> throw new JobUnsuccessfulException(JobStatus.CANCELLED, "Job has been cancelled", null);
+            default -> throw new JobNotFinishedException("Job is not finished yet");
+        };
+    }
+
+    // a queued job is dropped at once, a running one stops at the next progress report of its gathering
+    // and is cancelled only then, so it may still finish with its result if it was about to.
+    // The gathering is not interrupted, it keeps its scheduler budget until it has actually stopped
+    public StatisticsJobDto cancel(int jobId) {
+        var job = getJob(jobId);
+        if (!job.status.finished()) {
+            job.progress.cancel();
+            if (job.future instanceof Runnable queued && executor().remove(queued)) {
+                job.finish(JobStatus.CANCELLED);
+            }
+        }
+        return toDto(job);
+    }
+
+    private void run(StatisticsJob job, boolean once, TimeBucket timeBucket) {
+        if (job.progress.cancelled()) {
+            job.finish(JobStatus.CANCELLED);
+            return;
+        }
+        job.status = JobStatus.RUNNING;
+        try {
+            job.result = once
+                    ? resourceService.getStatisticsOnce(job.resourceId, timeBucket, job.progress)
+                    : resourceService.getUpdatedStatistics(job.resourceId, timeBucket, job.progress);
+            job.finish(JobStatus.DONE);
+        } catch (CancellationException e) {
+            job.finish(JobStatus.CANCELLED);
+        } catch (Exception e) {
+            job.error = e.getMessage();
+            job.finish(job.progress.cancelled() ? JobStatus.CANCELLED : JobStatus.FAILED);
+        }
+    }
+
+    private StatisticsJob getJob(int jobId) {
+        return Optional.ofNullable(jobs.get(jobId)).orElseThrow(NO_JOB_WITH_SUCH_ID);
+    }
+
+    private void evictExpiredJobs() {
+        var expiredBefore = Instant.now().minus(retention);
+        jobs.values().removeIf(job -> job.finishedAt != null && job.finishedAt.isBefore(expiredBefore));
+    }
+
+    // the gathering itself runs on the scheduler pool, the virtual threads mostly wait for it
+    private ThreadPoolExecutor executor() {
+        if (executor == null) {
+            synchronized (this) {
+                if (executor == null) {
+                    executor = new ThreadPoolExecutor(
+                            threads, threads, 0, TimeUnit.MILLISECONDS,
+                            new ArrayBlockingQueue<>(queueCapacity),
+                            Thread.ofVirtual().name("statistics-job-", 0).factory()
+                    );
+                }
+            }
+        }
+        return executor;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        jobs.values().forEach(job -> job.progress.cancel());
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private static StatisticsJobDto toDto(StatisticsJob job) {
+        return new StatisticsJobDto(
+                job.id,
+                job.resourceId,
+                job.status,
+                job.progress.bytesProcessed(),
+                job.progress.linesProcessed(),
+                job.progress.totalBytes(),
+                job.error
+        );
+    }
+
+    private static class StatisticsJob {
+        private final int id;
+        private final int resourceId;
+        private final GatheringProgress progress = new GatheringProgress();
+        private volatile JobStatus status = JobStatus.QUEUED;
+        private volatile Statistics result;
+        private volatile String error;
+        private volatile Instant finishedAt;
+        private volatile Future<?> future;
+
+        StatisticsJob(int id, int resourceId) {
+            this.id = id;
+            this.resourceId = resourceId;
+        }
+
+        synchronized void finish(JobStatus finalStatus) {
+            if (!status.finished()) {
+                status = finalStatus;
+                finishedAt = Instant.now();
+            }
+        }
+    }
+}
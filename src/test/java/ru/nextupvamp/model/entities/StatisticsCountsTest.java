@@ -0,0 +1,66 @@
+package ru.nextupvamp.model.entities;
+
+import org.junit.jupiter.api.Test;
+import ru.nextupvamp.model.handlers.NginxLogLineParser;
+import ru.nextupvamp.model.handlers.NginxLogsStatisticsGatherer;
+
+import java.nio.file.Path;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StatisticsCountsTest {
+    private static final StatisticsCountsConverter CONVERTER = new StatisticsCountsConverter();
+
+    @Test
+    public void testGatheredCountsRoundTrip() {
+        ResourceFilters filters = new ResourceFilters();
+        filters.timeBucket(TimeBucket.MINUTE);
+        Statistics statistics = new NginxLogsStatisticsGatherer(new NginxLogLineParser())
+                .gatherStatisticsFromFile(Path.of("src/test/resources/test_logs.txt"), filters);
+
+        var counts = new StatisticsCounts(new StatisticsCounts.Maps(
+                statistics.remoteAddresses(),
+                statistics.remoteUsers(),
+                statistics.requestsOnDate(),
+                statistics.requestMethods(),
+                statistics.requestResources(),
+                statistics.statuses()
+        ));
+        var decoded = CONVERTER.convertToEntityAttribute(CONVERTER.convertToDatabaseColumn(counts));
+
+        assertEquals(counts.maps(), decoded.maps());
+        assertEquals(counts, decoded);
+    }
+
+    @Test
+    public void testNullAndZonedKeys() {
+        ZonedDateTime date = ZonedDateTime.of(2015, 5, 17, 8, 5, 0, 0, ZoneId.of("Europe/Moscow"));
+        var counts = new StatisticsCounts(new StatisticsCounts.Maps(
+                Map.of("a".repeat(70_000), 1), null, Map.of(date, 2), Map.of(), null, Map.of((short) 404, 3)));
+
+        var decoded = CONVERTER.convertToEntityAttribute(CONVERTER.convertToDatabaseColumn(counts)).maps();
+
+        assertEquals(1, decoded.remoteAddresses().get("a".repeat(70_000)));
+        assertNull(decoded.remoteUsers());
+        assertEquals(Map.of(date, 2), decoded.requestsOnDate());
+        assertTrue(decoded.requestMethods().isEmpty());
+        assertNull(decoded.requestResources());
+        assertEquals(Map.of((short) 404, 3), decoded.statuses());
+    }
+
+    @Test
+    public void testSettersKeepOtherMaps() {
+        Statistics statistics = new Statistics()
+                .remoteAddresses(Map.of("127.0.0.1", 1))
+                .statuses(Map.of((short) 200, 1));
+
+        assertEquals(Map.of("127.0.0.1", 1), statistics.remoteAddresses());
+        assertEquals(Map.of((short) 200, 1), statistics.statuses());
+        assertNull(statistics.remoteUsers());
+        assertEquals(statistics, new Statistics().statuses(Map.of((short) 200, 1)).remoteAddresses(Map.of("127.0.0.1", 1)));
+        assertEquals(CONVERTER.convertToEntityAttribute(null), StatisticsCounts.EMPTY);
+    }
+}
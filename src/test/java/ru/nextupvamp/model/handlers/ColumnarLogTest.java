@@ -0,0 +1,78 @@
+package ru.nextupvamp.model.handlers;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.nextupvamp.model.data.LogData;
+import ru.nextupvamp.model.entities.ResourceFilters;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ColumnarLogTest {
+    private static final LogLineParser PARSER = new NginxLogLineParser();
+
+    @Test
+    @SneakyThrows
+    public void testColumnsKeepParsedRows(@TempDir Path directory) {
+        Path file = directory.resolve("logs.txt");
+        List<String> lines = new ArrayList<>(Files.readAllLines(Paths.get("src/test/resources/test_logs.txt")));
+        lines.add(3, "broken line");
+        Files.write(file, lines);
+        ResourceFilters filters = new ResourceFilters()
+                .fromDate(ZonedDateTime.parse("2015-05-17T08:05:30Z"))
+                .filterMap(Map.of("status", "30.*", "userAgent", ".*0\\.8\\..*"));
+
+        try (ColumnarLog columnarLog = ColumnarLog.loadOrBuild(file, PARSER)) {
+            assertEquals(1, columnarLog.ignoredRows());
+            assertEquals(parsed(lines, RowFilter.ACCEPT_ALL), rows(columnarLog, RowFilter.ACCEPT_ALL, null));
+            Map<LogData, Long> filtered = parsed(lines, RowFilter.of(filters));
+            assertTrue(!filtered.isEmpty() && filtered.size() < lines.size() - 1);
+            assertEquals(filtered, rows(columnarLog, RowFilter.of(filters), filters.fromDate()));
+        }
+        assertTrue(Files.exists(ColumnarLog.sidecarOf(file)));
+    }
+
+    @Test
+    @SneakyThrows
+    public void testColumnsAreExtendedAfterAppend(@TempDir Path directory) {
+        Path file = directory.resolve("logs.txt");
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 700; i++) { // several segments of the minimal size
+            lines.addAll(Files.readAllLines(Paths.get("src/test/resources/test_logs.txt")));
+        }
+        Files.write(file, lines.subList(0, lines.size() - 10));
+        ColumnarLog.loadOrBuild(file, PARSER).close();
+
+        Files.write(file, lines.subList(lines.size() - 10, lines.size()), StandardOpenOption.APPEND);
+        try (ColumnarLog columnarLog = ColumnarLog.loadOrBuild(file, PARSER)) {
+            assertTrue(columnarLog.segments().size() > 1);
+            assertEquals(Files.size(file), columnarLog.sourceSize());
+            assertEquals(Files.size(file), columnarLog.segments().getLast().sourceEnd());
+            assertEquals(parsed(lines, RowFilter.ACCEPT_ALL), rows(columnarLog, RowFilter.ACCEPT_ALL, null));
+        }
+    }
+
+    private static Map<LogData, Long> parsed(List<String> lines, RowFilter filter) {
+        return lines.stream()
+                .map(line -> PARSER.parseLine(line, filter))
+                .filter(it -> it != LogData.IGNORED && it != LogData.FILTERED)
+                .collect(Collectors.groupingBy(Function.identity(), Collectors.counting()));
+    }
+
+    private static Map<LogData, Long> rows(ColumnarLog columnarLog, RowFilter filter, ZonedDateTime fromDate) {
+        return columnarLog.rows(filter, fromDate, null, new GatheringProgress())
+                .collect(Collectors.groupingBy(Function.identity(), Collectors.counting()));
+    }
+}
@@ -0,0 +1,69 @@
+package ru.nextupvamp.model.handlers;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class FilterCompilerTest {
+    private static final List<String> INPUTS = List.of(
+            "", "GET", "POST", "get", "GETS", "/downloads/product_1", "/downloads/product_12", "/downloads/",
+            "Debian APT-HTTP/1.3 (0.8.16~exp12ubuntu10.16)", "Debian APT-HTTP/1.3 (0.9.7.9)", "80.91.33.133",
+            "217.168.17.5", "0", "340", "1768", "12345678", "a.b", "a\rb", "a b", "x-y", "[x]", "é"
+    );
+
+    @ParameterizedTest
+    @CsvSource(delimiter = ';', value = {
+            "GET;Literal",
+            "GET|POST|HEAD;LiteralSet",
+            "(GET|POST);LiteralSet",
+            "(?:GET|POST);LiteralSet",
+            "/downloads/.*;Prefix",
+            ".*\\(0\\.9\\.7\\.9\\);Suffix",
+            ".*APT.*;Contains",
+            "80\\.91\\..*;Prefix",
+            "\\d{1,3};RepeatedClass",
+            "[0-9]+;RepeatedClass",
+            "[^a-z]*;RepeatedClass",
+            "\\d\\d\\d\\d.*;ClassSequence",
+            "2[0-9]{2}\\.\\d+\\.\\d+\\.\\d;RegexMatcher",
+            "[a-z]\\.[b];ClassSequence",
+            "x[-]y;ClassSequence",
+            "a.b;ClassSequence",
+            "(?i)get;RegexMatcher",
+            "GET|P.*;RegexMatcher",
+            "^GET$;RegexMatcher",
+            ".*;RepeatedClass",
+            "\\[x];RegexMatcher",
+            "[]x]*;RegexMatcher",
+            ".*product_\\d;RegexMatcher",
+            "a+?;RegexMatcher"
+    })
+    public void testCompiledMatchersAgreeWithRegex(String regex, String expectedMatcher) {
+        FieldMatcher matcher = FilterCompiler.compile(LogField.REQUEST_RESOURCE, regex);
+        Pattern pattern = Pattern.compile(regex);
+
+        assertEquals(expectedMatcher, matcher.getClass().getSimpleName());
+        for (String input : INPUTS) {
+            assertEquals(pattern.matcher(input).matches(), matcher.matches(input), regex + " on " + input);
+            String line = "<" + input + ">";
+            assertEquals(pattern.matcher(input).matches(), matcher.matches(line, 1, line.length() - 1));
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"5..", "30.*", "4\\d\\d", "[45]0[0-9]", "200|304", "\\d{2}", ".*"})
+    public void testStatusTable(String regex) {
+        FieldMatcher matcher = FilterCompiler.compile(LogField.STATUS, regex);
+        Pattern pattern = Pattern.compile(regex);
+
+        for (int status = 0; status < 1000; status++) {
+            assertEquals(pattern.matcher(String.valueOf(status)).matches(), matcher.matches(String.valueOf(status)));
+        }
+        assertEquals(pattern.matcher("99").matches(), matcher.matches("099"));
+    }
+}
@@ -0,0 +1,59 @@
+package ru.nextupvamp.model.handlers;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import ru.nextupvamp.model.entities.ResourceFilters;
+import ru.nextupvamp.model.entities.Statistics;
+
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static ru.nextupvamp.model.handlers.NginxLogsStatisticsGathererTest.DATA_SOURCE;
+import static ru.nextupvamp.model.handlers.NginxLogsStatisticsGathererTest.PARSER;
+
+public class GatheringMetricsTest {
+    @Test
+    @SneakyThrows
+    public void testFileGatheringMeters() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        var gatherer = new NginxLogsStatisticsGatherer(
+                PARSER,
+                StatisticsResultCache.disabled(),
+                new RollupStore(RollupStore.DEFAULT_MAX_SOURCES),
+                new GatheringMetrics(registry)
+        );
+        Statistics statistics = gatherer.gatherStatisticsFromFile(
+                DATA_SOURCE, new ResourceFilters().filterMap(Map.of("method", "GET")));
+        List<String> lines = Files.readAllLines(DATA_SOURCE);
+
+        assertEquals(lines.size(), registry.get("logs.gathering.lines").tag("type", "file").counter().count());
+        assertEquals(Files.size(DATA_SOURCE), registry.get("logs.gathering.bytes").counter().count());
+        assertEquals(statistics.ignoredRows(), registry.get("logs.gathering.ignored.lines").counter().count());
+        assertEquals(1, registry.get("logs.gathering.stage").tags("stage", "scan", "type", "file").timer().count());
+        assertEquals(1, registry.get("logs.gathering.stage").tags("stage", "finish", "type", "file").timer().count());
+        assertEquals(1, registry.get("logs.gathering.throughput").summary().count());
+        assertEquals(statistics.remoteAddresses().size(), registry.get("logs.statistics.cardinality")
+                .tags("type", "file", "map", "remote_addresses").summary().totalAmount());
+    }
+
+    @Test
+    public void testStreamIngestMeters() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        var gatherer = new NginxLogsStatisticsGatherer(
+                PARSER,
+                StatisticsResultCache.disabled(),
+                new RollupStore(RollupStore.DEFAULT_MAX_SOURCES),
+                new GatheringMetrics(registry)
+        );
+        LiveStatistics liveStatistics = gatherer.liveStatistics(new ResourceFilters(), null);
+        liveStatistics.ingest(List.of(
+                "93.180.71.3 - - [17/May/2015:08:05:32 +0000] \"GET /downloads/product_1 HTTP/1.1\" 304 0 \"-\" \"-\"",
+                "not a log line").stream());
+
+        assertEquals(2, registry.get("logs.gathering.lines").tag("type", "stream").counter().count());
+        assertEquals(1, registry.get("logs.gathering.ignored.lines").tag("type", "stream").counter().count());
+    }
+}
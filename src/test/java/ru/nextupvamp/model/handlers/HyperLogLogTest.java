@@ -0,0 +1,43 @@
+package ru.nextupvamp.model.handlers;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HyperLogLogTest {
+    @ParameterizedTest
+    @ValueSource(ints = {0, 10, 1_000, 100_000, 1_000_000})
+    public void testEstimate(int distinct) {
+        HyperLogLog first = new HyperLogLog();
+        HyperLogLog second = new HyperLogLog();
+        for (int i = 0; i < distinct; i++) {
+            String value = "192.168." + (i >>> 8) + "." + (i & 0xff);
+            first.add(value);
+            second.add(value); // duplicates must not count
+            if (i % 3 == 0) {
+                second.add(value + "/other");
+            }
+        }
+        first.merge(second);
+
+        double expected = distinct + Math.ceil(distinct / 3.0);
+        assertEquals(expected, first.estimate(), Math.max(1, expected * 0.05));
+    }
+
+    @Test
+    public void testSerialization() {
+        HyperLogLog sketch = new HyperLogLog();
+        for (int i = 0; i < 5_000; i++) {
+            sketch.add("/downloads/product_" + i);
+        }
+
+        byte[] bytes = sketch.toBytes();
+
+        assertTrue(bytes.length < 4096);
+        assertEquals(sketch.estimate(), HyperLogLog.fromBytes(bytes).estimate());
+        assertTrue(new HyperLogLog().toBytes().length < 64);
+    }
+}
@@ -0,0 +1,75 @@
+package ru.nextupvamp.model.handlers;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import ru.nextupvamp.model.entities.GatheringCheckpoint;
+import ru.nextupvamp.model.entities.ResourceFilters;
+import ru.nextupvamp.model.entities.Statistics;
+import ru.nextupvamp.model.entities.TimeBucket;
+
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static ru.nextupvamp.model.handlers.NginxLogsStatisticsGathererTest.DATA_SOURCE;
+import static ru.nextupvamp.model.handlers.NginxLogsStatisticsGathererTest.GATHERER;
+
+public class LiveStatisticsTest {
+    @Test
+    @SneakyThrows
+    public void testConcurrentIngest() {
+        ResourceFilters filters = new ResourceFilters().timeBucket(TimeBucket.MINUTE).topK(100);
+        List<String> lines = Files.readAllLines(DATA_SOURCE);
+        int pushes = 1000; // several batches per push
+        LiveStatistics liveStatistics = GATHERER.liveStatistics(filters, null);
+
+        List<Future<Long>> ingested = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(4)) {
+            for (int i = 0; i < pushes; i++) {
+                ingested.add(executor.submit(() -> liveStatistics.ingest(lines.stream())));
+            }
+        }
+
+        Statistics statistics = liveStatistics.statistics();
+        Statistics once = GATHERER.gatherStatisticsFromFile(DATA_SOURCE, filters);
+        for (Future<Long> future : ingested) {
+            assertEquals(lines.size(), future.get());
+        }
+        assertEquals((long) pushes * lines.size(), liveStatistics.linesIngested());
+        assertEquals(pushes * once.requestsAmount(), statistics.requestsAmount());
+        assertEquals(pushes * once.ignoredRows(), statistics.ignoredRows());
+        once.statuses().forEach((status, amount) -> assertEquals(pushes * amount, statistics.statuses().get(status)));
+        once.requestsOnDate().forEach((date, amount) ->
+                assertEquals(pushes * amount, statistics.requestsOnDate().get(date)));
+        assertEquals(once.p95BytesSent(), statistics.p95BytesSent());
+    }
+
+    @Test
+    public void testRestoreFromCheckpoint() {
+        ResourceFilters filters = new ResourceFilters().filterMap(Map.of("method", "GET")).topK(100);
+        List<String> lines = List.of(
+                "93.180.71.3 - - [17/May/2015:08:05:32 +0000] \"GET /downloads/product_1 HTTP/1.1\" 304 0 \"-\" \"Debian APT-HTTP/1.3 (0.8.16~exp12ubuntu10.21)\"",
+                "93.180.71.3 - - [17/May/2015:08:05:23 +0000] \"POST /downloads/product_1 HTTP/1.1\" 304 0 \"-\" \"Debian APT-HTTP/1.3 (0.8.16~exp12ubuntu10.21)\"",
+                "not a log line");
+        LiveStatistics liveStatistics = GATHERER.liveStatistics(filters, null);
+        liveStatistics.ingest(lines.stream());
+
+        GatheringCheckpoint checkpoint = new GatheringCheckpoint();
+        liveStatistics.saveCheckpoint(checkpoint);
+        LiveStatistics restored = GATHERER.liveStatistics(filters, checkpoint);
+        restored.ingest(lines.stream());
+        LiveStatistics otherFilters = GATHERER.liveStatistics(new ResourceFilters().topK(100), checkpoint);
+
+        assertEquals(1, liveStatistics.statistics().requestsAmount());
+        assertEquals(1, liveStatistics.statistics().ignoredRows());
+        assertEquals(2, restored.statistics().requestsAmount());
+        assertEquals(2, restored.statistics().ignoredRows());
+        assertEquals(6, restored.linesIngested());
+        assertEquals(0, otherFilters.statistics().requestsAmount());
+    }
+}
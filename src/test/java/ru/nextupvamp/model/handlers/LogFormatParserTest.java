@@ -0,0 +1,144 @@
+package ru.nextupvamp.model.handlers;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import ru.nextupvamp.model.data.LogData;
+import ru.nextupvamp.model.entities.ResourceFilters;
+import ru.nextupvamp.model.entities.Statistics;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static ru.nextupvamp.model.handlers.NginxLogsStatisticsGathererTest.DATA_SOURCE;
+import static ru.nextupvamp.model.handlers.NginxLogsStatisticsGathererTest.GATHERER;
+import static ru.nextupvamp.model.handlers.NginxLogsStatisticsGathererTest.PARSER;
+
+public class LogFormatParserTest {
+    private static final String COMBINED = "$remote_addr - $remote_user [$time_local] "
+            + "\"$request\" $status $body_bytes_sent \"$http_referer\" \"$http_user_agent\"";
+    private static final String TIMED = "$remote_addr - $remote_user [$time_local] \"$request\" $status "
+            + "$body_bytes_sent \"$http_referer\" \"$http_user_agent\" \"$http_x_forwarded_for\" "
+            + "rt=$request_time urt=$upstream_response_time";
+
+    @Test
+    @SneakyThrows
+    public void testCombinedFormatMatchesDefaultParser() {
+        LogFormatParser parser = LogFormatParser.compile(COMBINED);
+
+        for (String line : Files.readAllLines(DATA_SOURCE)) {
+            assertEquals(PARSER.parseLine(line), parser.parseLine(line), line);
+        }
+    }
+
+    @Test
+    public void testCustomFormat() {
+        LogFormatParser parser = LogFormatParser.compile(TIMED);
+
+        LogData logData = parser.parseLine("10.0.0.1 - alice [17/May/2015:08:05:32 +0000] "
+                + "\"POST /api/orders HTTP/2.0\" 201 512 \"-\" \"curl/8.0\" \"203.0.113.7\" rt=1.25 urt=1.200");
+
+        assertEquals("10.0.0.1", logData.remoteAddress());
+        assertEquals("alice", logData.remoteUser());
+        assertEquals(ZonedDateTime.parse("2015-05-17T08:05:32Z"), logData.timeLocal());
+        assertEquals("POST", logData.requestMethod());
+        assertEquals("/api/orders", logData.requestResource());
+        assertEquals("HTTP/2.0", logData.requestHttpVersion());
+        assertEquals(201, logData.status());
+        assertEquals(512, logData.bytesSent());
+        assertEquals(1250, logData.requestTime());
+    }
+
+    @Test
+    public void testSplitRequestAndIsoTime() {
+        LogFormatParser parser = LogFormatParser.compile(
+                "${time_iso8601}|$request_method|$uri|$server_protocol|$status|$bytes_sent|$request_time");
+
+        LogData logData = parser.parseLine("2015-05-17T08:05:32+03:00|GET|/index.html|HTTP/1.1|200|1024|-");
+
+        assertEquals(ZonedDateTime.parse("2015-05-17T08:05:32+03:00"), logData.timeLocal());
+        assertEquals("GET", logData.requestMethod());
+        assertEquals("/index.html", logData.requestResource());
+        assertEquals(1024, logData.bytesSent());
+        assertNull(logData.requestTime());
+        assertEquals("-", logData.remoteAddress());
+        assertEquals("-", logData.httpUserAgent());
+    }
+
+    @Test
+    @SneakyThrows
+    public void testGatheringWithoutOptionalFields(@TempDir Path dir) {
+        Path file = dir.resolve("short.log");
+        Files.write(file, List.of(
+                "[17/May/2015:08:05:32 +0000] \"GET /a HTTP/1.1\" 200",
+                "[17/May/2015:08:05:33 +0000] \"GET /b HTTP/1.1\" 404"));
+
+        Statistics statistics = GATHERER.gatherStatisticsFromFile(
+                file, new ResourceFilters().logFormat("[$time_local] \"$request\" $status"));
+
+        assertEquals(2, statistics.requestsAmount());
+        assertEquals(Map.of("-", 2), statistics.remoteAddresses());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "",
+            "10.0.0.1 - - [17/May/2015:08:05:32 +0000] \"GET / HTTP/1.1\" 200 0 \"-\" \"-\"",
+            "10.0.0.1 - - [17/May/2015:08:05:32 +0000] \"GET / HTTP/1.1\" 200 0 \"-\" \"-\" \"-\" rt=x urt=-",
+            "10.0.0.1 - - [17/May/2015:08:05:32 +0000] \"FETCH / HTTP/1.1\" 200 0 \"-\" \"-\" \"-\" rt=0.1 urt=-",
+            "10.0.0.1 - - [17/May/2015:08:05:32 +0000] \"GET / HTTP/1.1\" 200 0 \"-\" \"-\" \"-\" rt=0.1"
+    })
+    public void testMalformedLines(String line) {
+        assertSame(LogData.IGNORED, LogFormatParser.compile(TIMED).parseLine(line));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            " ",
+            "$remote_addr $status",
+            "[$time_local] \"$request\"",
+            "[$time_local] $request_method $status",
+            "[$time_local] \"$request\" $status$body_bytes_sent",
+            "[$time_local] \"$request\" $status ${body_bytes_sent",
+            "[$time_local] \"$request\" $status $"
+    })
+    public void testInvalidFormats(String logFormat) {
+        assertThrows(IllegalArgumentException.class, () -> LogFormatParser.compile(logFormat));
+    }
+
+    @Test
+    @SneakyThrows
+    public void testGatheringWithRequestTimes(@TempDir Path dir) {
+        Path file = dir.resolve("timed.log");
+        Files.write(file, List.of(
+                "10.0.0.1 - - [17/May/2015:08:05:32 +0000] \"GET /a HTTP/1.1\" 200 10 \"-\" \"-\" \"-\" rt=0.010 urt=0.009",
+                "10.0.0.2 - - [17/May/2015:08:05:33 +0000] \"GET /b HTTP/1.1\" 200 20 \"-\" \"-\" \"-\" rt=0.100 urt=-",
+                "10.0.0.3 - - [17/May/2015:08:05:34 +0000] \"POST /c HTTP/1.1\" 500 30 \"-\" \"-\" \"-\" rt=2.000 urt=2.0",
+                "10.0.0.4 - - [17/May/2015:08:05:35 +0000] \"GET /d HTTP/1.1\" 200 40 \"-\" \"-\" \"-\" rt=- urt=-"));
+        ResourceFilters filters = new ResourceFilters().logFormat(TIMED);
+
+        Statistics statistics = GATHERER.gatherStatisticsFromFile(file, filters);
+
+        assertEquals(4, statistics.requestsAmount());
+        assertEquals(0, statistics.ignoredRows());
+        assertEquals(703, statistics.averageRequestTime(), 703 * 0.01);
+        assertEquals(2000, statistics.maxRequestTime(), 2000 * 0.01);
+        assertTrue(statistics.p50RequestTime() <= statistics.p99RequestTime());
+
+        Statistics gets = GATHERER.gatherStatisticsFromFile(
+                file, new ResourceFilters().logFormat(TIMED).filterMap(Map.of("method", "GET")));
+        assertEquals(3, gets.requestsAmount());
+        assertEquals(100, gets.maxRequestTime(), 100 * 0.01);
+
+        // lines of the default format don't match the custom one
+        Statistics combined = GATHERER.gatherStatisticsFromFile(DATA_SOURCE, filters);
+        assertEquals(0, combined.requestsAmount());
+        assertNull(GATHERER.gatherStatisticsFromFile(DATA_SOURCE, new ResourceFilters()).averageRequestTime());
+    }
+}
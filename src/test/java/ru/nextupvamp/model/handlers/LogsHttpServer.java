@@ -0,0 +1,91 @@
+package ru.nextupvamp.model.handlers;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.SneakyThrows;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// local stand-in for a server of remote logs, answers range and conditional requests like nginx does
+class LogsHttpServer implements AutoCloseable {
+    private final HttpServer server;
+    private final List<Integer> statuses = new CopyOnWriteArrayList<>();
+    private volatile byte[] content = new byte[0];
+    private volatile boolean rangesSupported = true;
+    private volatile long bytesSent;
+
+    @SneakyThrows
+    LogsHttpServer() {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/logs.txt", this::handle);
+        server.start();
+    }
+
+    URI uri() {
+        return URI.create("http://localhost:" + server.getAddress().getPort() + "/logs.txt");
+    }
+
+    void content(byte[] content) {
+        this.content = content;
+    }
+
+    void rangesSupported(boolean rangesSupported) {
+        this.rangesSupported = rangesSupported;
+    }
+
+    List<Integer> statuses() {
+        return statuses;
+    }
+
+    long bytesSent() {
+        return bytesSent;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        byte[] body = content;
+        String eTag = "\"" + Integer.toHexString(Arrays.hashCode(body)) + "-" + body.length + "\"";
+        exchange.getResponseHeaders().set("ETag", eTag);
+
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        if (eTag.equals(ifNoneMatch)) {
+            respond(exchange, 304, null);
+        } else if (range != null && rangesSupported) {
+            long start = Long.parseLong(range.substring("bytes=".length(), range.indexOf('-')));
+            if (start >= body.length) {
+                exchange.getResponseHeaders().set("Content-Range", "bytes */" + body.length);
+                respond(exchange, 416, null);
+            } else {
+                exchange.getResponseHeaders().set(
+                        "Content-Range", "bytes " + start + "-" + (body.length - 1) + "/" + body.length);
+                respond(exchange, 206, Arrays.copyOfRange(body, (int) start, body.length));
+            }
+        } else {
+            respond(exchange, 200, body);
+        }
+    }
+
+    private void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+        statuses.add(status);
+        exchange.sendResponseHeaders(status, body == null ? -1 : body.length);
+        if (body != null) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+            bytesSent += body.length;
+        }
+        exchange.close();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
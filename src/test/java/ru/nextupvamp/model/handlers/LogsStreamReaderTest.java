@@ -2,13 +2,21 @@ package ru.nextupvamp.model.handlers;
 
 import lombok.SneakyThrows;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import ru.nextupvamp.model.data.LogData;
 
 import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Stream;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class LogsStreamReaderTest {
@@ -36,6 +44,76 @@ public class LogsStreamReaderTest {
         logsStreamReader.close();
     }
 
+    @Test
+    @SneakyThrows
+    public void testLocalFileChunkedRead() {
+        LogsStreamReader logsStreamReader = new LogsStreamReader();
+        Path localFile = Paths.get("src/test/resources/test_logs.txt");
+        long expected = Files.readAllLines(localFile).size();
+
+        Stream<LogData> stream = logsStreamReader.readFromFileInChunksAsStream(localFile, new NginxLogLineParser());
+
+        assertTrue(stream.isParallel());
+        assertEquals(expected, stream.filter(it -> it != LogData.IGNORED).count());
+
+        logsStreamReader.close();
+    }
+
+    @Test
+    @SneakyThrows
+    public void testChunksAreLineAligned(@TempDir Path directory) {
+        Path file = directory.resolve("lines.txt");
+        Files.writeString(file, "first\r\nsecond line\n\nthird\nfourth line is longer\nlast");
+
+        try (FileChannel channel = FileChannel.open(file)) {
+            List<FileChunk> chunks = LogsStreamReader.splitIntoChunks(channel, 0, channel.size(), 4);
+            List<String> lines = chunks.stream().flatMap(it -> LogsStreamReader.readLines(channel, it)).toList();
+
+            assertEquals(List.of("first", "second line", "", "third", "fourth line is longer", "last"), lines);
+            assertEquals(channel.size(), chunks.getLast().end());
+        }
+    }
+
+    @Test
+    @SneakyThrows
+    public void testChunkedReadProgress() {
+        Path localFile = Paths.get("src/test/resources/test_logs.txt");
+        GatheringProgress progress = new GatheringProgress();
+
+        try (LogsStreamReader logsStreamReader = new LogsStreamReader(progress)) {
+            logsStreamReader.readFromFileInChunksAsStream(localFile, new NginxLogLineParser()).forEach(it -> {
+            });
+        }
+
+        assertEquals(Files.readAllLines(localFile).size(), progress.linesProcessed());
+        assertEquals(Files.size(localFile), progress.bytesProcessed());
+    }
+
+    @Test
+    @SneakyThrows
+    public void testCancelledReadStops() {
+        Path localFile = Paths.get("src/test/resources/test_logs.txt");
+        GatheringProgress progress = new GatheringProgress();
+        progress.cancel();
+
+        try (LogsStreamReader logsStreamReader = new LogsStreamReader(progress)) {
+            Stream<LogData> stream = logsStreamReader.readFromFileInChunksAsStream(localFile, new NginxLogLineParser());
+            assertThrows(CancellationException.class, stream::count);
+        }
+    }
+
+    // gatherings run on the pool of the scheduler, so their chunks are sized for it rather than the common pool
+    @Test
+    public void testChunksSizedForCurrentPool() {
+        ForkJoinPool pool = new ForkJoinPool(ForkJoinPool.getCommonPoolParallelism() + 3);
+        try {
+            assertEquals(pool.getParallelism(), pool.submit(LogsStreamReader::currentParallelism).join());
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(ForkJoinPool.getCommonPoolParallelism(), LogsStreamReader.currentParallelism());
+    }
+
     @Test
     @SneakyThrows
     // test will fall if no Internet connection
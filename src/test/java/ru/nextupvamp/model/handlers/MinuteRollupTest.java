@@ -0,0 +1,119 @@
+package ru.nextupvamp.model.handlers;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import ru.nextupvamp.model.data.LogData;
+import ru.nextupvamp.model.data.RollupDto;
+import ru.nextupvamp.model.entities.ResourceFilters;
+import ru.nextupvamp.model.entities.Statistics;
+import ru.nextupvamp.model.entities.TimeBucket;
+
+import java.nio.file.Files;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static ru.nextupvamp.model.handlers.NginxLogsStatisticsGathererTest.DATA_SOURCE;
+import static ru.nextupvamp.model.handlers.NginxLogsStatisticsGathererTest.PARSER;
+
+public class MinuteRollupTest {
+    private static final ZonedDateTime START = ZonedDateTime.of(2015, 5, 17, 8, 0, 0, 0, ZoneOffset.UTC);
+
+    @Test
+    @SneakyThrows
+    public void testGatheredRollup() {
+        RollupStore rollupStore = new RollupStore(RollupStore.DEFAULT_MAX_SOURCES);
+        var gatherer = new NginxLogsStatisticsGatherer(PARSER, StatisticsResultCache.disabled(), rollupStore);
+        Statistics statistics = gatherer.gatherStatisticsFromFile(DATA_SOURCE, new ResourceFilters().rollup(true));
+
+        RollupDto day = rollupStore.window(RollupStore.keyOf(DATA_SOURCE), MinuteRollup.MINUTES);
+        List<LogData> logs = Files.readAllLines(DATA_SOURCE).stream()
+                .map(PARSER::parseLine)
+                .filter(it -> it != LogData.IGNORED)
+                .toList();
+        ZonedDateTime newest = logs.stream().map(LogData::timeLocal).max(ZonedDateTime::compareTo).orElseThrow();
+
+        assertEquals(statistics.requestsAmount(), day.requests());
+        assertEquals(logs.stream().mapToLong(LogData::bytesSent).sum(), day.bytesSent());
+        assertEquals(newest.withSecond(0).plusMinutes(1).toInstant(), day.to().toInstant());
+        statistics.statuses().forEach((status, amount) -> assertEquals(amount, day.statuses().get(status)));
+        assertEquals(day.requests(), day.requestsPerMinute().values().stream().mapToLong(it -> it).sum());
+
+        RollupDto lastMinute = rollupStore.window(RollupStore.keyOf(DATA_SOURCE), 1);
+        long inLastMinute = logs.stream()
+                .filter(it -> !it.timeLocal().isBefore(newest.withSecond(0)))
+                .count();
+        assertEquals(inLastMinute, lastMinute.requests());
+        assertNull(rollupStore.window("missing", 1));
+    }
+
+    // every row would update the top resources of its minute, so rollups are recorded only on request
+    @Test
+    public void testRollupOnlyIfRequested() {
+        RollupStore rollupStore = new RollupStore(RollupStore.DEFAULT_MAX_SOURCES);
+        var gatherer = new NginxLogsStatisticsGatherer(PARSER, StatisticsResultCache.disabled(), rollupStore);
+        String key = RollupStore.keyOf(DATA_SOURCE);
+
+        gatherer.gatherStatisticsFromFile(DATA_SOURCE, new ResourceFilters().rollup(true));
+        var rollup = rollupStore.window(key, MinuteRollup.MINUTES);
+        assertTrue(rollup.requests() > 0);
+
+        gatherer.gatherStatisticsFromFile(DATA_SOURCE, new ResourceFilters());
+        assertNull(rollupStore.window(key, MinuteRollup.MINUTES));
+        assertNull(new StatisticsAccumulator(new AccumulatorSettings(0.01, TimeBucket.SECOND, null, false)).rollup());
+    }
+
+    @Test
+    public void testOldMinutesAreEvicted() {
+        MinuteRollup rollup = new MinuteRollup();
+        rollup.record(log(START, 200, "/a"));
+        rollup.record(log(START.plusMinutes(MinuteRollup.MINUTES - 1), 404, "/b"));
+        assertEquals(2, rollup.window(MinuteRollup.MINUTES).requests());
+
+        // the same slot of the ring is taken by the minute a day later
+        rollup.record(log(START.plusMinutes(MinuteRollup.MINUTES), 500, "/c"));
+        rollup.record(log(START, 200, "/a")); // too old to be counted
+        RollupDto day = rollup.window(MinuteRollup.MINUTES);
+
+        assertEquals(2, day.requests());
+        assertNull(day.statuses().get((short) 200));
+        assertEquals(1, day.statuses().get((short) 500));
+        assertEquals(1, rollup.window(1).requests());
+        assertEquals(1, rollup.window(1).topResources().get("/c"));
+    }
+
+    @Test
+    public void testMergeEqualsSequentialRecording() {
+        MinuteRollup whole = new MinuteRollup();
+        MinuteRollup first = new MinuteRollup();
+        MinuteRollup second = new MinuteRollup();
+        for (int i = 0; i < 1000; i++) {
+            LogData log = log(START.plusSeconds(i * 7L), 200 + i % 3, "/resource" + i % 5);
+            whole.record(log);
+            (i % 2 == 0 ? first : second).record(log);
+        }
+        first.merge(second);
+
+        for (int minutes : new int[]{1, 5, 60, MinuteRollup.MINUTES}) {
+            assertEquals(whole.window(minutes), first.window(minutes));
+        }
+    }
+
+    @Test
+    public void testInvalidWindow() {
+        MinuteRollup rollup = new MinuteRollup();
+        assertThrows(IllegalArgumentException.class, () -> rollup.window(0));
+        assertThrows(IllegalArgumentException.class, () -> rollup.window(MinuteRollup.MINUTES + 1));
+        assertEquals(0, rollup.window(5).requests());
+    }
+
+    private static LogData log(ZonedDateTime time, int status, String resource) {
+        return LogData.builder()
+                .timeLocal(time)
+                .status((short) status)
+                .bytesSent(100)
+                .requestResource(resource)
+                .build();
+    }
+}
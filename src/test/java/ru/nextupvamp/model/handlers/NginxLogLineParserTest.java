@@ -3,11 +3,21 @@ package ru.nextupvamp.model.handlers;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
 import ru.nextupvamp.model.data.LogData;
+import ru.nextupvamp.model.entities.ResourceFilters;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class NginxLogLineParserTest {
     @ParameterizedTest
@@ -54,8 +64,60 @@ public class NginxLogLineParserTest {
     @Test
     public void testParseInvalidLogLineData() {
         NginxLogLineParser logsHandler = new NginxLogLineParser();
-        assertEquals(LogData.IGNORED, logsHandler.parseLine(
+        assertSame(LogData.IGNORED, logsHandler.parseLine(
                 "[Fri Sep 09 10:42:29.902022 2011] [core:error] [pid 35708:tid 4328636416] [client 72.15.99.187] File does not exist: /usr/local/apache2/htdocs/favicon.ico"
         ));
     }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "93.180.71.3 - - [17/May/2015:08:05:32 +0000] \"GET /downloads/product_1 HTTP/1.1\" 304 0 \"-\"",
+            "93.180.71.3 - - [17/Foo/2015:08:05:32 +0000] \"GET /downloads/product_1 HTTP/1.1\" 304 0 \"-\" \"-\"",
+            "93.180.71.3 - - [17/May/2015:08:05:32 +0000] \"FETCH /downloads/product_1 HTTP/1.1\" 304 0 \"-\" \"-\"",
+            "93.180.71.3 - - [17/May/2015:08:05:32 +0000] \"GET /downloads/product_1 HTTP/1.1\" 3040 0 \"-\" \"-\"",
+            "93.180.71.3 - - [17/May/2015:08:05:32 +0000] \"GET /downloads/product_1 HTTP/1.1\" 304 -1 \"-\" \"-\"",
+            ""
+    })
+    public void testParseMalformedLogLineData(String input) {
+        assertSame(LogData.IGNORED, new NginxLogLineParser().parseLine(input));
+    }
+
+    @Test
+    public void testParsersAgree() throws IOException {
+        NginxLogLineParser scanner = new NginxLogLineParser();
+        RegexNginxLogLineParser regex = new RegexNginxLogLineParser();
+
+        for (String line : Files.readAllLines(Path.of("src/test/resources/test_logs.txt"))) {
+            assertEquals(regex.parseLine(line), scanner.parseLine(line));
+        }
+    }
+
+    @Test
+    public void testPushedDownFiltersAgreeWithParsedRowFilters() throws IOException {
+        NginxLogLineParser scanner = new NginxLogLineParser();
+        RegexNginxLogLineParser regex = new RegexNginxLogLineParser();
+        List<String> lines = new ArrayList<>(Files.readAllLines(Path.of("src/test/resources/test_logs.txt")));
+        lines.add("malformed line");
+        List<ResourceFilters> filters = List.of(
+                new ResourceFilters().filterMap(Map.of("status", "30.*", "method", "GET")),
+                new ResourceFilters().filterMap(Map.of("userAgent", ".*0\\.8\\..*", "address", "217\\..*")),
+                new ResourceFilters().fromDate(ZonedDateTime.parse("2015-05-17T08:05:30Z"))
+                        .toDate(ZonedDateTime.parse("2015-05-17T09:00:00Z"))
+                        .filterMap(Map.of("resource", "/downloads/product_[12]"))
+        );
+
+        for (ResourceFilters filter : filters) {
+            RowFilter rowFilter = RowFilter.of(filter);
+            int matched = 0;
+            for (String line : lines) {
+                LogData expected = regex.parseLine(line, rowFilter);
+                LogData actual = scanner.parseLine(line, rowFilter);
+                assertEquals(expected == LogData.FILTERED, actual == LogData.FILTERED);
+                assertEquals(expected == LogData.IGNORED, actual == LogData.IGNORED);
+                assertEquals(expected, actual);
+                matched += actual != LogData.FILTERED && actual != LogData.IGNORED ? 1 : 0;
+            }
+            assertTrue(matched > 0 && matched < lines.size() - 1);
+        }
+    }
 }
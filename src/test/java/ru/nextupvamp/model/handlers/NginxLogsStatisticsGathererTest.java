@@ -2,8 +2,15 @@ package ru.nextupvamp.model.handlers;
 
 import lombok.SneakyThrows;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.util.unit.DataSize;
+import ru.nextupvamp.model.entities.GatheringCheckpoint;
 import ru.nextupvamp.model.entities.ResourceFilters;
 import ru.nextupvamp.model.entities.Statistics;
+import ru.nextupvamp.model.entities.TimeBucket;
 
 import java.io.BufferedReader;
 import java.io.InputStream;
@@ -12,12 +19,12 @@ import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.ZonedDateTime;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.stream.Collectors;
 import java.util.stream.LongStream;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -88,9 +95,121 @@ public class NginxLogsStatisticsGathererTest {
         assertEquals(lines, logsStatistics.requestsAmount());
     }
 
+    @ParameterizedTest
+    @EnumSource(TimeBucket.class)
+    public void testTimeBuckets(TimeBucket timeBucket) {
+        ResourceFilters filters = new ResourceFilters();
+        filters.timeBucket(timeBucket);
+
+        Statistics logsStatistics = GATHERER.gatherStatisticsFromFile(DATA_SOURCE, filters);
+
+        assertEquals(timeBucket, logsStatistics.timeBucket());
+        assertEquals(logsStatistics.requestsAmount(),
+                logsStatistics.requestsOnDate().values().stream().mapToInt(Integer::intValue).sum());
+        for (ZonedDateTime zdt : logsStatistics.requestsOnDate().keySet()) {
+            assertEquals(0, zdt.toEpochSecond() % timeBucket.seconds());
+        }
+        switch (timeBucket) {
+            case MINUTE, HOUR -> assertEquals(2, logsStatistics.requestsOnDate().size()); // 08:05 and 09:05
+            case DAY -> assertEquals(Map.of(ZonedDateTime.parse("2015-05-17T00:00:00Z"), 33),
+                    logsStatistics.requestsOnDate());
+        }
+    }
+
+    @Test
+    public void testTopK() {
+        Statistics full = GATHERER.gatherStatisticsFromFile(DATA_SOURCE, null);
+        ResourceFilters filters = new ResourceFilters();
+        filters.topK(2);
+
+        Statistics logsStatistics = GATHERER.gatherStatisticsFromFile(DATA_SOURCE, filters);
+
+        assertEquals(2, logsStatistics.topK());
+        assertEquals(2, logsStatistics.remoteAddresses().size());
+        assertEquals(full.requestResources(), logsStatistics.requestResources()); // there are two resources only
+        assertEquals(full.distinctRemoteAddresses(), logsStatistics.distinctRemoteAddresses());
+        assertEquals(full.requestsAmount(), logsStatistics.requestsAmount());
+    }
+
+    @Test
+    @SneakyThrows
+    public void testDistinctUserAgents() {
+        long expected = Files.readAllLines(DATA_SOURCE).stream()
+                .map(it -> it.substring(it.lastIndexOf('"', it.length() - 2)))
+                .distinct()
+                .count();
+
+        Statistics logsStatistics = GATHERER.gatherStatisticsFromFile(DATA_SOURCE, null);
+
+        assertEquals(expected, logsStatistics.distinctHttpUserAgents());
+        assertEquals(expected, HyperLogLog.fromBytes(logsStatistics.httpUserAgentsSketch()).estimate());
+    }
+
+    @Test
+    @SneakyThrows
+    public void testIncrementalGathering(@TempDir Path directory) {
+        List<String> lines = Files.readAllLines(DATA_SOURCE);
+        Path file = directory.resolve("logs.txt");
+        Files.write(file, lines.subList(0, 10));
+        ResourceFilters filters = new ResourceFilters();
+        filters.filterMap(Map.of("status", "30.*"));
+        GatheringCheckpoint checkpoint = new GatheringCheckpoint();
+
+        GATHERER.gatherStatisticsFromFile(file, filters, checkpoint);
+        long firstOffset = checkpoint.offset();
+        Files.write(file, lines.subList(10, lines.size()), StandardOpenOption.APPEND);
+        Statistics incremental = GATHERER.gatherStatisticsFromFile(file, filters, checkpoint);
+        Statistics full = GATHERER.gatherStatisticsFromFile(file, filters);
+
+        assertEquals(Files.size(file), checkpoint.offset());
+        assertTrue(firstOffset > 0 && firstOffset < checkpoint.offset());
+        assertEquals(full, incremental);
+    }
+
+    @Test
+    @SneakyThrows
+    public void testIncrementalGatheringAfterRewrite(@TempDir Path directory) {
+        List<String> lines = Files.readAllLines(DATA_SOURCE);
+        Path file = directory.resolve("logs.txt");
+        Files.write(file, lines.subList(0, 20));
+        GatheringCheckpoint checkpoint = new GatheringCheckpoint();
+
+        GATHERER.gatherStatisticsFromFile(file, null, checkpoint);
+        Files.write(file, lines.subList(5, 30)); // rotated and written again
+        Statistics incremental = GATHERER.gatherStatisticsFromFile(file, null, checkpoint);
+
+        assertEquals(25, incremental.requestsAmount());
+        assertEquals(GATHERER.gatherStatisticsFromFile(file, null), incremental);
+    }
+
+    @Test
+    @SneakyThrows
+    public void testResultCache(@TempDir Path directory) {
+        List<String> lines = Files.readAllLines(DATA_SOURCE);
+        Path file = directory.resolve("logs.txt");
+        Files.write(file, lines.subList(0, 20));
+        long entrySize = new StatisticsAccumulator(new AccumulatorSettings(0.01, null, null, false)).estimatedSize();
+        StatisticsResultCache cache = new StatisticsResultCache(DataSize.ofBytes(entrySize * 3 / 2)); // one entry
+        LogsStatisticsGatherer gatherer = new NginxLogsStatisticsGatherer(PARSER, cache);
+
+        Statistics first = gatherer.gatherStatisticsFromFile(file, null);
+        Statistics cached = gatherer.gatherStatisticsFromFile(file, null);
+        gatherer.gatherStatisticsFromFile(file, new ResourceFilters().topK(5)); // evicts the first entry
+        Files.write(file, lines.subList(20, 25), StandardOpenOption.APPEND);
+        Statistics changed = gatherer.gatherStatisticsFromFile(file, null);
+
+        assertEquals(first, cached);
+        assertNotSame(first, cached);
+        assertEquals(25, changed.requestsAmount());
+        assertEquals(1, cache.stats().hits());
+        assertEquals(3, cache.stats().misses());
+        assertEquals(2, cache.stats().evictions());
+    }
+
     @Test
     public void testCompute95p() {
-        Queue<Long> list = LongStream.iterate(1, it -> it + 1).limit(100).boxed().collect(Collectors.toCollection(ConcurrentLinkedQueue<Long>::new));
+        LogHistogram list = new LogHistogram(0.01);
+        LongStream.iterate(1, it -> it + 1).limit(100).forEach(list::record);
         long p95 = new NginxLogsStatisticsGatherer(PARSER).count95pBytesSent(list);
 
         assertEquals(96, p95);
@@ -98,11 +217,28 @@ public class NginxLogsStatisticsGathererTest {
 
     @Test
     public void testComputeAverage() {
-        Queue<Long> list = LongStream.iterate(1, it -> it + 1).limit(100).boxed().collect(Collectors.toCollection(ConcurrentLinkedQueue<Long>::new));
+        LogHistogram list = new LogHistogram(0.01);
+        LongStream.iterate(1, it -> it + 1).limit(100).forEach(list::record);
 
         assertEquals(50, new NginxLogsStatisticsGatherer(PARSER).countAverageBytesSent(list));
     }
 
+    @Test
+    public void testQuantileErrorBound() {
+        double relativeError = 0.01;
+        LogHistogram first = new LogHistogram(relativeError);
+        LogHistogram second = new LogHistogram(relativeError);
+        LongStream.iterate(1, it -> it + 7).limit(1_000_000).forEach(it -> (it % 2 == 0 ? first : second).record(it));
+        LogHistogram merged = first.merge(second);
+        long[] sorted = LongStream.iterate(1, it -> it + 7).limit(1_000_000).toArray();
+
+        for (double quantile : new double[]{0.5, 0.9, 0.95, 0.99}) {
+            long exact = sorted[(int) (sorted.length * quantile)];
+            assertEquals(exact, merged.valueAtQuantile(quantile), exact * relativeError);
+        }
+        assertEquals(sorted[sorted.length - 1], merged.max());
+    }
+
     @Test
     public void testCounters() {
         Statistics logsStatistics = GATHERER.gatherStatisticsFromFile(DATA_SOURCE, null);
@@ -139,4 +275,166 @@ public class NginxLogsStatisticsGathererTest {
 
         assertEquals(13, logsStatistics.requestsAmount()); // also hand counted
     }
+
+    @Test
+    @SneakyThrows
+    public void testIgnoredRowsWithFilters(@TempDir Path directory) {
+        Path file = directory.resolve("logs.txt");
+        Files.writeString(file, Files.readString(DATA_SOURCE) + "\nnot a log line\n");
+        ResourceFilters filters = new ResourceFilters();
+        filters.fromDate(ZonedDateTime.parse("2015-05-17T08:05:00Z")).filterMap(Map.of("method", "GET"));
+
+        Statistics logsStatistics = GATHERER.gatherStatisticsFromFile(file, filters);
+
+        assertEquals(1, logsStatistics.ignoredRows());
+        assertEquals(30, logsStatistics.requestsAmount());
+    }
+
+    @Test
+    @SneakyThrows
+    public void testMergedStatistics(@TempDir Path directory) {
+        List<String> lines = Files.readAllLines(DATA_SOURCE);
+        List<LogSource> sources = new ArrayList<>();
+        int parts = 3;
+        for (int i = 0; i < parts; i++) {
+            Path part = directory.resolve("part" + i + ".txt");
+            Files.write(part, lines.subList(lines.size() * i / parts, lines.size() * (i + 1) / parts));
+            sources.add(LogSource.ofFile(part, new ResourceFilters().timeBucket(TimeBucket.MINUTE)));
+        }
+
+        Statistics merged = GATHERER.gatherMergedStatistics(sources, 2);
+        Statistics whole = GATHERER.gatherStatisticsFromFile(
+                DATA_SOURCE, new ResourceFilters().timeBucket(TimeBucket.MINUTE));
+
+        assertEquals(whole, merged);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 5})
+    @SneakyThrows
+    public void testCopiedAccumulatorIsIndependent(int topK) {
+        AccumulatorSettings settings = new AccumulatorSettings(0.01, TimeBucket.SECOND, topK > 0 ? topK : null, true);
+        List<String> lines = Files.readAllLines(DATA_SOURCE);
+        StatisticsAccumulator original = lines.stream()
+                .map(PARSER::parseLine)
+                .collect(StatisticsAccumulator.collector(settings));
+        Statistics before = original.toStatistics(null, null);
+
+        StatisticsAccumulator copy = original.copy();
+        assertEquals(before, copy.toStatistics(null, null));
+        copy.accept(PARSER.parseLine(lines.getFirst()));
+        new StatisticsAccumulator(settings).combine(copy).combine(original.copy());
+
+        assertEquals(before, original.toStatistics(null, null));
+        assertEquals(original.rollup().window(MinuteRollup.MINUTES), original.copy().rollup().window(MinuteRollup.MINUTES));
+    }
+
+    @Test
+    public void testMergedStatisticsKeepCachedStates() {
+        LogsStatisticsGatherer gatherer = new NginxLogsStatisticsGatherer(PARSER, new StatisticsResultCache(DataSize.ofMegabytes(64)));
+        List<LogSource> sources = List.of(LogSource.ofFile(DATA_SOURCE, null), LogSource.ofFile(DATA_SOURCE, null));
+
+        Statistics single = gatherer.gatherStatisticsFromFile(DATA_SOURCE, null);
+        Statistics merged = gatherer.gatherMergedStatistics(sources, 2);
+        Statistics mergedAgain = gatherer.gatherMergedStatistics(sources, 2);
+
+        assertEquals(2 * single.requestsAmount(), merged.requestsAmount());
+        assertEquals(merged, mergedAgain);
+        assertEquals(single, gatherer.gatherStatisticsFromFile(DATA_SOURCE, null));
+    }
+
+    @Test
+    public void testMergedStatisticsWithDifferentSettings() {
+        List<LogSource> sources = List.of(
+                LogSource.ofFile(DATA_SOURCE, new ResourceFilters().topK(5)),
+                LogSource.ofFile(DATA_SOURCE, null));
+
+        assertThrows(IllegalArgumentException.class, () -> GATHERER.gatherMergedStatistics(sources, 2));
+        assertThrows(IllegalArgumentException.class, () -> GATHERER.gatherMergedStatistics(List.of(), 2));
+    }
+
+    @Test
+    @SneakyThrows
+    public void testUriRangeFetch(@TempDir Path directory) {
+        List<String> lines = repeatedLines(4); // longer than the checked tail
+        String head = joinLines(lines.subList(0, lines.size() * 2 / 3));
+        String tail = joinLines(lines.subList(lines.size() * 2 / 3, lines.size()));
+        Statistics whole = gatherFromFile(directory, head + tail);
+
+        try (LogsHttpServer server = new LogsHttpServer()) {
+            GatheringCheckpoint checkpoint = new GatheringCheckpoint();
+            server.content(head.getBytes());
+            GATHERER.gatherStatisticsFromUri(server.uri(), null, checkpoint);
+            long fullFetchBytes = server.bytesSent();
+
+            server.content((head + tail).getBytes());
+            Statistics appended = GATHERER.gatherStatisticsFromUri(server.uri(), null, checkpoint);
+            Statistics unchanged = GATHERER.gatherStatisticsFromUri(server.uri(), null, checkpoint);
+
+            assertEquals(List.of(200, 206, 304), server.statuses());
+            assertEquals(head.length(), fullFetchBytes);
+            assertEquals(FileChecksums.WINDOW + tail.length(), server.bytesSent() - fullFetchBytes);
+            assertEquals(whole, appended);
+            assertEquals(whole, unchanged);
+            assertEquals(head.length() + tail.length(), checkpoint.offset());
+        }
+    }
+
+    @Test
+    @SneakyThrows
+    public void testUriRangeFetchFallback(@TempDir Path directory) {
+        List<String> lines = repeatedLines(4);
+        String first = joinLines(lines.subList(0, 2));
+        String head = joinLines(lines.subList(0, lines.size() / 3));
+        String whole = joinLines(lines);
+        Statistics firstStatistics = gatherFromFile(directory, first);
+        Statistics headStatistics = gatherFromFile(directory, head);
+        Statistics wholeStatistics = gatherFromFile(directory, whole);
+
+        try (LogsHttpServer server = new LogsHttpServer()) {
+            GatheringCheckpoint checkpoint = new GatheringCheckpoint();
+            server.content(whole.getBytes());
+            GATHERER.gatherStatisticsFromUri(server.uri(), null, checkpoint);
+
+            server.content(first.getBytes()); // truncated before the checked tail, 416
+            assertEquals(firstStatistics, GATHERER.gatherStatisticsFromUri(server.uri(), null, checkpoint));
+
+            server.content(whole.getBytes()); // short checkpoint, the whole content is requested
+            assertEquals(wholeStatistics, GATHERER.gatherStatisticsFromUri(server.uri(), null, checkpoint));
+
+            server.content(whole.replace("GET", "PUT").getBytes()); // rewritten with the same length
+            Statistics rewritten = GATHERER.gatherStatisticsFromUri(server.uri(), null, checkpoint);
+            assertNotEquals(wholeStatistics.requestMethods(), rewritten.requestMethods());
+            assertEquals(wholeStatistics.requestsAmount(), rewritten.requestsAmount());
+
+            server.rangesSupported(false);
+            server.content(head.getBytes()); // shorter than the skipped prefix
+            assertEquals(headStatistics, GATHERER.gatherStatisticsFromUri(server.uri(), null, checkpoint));
+            server.content(whole.getBytes()); // the known prefix is skipped
+            assertEquals(wholeStatistics, GATHERER.gatherStatisticsFromUri(server.uri(), null, checkpoint));
+
+            assertEquals(List.of(200, 416, 200, 200, 206, 200, 200, 200, 200), server.statuses());
+        }
+    }
+
+    @SneakyThrows
+    private static List<String> repeatedLines(int times) {
+        List<String> lines = Files.readAllLines(DATA_SOURCE);
+        List<String> repeated = new ArrayList<>();
+        for (int i = 0; i < times; i++) {
+            repeated.addAll(lines);
+        }
+        return repeated;
+    }
+
+    @SneakyThrows
+    private static Statistics gatherFromFile(Path directory, String content) {
+        Path file = Files.createTempFile(directory, "logs", ".txt");
+        Files.writeString(file, content);
+        return GATHERER.gatherStatisticsFromFile(file, null);
+    }
+
+    private static String joinLines(List<String> lines) {
+        return String.join("\n", lines) + "\n";
+    }
 }
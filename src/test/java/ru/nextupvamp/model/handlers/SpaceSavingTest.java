@@ -0,0 +1,46 @@
+package ru.nextupvamp.model.handlers;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SpaceSavingTest {
+    @Test
+    public void testHeavyHittersAreFound() {
+        int capacity = 100;
+        SpaceSaving<String> first = new SpaceSaving<>(5, capacity);
+        SpaceSaving<String> second = new SpaceSaving<>(5, capacity);
+        Map<String, Integer> exact = new HashMap<>();
+        Random random = new Random(42);
+        int total = 200_000;
+        for (int i = 0; i < total; i++) {
+            // a few hot keys on top of a long tail of unique ones
+            String key = random.nextInt(10) < 4 ? "hot" + random.nextInt(5) : "cold" + i;
+            exact.merge(key, 1, Integer::sum);
+            (i % 2 == 0 ? first : second).increment(key);
+        }
+        first.merge(second);
+
+        Map<String, Integer> top = first.toMap();
+        assertEquals(5, top.size());
+        top.forEach((key, count) -> {
+            assertTrue(key.startsWith("hot"));
+            assertTrue(count >= exact.get(key));
+            assertTrue(count - exact.get(key) <= 2 * total / capacity); // each summary adds at most n / capacity
+        });
+    }
+
+    @Test
+    public void testExactWhileUnderCapacity() {
+        SpaceSaving<String> summary = new SpaceSaving<>(2, 10);
+        for (String key : new String[]{"a", "b", "a", "c", "a", "b"}) {
+            summary.increment(key);
+        }
+
+        assertEquals(Map.of("a", 3, "b", 2), summary.toMap());
+    }
+}
@@ -0,0 +1,70 @@
+package ru.nextupvamp.model.handlers;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import ru.nextupvamp.model.entities.Statistics;
+import ru.nextupvamp.model.entities.TimeBucket;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static ru.nextupvamp.model.handlers.NginxLogsStatisticsGathererTest.DATA_SOURCE;
+import static ru.nextupvamp.model.handlers.NginxLogsStatisticsGathererTest.PARSER;
+
+public class StatisticsAccumulatorTest {
+    @ParameterizedTest
+    @ValueSource(ints = {0, 5})
+    @SneakyThrows
+    public void testSnapshotRoundTrip(int topK) {
+        var accumulator = new StatisticsAccumulator(
+                new AccumulatorSettings(0.01, TimeBucket.MINUTE, topK == 0 ? null : topK, true));
+        Files.readAllLines(DATA_SOURCE).forEach(line -> accumulator.accept(PARSER.parseLine(line)));
+
+        StatisticsAccumulator restored = StatisticsAccumulator.fromSnapshot(accumulator.toSnapshot());
+
+        Statistics expected = accumulator.toStatistics(null, null);
+        Statistics actual = restored.toStatistics(null, null);
+        assertEquals(accumulator.settings(), restored.settings());
+        assertEquals(expected.requestsAmount(), actual.requestsAmount());
+        assertEquals(expected.remoteAddresses(), actual.remoteAddresses());
+        assertEquals(expected.requestResources(), actual.requestResources());
+        assertEquals(expected.requestsOnDate(), actual.requestsOnDate());
+        assertEquals(expected.statuses(), actual.statuses());
+        assertEquals(accumulator.rollup().window(MinuteRollup.MINUTES), restored.rollup().window(MinuteRollup.MINUTES));
+    }
+
+    // snapshots of other versions were written with other fields, so they are gathered again instead
+    @Test
+    public void testOtherVersionRejected() {
+        var accumulator = new StatisticsAccumulator(new AccumulatorSettings(0.01, null, null, false));
+        byte[] snapshot = snapshot((byte) (StatisticsAccumulator.SNAPSHOT_VERSION + 1), accumulator);
+
+        assertThrows(InvalidClassException.class, () -> StatisticsAccumulator.fromSnapshot(snapshot));
+    }
+
+    @Test
+    public void testForeignClassRejected() {
+        byte[] snapshot = snapshot(StatisticsAccumulator.SNAPSHOT_VERSION, new ArrayList<>());
+
+        assertThrows(InvalidClassException.class, () -> StatisticsAccumulator.fromSnapshot(snapshot));
+    }
+
+    private static byte[] snapshot(byte version, Object content) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(new GZIPOutputStream(bytes))) {
+            out.writeByte(version);
+            out.writeObject(content);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return bytes.toByteArray();
+    }
+}
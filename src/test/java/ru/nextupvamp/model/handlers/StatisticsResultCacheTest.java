@@ -0,0 +1,64 @@
+package ru.nextupvamp.model.handlers;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StatisticsResultCacheTest {
+    private static final AccumulatorSettings SETTINGS = new AccumulatorSettings(0.01, null, null, false);
+    private static final long ENTRY_SIZE = new StatisticsAccumulator(SETTINGS).estimatedSize();
+
+    @Test
+    public void testEvictsLeastRecentlyUsedBySize() {
+        StatisticsResultCache cache = new StatisticsResultCache(DataSize.ofBytes(ENTRY_SIZE * 5 / 2));
+        StatisticsAccumulator first = new StatisticsAccumulator(SETTINGS);
+        cache.put("first", first);
+        cache.put("second", new StatisticsAccumulator(SETTINGS));
+        cache.get("first");
+        cache.put("third", new StatisticsAccumulator(SETTINGS));
+
+        assertSame(first, cache.get("first"));
+        assertNull(cache.get("second"));
+        assertEquals(1, cache.stats().evictions());
+        assertEquals(2, cache.stats().size());
+        assertEquals(2 * ENTRY_SIZE, cache.stats().bytes());
+    }
+
+    @Test
+    public void testBiggerThanBudgetNotCached() {
+        StatisticsResultCache cache = new StatisticsResultCache(DataSize.ofBytes(ENTRY_SIZE));
+        cache.put("small", new StatisticsAccumulator(SETTINGS));
+        cache.put("big", new StatisticsAccumulator(new AccumulatorSettings(0.01, null, null, true)));
+
+        assertNull(cache.get("big"));
+        assertNotNull(cache.get("small"));
+        assertEquals(0, cache.stats().evictions());
+    }
+
+    @Test
+    public void testUnknownVersionNotCounted() {
+        StatisticsResultCache cache = new StatisticsResultCache(DataSize.ofMegabytes(1));
+
+        assertNull(cache.get(null));
+        assertEquals(0, cache.stats().misses());
+    }
+
+    @Test
+    public void testMeters() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        StatisticsResultCache cache = new StatisticsResultCache(
+                DataSize.ofBytes(ENTRY_SIZE * 3 / 2), new GatheringMetrics(registry));
+        cache.get("first");
+        cache.put("first", new StatisticsAccumulator(SETTINGS));
+        cache.get("first");
+        cache.put("second", new StatisticsAccumulator(SETTINGS));
+
+        assertEquals(1, registry.get("logs.statistics.cache.hits").functionCounter().count());
+        assertEquals(1, registry.get("logs.statistics.cache.misses").functionCounter().count());
+        assertEquals(1, registry.get("logs.statistics.cache.evictions").functionCounter().count());
+        assertEquals(1, registry.get("logs.statistics.cache.entries").gauge().value());
+        assertEquals(ENTRY_SIZE, registry.get("logs.statistics.cache.size").gauge().value());
+    }
+}
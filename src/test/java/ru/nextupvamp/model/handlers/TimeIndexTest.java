@@ -0,0 +1,69 @@
+package ru.nextupvamp.model.handlers;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.nextupvamp.model.data.LogData;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TimeIndexTest {
+    private static final LogLineParser PARSER = new NginxLogLineParser();
+    private static final int BLOCK_SIZE = 512;
+
+    @Test
+    @SneakyThrows
+    public void testSelectionKeepsEveryMatchingRow(@TempDir Path directory) {
+        Path file = directory.resolve("logs.txt");
+        List<String> lines = new ArrayList<>(Files.readAllLines(Paths.get("src/test/resources/test_logs.txt")));
+        lines.add(10, "broken line");
+        Files.write(file, lines);
+        ZonedDateTime fromDate = ZonedDateTime.parse("2015-05-17T08:05:00Z");
+        ZonedDateTime toDate = ZonedDateTime.parse("2015-05-17T08:05:30Z");
+        Predicate<LogData> inWindow = it -> it != LogData.IGNORED
+                && !it.timeLocal().isBefore(fromDate) && !it.timeLocal().isAfter(toDate);
+
+        TimeIndex.Selection selection = TimeIndex.loadOrBuild(file, PARSER, BLOCK_SIZE)
+                .select(0, Files.size(file), fromDate, toDate);
+
+        long selectedBytes = selection.ranges().stream().mapToLong(FileChunk::length).sum();
+        assertTrue(selectedBytes < Files.size(file));
+        try (LogsStreamReader reader = new LogsStreamReader()) {
+            long expected = lines.stream().map(PARSER::parseLine).filter(inWindow).count();
+            long selected = reader.readFromFileRangesInChunksAsStream(file, selection.ranges(), PARSER)
+                    .filter(inWindow)
+                    .count();
+            assertEquals(expected, selected);
+        }
+        assertTrue(Files.exists(TimeIndex.sidecarOf(file)));
+    }
+
+    @Test
+    @SneakyThrows
+    public void testIndexIsExtendedAfterAppend(@TempDir Path directory) {
+        Path file = directory.resolve("logs.txt");
+        List<String> lines = Files.readAllLines(Paths.get("src/test/resources/test_logs.txt"));
+        Files.write(file, lines.subList(0, 20));
+        TimeIndex.loadOrBuild(file, PARSER, BLOCK_SIZE);
+
+        Files.write(file, lines.subList(20, lines.size()), StandardOpenOption.APPEND);
+        TimeIndex extended = TimeIndex.loadOrBuild(file, PARSER, BLOCK_SIZE);
+
+        List<TimeIndex.Block> blocks = extended.blocks();
+        assertEquals(Files.size(file), blocks.getLast().end());
+        for (int i = 1; i < blocks.size(); i++) {
+            assertEquals(blocks.get(i - 1).end(), blocks.get(i).start());
+        }
+        assertEquals(TimeIndex.loadOrBuild(file, PARSER, BLOCK_SIZE).blocks(), blocks);
+    }
+}
@@ -0,0 +1,74 @@
+package ru.nextupvamp.model.handlers;
+
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class UploadedContentWriterTest {
+    @Test
+    @SneakyThrows
+    public void testWrite(@TempDir Path directory) {
+        Path source = Paths.get("src/test/resources/test_logs.txt");
+        Path target = directory.resolve("upload.txt");
+
+        UploadedContentWriter.WrittenContent content;
+        try (InputStream inputStream = Files.newInputStream(source)) {
+            content = UploadedContentWriter.write(inputStream, target);
+        }
+
+        byte[] expected = Files.readAllBytes(source);
+        assertArrayEquals(expected, Files.readAllBytes(target));
+        assertEquals(expected.length, content.size());
+        assertEquals(Files.readAllLines(source).size(), content.lines());
+        assertEquals(HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(expected)), content.sha256());
+    }
+
+    @Test
+    @SneakyThrows
+    public void testLastLineWithoutLineBreak(@TempDir Path directory) {
+        byte[] bytes = "first\nsecond\n\nlast".getBytes();
+
+        var content = UploadedContentWriter.write(new ByteArrayInputStream(bytes), directory.resolve("upload.txt"));
+
+        assertEquals(4, content.lines());
+        assertEquals(bytes.length, content.size());
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    public void testPartialUploadRemoved(boolean checked, @TempDir Path directory) {
+        Path target = directory.resolve("upload.txt");
+        InputStream failing = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                if (checked) {
+                    throw new IOException("Connection reset");
+                }
+                throw new UncheckedIOException(new IOException("Client aborted"));
+            }
+        };
+        InputStream aborted = new SequenceInputStream(new ByteArrayInputStream("first\n".getBytes()), failing);
+
+        Exception exception = assertThrows(Exception.class, () -> UploadedContentWriter.write(aborted, target));
+        assertEquals(checked ? IOException.class : UncheckedIOException.class, exception.getClass());
+        assertFalse(Files.exists(target));
+    }
+}
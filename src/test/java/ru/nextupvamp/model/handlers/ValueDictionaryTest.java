@@ -0,0 +1,126 @@
+package ru.nextupvamp.model.handlers;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ValueDictionaryTest {
+    @Test
+    public void testRepeatedValuesAreShared() {
+        ValueDictionary dictionary = new ValueDictionary(16, 32);
+        String first = "1.1.1.1 - Mozilla/5.0";
+        String second = "2.2.2.2 - Mozilla/5.0";
+
+        String value = dictionary.intern(first, 10, first.length());
+
+        assertEquals("Mozilla/5.0", value);
+        assertSame(value, dictionary.intern(second, 10, second.length()));
+        assertSame(value, dictionary.intern(new String("Mozilla/5.0")));
+        assertEquals("1.1.1.1", dictionary.intern(first, 0, 7));
+        assertEquals("", dictionary.intern(first, 3, 3));
+        assertEquals(3, dictionary.size());
+    }
+
+    @Test
+    public void testLongValuesAreNotKept() {
+        ValueDictionary dictionary = new ValueDictionary(16, 4);
+        String line = "short longer";
+
+        String value = dictionary.intern(line, 6, line.length());
+
+        assertEquals("longer", value);
+        assertNotSame(value, dictionary.intern(line, 6, line.length()));
+        assertEquals(0, dictionary.size());
+        assertEquals(HyperLogLog.hash(value), dictionary.sketchHash(value));
+    }
+
+    // a field with more distinct values than the capacity isn't looked up anymore
+    @Test
+    public void testPassesThroughWhenFull() {
+        ValueDictionary dictionary = new ValueDictionary(4, 32);
+        String hot = dictionary.intern("> value-0", 2, 9);
+
+        for (int i = 0; i < 100; i++) {
+            String value = "value-" + i;
+            assertEquals(value, dictionary.intern(value, 0, value.length()));
+            assertEquals(HyperLogLog.hash(value), dictionary.sketchHash(value));
+            assertTrue(dictionary.size() <= 4);
+        }
+
+        assertTrue(dictionary.passesThrough());
+        assertEquals(0, dictionary.size());
+        assertNotSame(hot, dictionary.intern("> value-0", 2, 9));
+        assertEquals(HyperLogLog.hash(hot), dictionary.sketchHash(hot));
+    }
+
+    // an overflow only lasts for the gathering it happened in, the next one interns the values again
+    @Test
+    public void testNextGatheringInternsAfterOverflow() {
+        ValueDictionary dictionary = ValueDictionary.of(LogField.REMOTE_USER);
+        String line = "- user-0 -";
+
+        ValueDictionary.gatheringStarted();
+        try {
+            for (int i = 0; i <= ValueDictionary.DEFAULT_CAPACITY; i++) {
+                dictionary.intern("user-" + i);
+            }
+            assertTrue(dictionary.passesThrough());
+
+            ValueDictionary.gatheringStarted(); // while the first one is still running
+            try {
+                String value = dictionary.intern(line, 2, 8);
+                assertFalse(dictionary.passesThrough());
+                assertSame(value, dictionary.intern(line, 2, 8));
+            } finally {
+                ValueDictionary.gatheringFinished();
+            }
+            assertEquals(1, dictionary.size());
+        } finally {
+            ValueDictionary.gatheringFinished();
+        }
+
+        assertEquals(0, dictionary.size()); // values of finished gatherings are not kept
+        assertFalse(dictionary.passesThrough());
+    }
+
+    // values of a field of high cardinality don't take the dictionaries of the others
+    @Test
+    public void testDictionaryPerField() {
+        for (LogField field : LogField.values()) {
+            assertSame(ValueDictionary.of(field), ValueDictionary.of(field));
+            for (LogField other : LogField.values()) {
+                assertEquals(field == other, ValueDictionary.of(field) == ValueDictionary.of(other));
+            }
+        }
+    }
+
+    @Test
+    public void testConcurrentInterning() throws Exception {
+        ValueDictionary dictionary = new ValueDictionary(1024, 32);
+        List<String> values = IntStream.range(0, 512).mapToObj(i -> "agent-" + i).toList();
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            List<Future<List<String>>> results = IntStream.range(0, 8)
+                    .mapToObj(thread -> executor.submit(() -> values.stream()
+                            .map(value -> dictionary.intern("\"" + value + "\"", 1, value.length() + 1))
+                            .toList()))
+                    .toList();
+
+            List<String> interned = results.getFirst().get();
+            assertEquals(values, interned);
+            for (Future<List<String>> result : results) {
+                List<String> other = result.get();
+                for (int i = 0; i < values.size(); i++) {
+                    assertSame(interned.get(i), other.get(i));
+                }
+            }
+        }
+        assertEquals(values.size(), dictionary.size());
+    }
+}
@@ -0,0 +1,175 @@
+package ru.nextupvamp.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+import ru.nextupvamp.exception.GatheringRejectedException;
+import ru.nextupvamp.model.entities.ResourceFilters;
+import ru.nextupvamp.model.entities.Statistics;
+import ru.nextupvamp.model.handlers.LogSource;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static ru.nextupvamp.model.handlers.NginxLogsStatisticsGathererTest.DATA_SOURCE;
+import static ru.nextupvamp.model.handlers.NginxLogsStatisticsGathererTest.GATHERER;
+
+public class GatheringSchedulerTest {
+    @Test
+    public void testRunsOnDedicatedPool() {
+        GatheringScheduler scheduler = scheduler(1, 1, 0, Duration.ZERO);
+
+        String threadName = scheduler.run(null, 1, () -> Thread.currentThread().getName());
+
+        assertTrue(threadName.startsWith("statistics-gathering-"));
+        assertThrows(IllegalArgumentException.class, () -> scheduler.run(null, 1, () -> {
+            throw new IllegalArgumentException();
+        }));
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testRejectsOverBudget() throws Exception {
+        GatheringScheduler scheduler = scheduler(1, 1, 1, Duration.ofMillis(100));
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<Boolean> blocking = executor.submit(() -> scheduler.run("user", 1, () -> {
+                started.countDown();
+                return await(finish);
+            }));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+
+            // waits in the queue for the max wait time and is rejected then
+            var rejected = assertThrows(GatheringRejectedException.class, () -> scheduler.run(null, 1, () -> 1));
+            assertTrue(rejected.retryAfter().toSeconds() >= 1);
+
+            finish.countDown();
+            assertTrue(blocking.get());
+            assertEquals(1, scheduler.run(null, 1, () -> 1));
+        }
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testPerUserLimit() throws Exception {
+        GatheringScheduler scheduler = scheduler(2, 1, 0, Duration.ZERO);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<Boolean> blocking = executor.submit(() -> scheduler.run("user", 1, () -> {
+                started.countDown();
+                return await(finish);
+            }));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+
+            assertThrows(GatheringRejectedException.class, () -> scheduler.run("user", 1, () -> 1));
+            assertEquals(1, scheduler.run("other", 1, () -> 1));
+            assertEquals(1, scheduler.run(null, 1, () -> 1));
+
+            finish.countDown();
+            assertTrue(blocking.get());
+        }
+        scheduler.shutdown();
+    }
+
+    // every source reserves its share of memory, so a merge of many sources may exceed the budget alone
+    @Test
+    public void testMemoryBudget() throws Exception {
+        GatheringScheduler scheduler = new GatheringScheduler(
+                2, 4, 4, 0, Duration.ZERO, DataSize.ofMegabytes(100), DataSize.ofMegabytes(40));
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<Boolean> blocking = executor.submit(() -> scheduler.run("user", 2, () -> {
+                started.countDown();
+                return await(finish);
+            }));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+
+            // 80 MB are reserved, so there is memory for no other source although the concurrency limit allows it
+            assertThrows(GatheringRejectedException.class, () -> scheduler.run("other", 1, () -> 1));
+
+            finish.countDown();
+            assertTrue(blocking.get());
+            assertEquals(1, scheduler.run("other", 1, () -> 1));
+            // a gathering over the whole budget reserves all of it rather than never being admitted
+            assertEquals(1, scheduler.run("other", 5, () -> 1));
+        }
+        scheduler.shutdown();
+    }
+
+    // the task keeps running after its caller is interrupted, so the caller waits for it to hold the budget
+    @Test
+    public void testInterruptedCallerHoldsBudget() throws Exception {
+        GatheringScheduler scheduler = scheduler(1, 1, 0, Duration.ZERO);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<Boolean> interrupted = executor.submit(() -> scheduler.run(null, 1, () -> {
+                started.countDown();
+                return await(finish);
+            }));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            interrupted.cancel(true);
+
+            assertThrows(GatheringRejectedException.class, () -> scheduler.run(null, 1, () -> 1));
+
+            finish.countDown();
+            assertEquals(1, runWhenAdmitted(scheduler));
+        }
+        scheduler.shutdown();
+    }
+
+    // a merge waits for its sources inside the single worker of the pool
+    @Test
+    public void testMergeOnSingleWorker() {
+        GatheringScheduler scheduler = new GatheringScheduler(
+                1, 1, 1, 0, Duration.ZERO, DataSize.ofMegabytes(64), DataSize.ofMegabytes(64));
+        List<LogSource> sources = List.of(
+                LogSource.ofFile(DATA_SOURCE, new ResourceFilters()),
+                LogSource.ofFile(DATA_SOURCE, new ResourceFilters()),
+                LogSource.ofFile(DATA_SOURCE, new ResourceFilters()));
+
+        Statistics merged = scheduler.run(null, sources.size(), () -> GATHERER.gatherMergedStatistics(sources, 2));
+
+        assertEquals(3 * GATHERER.gatherStatisticsFromFile(DATA_SOURCE, new ResourceFilters()).requestsAmount(),
+                merged.requestsAmount());
+        scheduler.shutdown();
+    }
+
+    private static GatheringScheduler scheduler(int maxConcurrent, int perUser, int queueCapacity, Duration maxWait) {
+        return new GatheringScheduler(
+                2, maxConcurrent, perUser, queueCapacity, maxWait, DataSize.ofGigabytes(1), DataSize.ofMegabytes(64));
+    }
+
+    private static int runWhenAdmitted(GatheringScheduler scheduler) throws InterruptedException {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return scheduler.run(null, 1, () -> 1);
+            } catch (GatheringRejectedException e) {
+                if (attempt == 100) {
+                    throw e;
+                }
+                Thread.sleep(100);
+            }
+        }
+    }
+
+    private static boolean await(CountDownLatch latch) {
+        try {
+            return latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package ru.nextupvamp.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.nextupvamp.model.entities.Resource;
+import ru.nextupvamp.model.entities.ResourceType;
+import ru.nextupvamp.model.entities.TimeBucket;
+import ru.nextupvamp.model.handlers.GatheringMetrics;
+import ru.nextupvamp.repository.ResourceRepository;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static ru.nextupvamp.model.handlers.NginxLogsStatisticsGathererTest.GATHERER;
+
+// H2 in PostgreSQL mode with the dialect of the application, so the schema is the same
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:live;MODE=PostgreSQL;NON_KEYWORDS=VALUE,OFFSET",
+        "spring.jpa.database-platform=org.hibernate.dialect.PostgreSQLDialect"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED) // every flush commits like the scheduled ones
+public class LiveStatisticsServiceTest {
+    private static final String LINE =
+            "93.180.71.3 - - [17/May/2015:08:05:32 +0000] \"GET /downloads/product_1 HTTP/1.1\" 304 0 \"-\" \"-\"\n";
+
+    @Autowired
+    private ResourceRepository resourceRepository;
+    @Autowired
+    private EntityManager entityManager;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    public void testFlushesReplaceStatistics() {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        var service = new LiveStatisticsService(
+                resourceRepository, GATHERER, new ObjectMapper(), GatheringMetrics.disabled(), transactionTemplate);
+        ReflectionTestUtils.setField(service, "defaultTopK", 100);
+        var resource = new Resource();
+        resource.type(ResourceType.STREAM);
+        int id = resourceRepository.save(resource).id();
+
+        for (int i = 1; i <= 3; i++) {
+            service.ingest(id, new ByteArrayInputStream(LINE.getBytes(StandardCharsets.UTF_8)), false);
+            service.flush(id);
+
+            Long statisticsRows = transactionTemplate.execute(status -> entityManager
+                    .createQuery("select count(s) from Statistics s", Long.class)
+                    .getSingleResult());
+            assertEquals(1L, statisticsRows);
+            assertEquals(i, resourceRepository.findById(id).orElseThrow().statistics().requestsAmount());
+        }
+        assertEquals(TimeBucket.MINUTE, service.getStatistics(id, null).timeBucket());
+    }
+
+    // filters reset while a flush has been starting, the flush must not save the state gathered with the old ones
+    @Test
+    public void testRemovedStateIsNotFlushed() {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        var resource = new Resource();
+        resource.type(ResourceType.STREAM);
+        int id = resourceRepository.save(resource).id();
+        LiveStatisticsService[] service = new LiveStatisticsService[1];
+        TransactionTemplate removingTemplate = new TransactionTemplate(transactionManager) {
+            @Override
+            public void executeWithoutResult(Consumer<TransactionStatus> action) {
+                service[0].remove(id); // only flushes don't return a result
+                super.executeWithoutResult(action);
+            }
+        };
+        service[0] = new LiveStatisticsService(
+                resourceRepository, GATHERER, new ObjectMapper(), GatheringMetrics.disabled(), removingTemplate);
+        ReflectionTestUtils.setField(service[0], "defaultTopK", 100);
+
+        service[0].ingest(id, new ByteArrayInputStream(LINE.getBytes(StandardCharsets.UTF_8)), false);
+        service[0].flush(id);
+
+        assertNull(transactionTemplate.execute(status -> resourceRepository.findById(id).orElseThrow().statistics()));
+    }
+}
@@ -0,0 +1,51 @@
+package ru.nextupvamp.service;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import ru.nextupvamp.model.entities.Resource;
+import ru.nextupvamp.model.entities.ResourceFilters;
+import ru.nextupvamp.model.entities.ResourceType;
+import ru.nextupvamp.model.handlers.GatheringMetrics;
+import ru.nextupvamp.model.handlers.LogsStatisticsGatherer;
+import ru.nextupvamp.model.handlers.RollupStore;
+import ru.nextupvamp.repository.ResourceRepository;
+import ru.nextupvamp.repository.UserRepository;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.*;
+
+public class ResourceServiceTest {
+    private final ResourceRepository resourceRepository = mock(ResourceRepository.class);
+    private final ResourceService resourceService = new ResourceService(
+            resourceRepository,
+            mock(UserRepository.class),
+            mock(LogsStatisticsGatherer.class),
+            mock(LiveStatisticsService.class),
+            mock(RollupStore.class),
+            GatheringMetrics.disabled(),
+            mock(GatheringScheduler.class)
+    );
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, ResourceFilters.MAX_TOP_K})
+    public void testTopKWithinBounds(int topK) {
+        var resource = new Resource();
+        resource.id(1).type(ResourceType.FILE);
+        when(resourceRepository.findById(1)).thenReturn(Optional.of(resource));
+
+        assertEquals(1, resourceService.uploadFilters(1, new ResourceFilters().topK(topK)));
+        assertEquals(topK, resource.filters().topK());
+    }
+
+    // summaries of every worker are preallocated, so a huge top k would fail the gathering with an OOM
+    @ParameterizedTest
+    @ValueSource(ints = {0, -1, ResourceFilters.MAX_TOP_K + 1, Integer.MAX_VALUE / 10 + 1})
+    public void testTopKOutOfBounds(int topK) {
+        assertThrows(IllegalArgumentException.class,
+                () -> resourceService.uploadFilters(1, new ResourceFilters().topK(topK)));
+        verifyNoInteractions(resourceRepository);
+    }
+}
@@ -0,0 +1,147 @@
+package ru.nextupvamp.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ProblemDetail;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.nextupvamp.exception.ExceptionHandler;
+import ru.nextupvamp.exception.JobNotFinishedException;
+import ru.nextupvamp.exception.JobUnsuccessfulException;
+import ru.nextupvamp.model.data.JobStatus;
+import ru.nextupvamp.model.entities.Statistics;
+import ru.nextupvamp.model.handlers.GatheringProgress;
+
+import java.time.Duration;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class StatisticsJobServiceTest {
+    private static final ExceptionHandler EXCEPTION_HANDLER = new ExceptionHandler();
+
+    private final ResourceService resourceService = mock(ResourceService.class);
+    private final StatisticsJobService jobService = new StatisticsJobService(resourceService);
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch finish = new CountDownLatch(1);
+
+    {
+        ReflectionTestUtils.setField(jobService, "threads", 1);
+        ReflectionTestUtils.setField(jobService, "queueCapacity", 10);
+        ReflectionTestUtils.setField(jobService, "retention", Duration.ofHours(1));
+    }
+
+    @AfterEach
+    public void shutdown() {
+        finish.countDown();
+        jobService.shutdown();
+    }
+
+    @Test
+    public void testSubmitAndResult() throws Exception {
+        Statistics statistics = new Statistics().requestsAmount(42);
+        when(resourceService.getUpdatedStatistics(eq(1), any(), any())).thenAnswer(invocation -> {
+            started.countDown();
+            await(finish);
+            return statistics;
+        });
+
+        int jobId = jobService.submit(1, false, null);
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        assertEquals(JobStatus.RUNNING, jobService.getStatus(jobId).status());
+        var notFinished = assertThrows(JobNotFinishedException.class, () -> jobService.getResult(jobId));
+        assertEquals(HttpStatus.CONFLICT, EXCEPTION_HANDLER.handleJobNotFinishedException(notFinished).getStatusCode());
+
+        finish.countDown();
+        assertEquals(JobStatus.DONE, awaitFinished(jobId));
+        assertSame(statistics, jobService.getResult(jobId));
+    }
+
+    @Test
+    public void testUnknownJobsAndResources() {
+        when(resourceService.getResource(7)).thenThrow(new NoSuchElementException());
+
+        assertThrows(NoSuchElementException.class, () -> jobService.submit(7, false, null));
+        assertThrows(NoSuchElementException.class, () -> jobService.getStatus(100));
+    }
+
+    @Test
+    public void testFailedJob() throws Exception {
+        when(resourceService.getStatisticsOnce(eq(1), any(), any())).thenThrow(new IllegalArgumentException("broken"));
+
+        int jobId = jobService.submit(1, true, null);
+
+        assertEquals(JobStatus.FAILED, awaitFinished(jobId));
+        assertEquals("broken", jobService.getStatus(jobId).error());
+        var failed = assertThrows(JobUnsuccessfulException.class, () -> jobService.getResult(jobId));
+        var response = EXCEPTION_HANDLER.handleJobUnsuccessfulException(failed);
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, response.getStatusCode());
+        assertEquals("broken", ((ProblemDetail) response.getBody()).getProperties().get("error"));
+    }
+
+    // the job is cancelled only once its gathering has stopped
+    @Test
+    public void testCancelRunningJob() throws Exception {
+        CountDownLatch cancelled = new CountDownLatch(1);
+        when(resourceService.getUpdatedStatistics(eq(1), any(), any())).thenAnswer(invocation -> {
+            GatheringProgress progress = invocation.getArgument(2);
+            started.countDown();
+            while (!progress.cancelled()) {
+                Thread.onSpinWait();
+            }
+            cancelled.countDown();
+            await(finish); // the gathering is still cleaning up
+            throw new CancellationException();
+        });
+
+        int jobId = jobService.submit(1, false, null);
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        assertEquals(JobStatus.RUNNING, jobService.cancel(jobId).status());
+        assertTrue(cancelled.await(10, TimeUnit.SECONDS));
+        assertEquals(JobStatus.RUNNING, jobService.getStatus(jobId).status());
+
+        finish.countDown();
+        assertEquals(JobStatus.CANCELLED, awaitFinished(jobId));
+        var gone = assertThrows(JobUnsuccessfulException.class, () -> jobService.getResult(jobId));
+        assertEquals(HttpStatus.GONE, EXCEPTION_HANDLER.handleJobUnsuccessfulException(gone).getStatusCode());
+    }
+
+    @Test
+    public void testCancelQueuedJob() throws Exception {
+        when(resourceService.getUpdatedStatistics(eq(1), any(), any())).thenAnswer(invocation -> {
+            started.countDown();
+            await(finish);
+            return new Statistics();
+        });
+
+        int runningJobId = jobService.submit(1, false, null);
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        int queuedJobId = jobService.submit(2, false, null);
+
+        assertEquals(JobStatus.CANCELLED, jobService.cancel(queuedJobId).status());
+
+        finish.countDown();
+        assertEquals(JobStatus.DONE, awaitFinished(runningJobId));
+        verify(resourceService, never()).getUpdatedStatistics(eq(2), any(), any());
+    }
+
+    private JobStatus awaitFinished(int jobId) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!jobService.getStatus(jobId).status().finished() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        return jobService.getStatus(jobId).status();
+    }
+
+    private static void await(CountDownLatch latch) throws InterruptedException {
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+    }
+}